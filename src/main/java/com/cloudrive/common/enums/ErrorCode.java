@@ -13,6 +13,7 @@ public enum ErrorCode {
     FILE_NOT_FOUND(404, "文件不存在"),
     SHARE_NOT_FOUND(404, "分享链接不存在"),
     USER_NOT_FOUND(404, "用户不存在"),
+    UPLOAD_SESSION_NOT_FOUND(404, "上传会话不存在或已过期"),
 
     // 过期相关错误 (410)
     SHARE_EXPIRED(410, "分享链接已过期"),
@@ -41,6 +42,14 @@ public enum ErrorCode {
     EMAIL_EXISTS(400, "邮箱已被注册"),
     ACCOUNT_DISABLED(400, "账号已被禁用"),
     FILE_TOO_LARGE(413, "文件过大，超出上传限制"),
+    CONTENT_LENGTH_REQUIRED(411, "请求必须携带Content-Length"),
+    INVALID_CHUNK(400, "分片序号或大小不正确"),
+    INVALID_RELATIVE_PATH(400, "文件相对路径不合法"),
+    TOO_MANY_FILES(400, "单次上传的文件数量过多"),
+    CHUNKS_INCOMPLETE(400, "仍有分片未上传"),
+    HASH_MISMATCH(400, "文件内容与声明的SHA-256不一致"),
+    ARCHIVE_TOO_LARGE(400, "打包下载的文件数量过多"),
+    UPLOAD_IN_PROGRESS(409, "上传正在合并中，请稍后重试"),
 
     // FILE相关错误
     OSS_DISABLED(503, "OSS存储服务未启用"),
@@ -51,6 +60,7 @@ public enum ErrorCode {
     FILE_DOWNLOAD_FAILED(500, "文件下载失败"),
     FILE_DELETE_FAILED(500, "文件删除失败"),
     FILE_UPLOAD_FAILED(500, "文件上传失败"),
+    FILE_HASH_FAILED(500, "文件哈希计算失败"),
 
     // 系统错误 (500)
     SYSTEM_ERROR(500, "系统错误");
@@ -118,6 +118,8 @@ public class GlobalExceptionHandler {
             case 401 -> HttpStatus.UNAUTHORIZED; // 未授权，如密码错误
             case 403 -> HttpStatus.FORBIDDEN; // 权限不足
             case 404 -> HttpStatus.NOT_FOUND; // 资源未找到
+            case 409 -> HttpStatus.CONFLICT; // 资源状态冲突
+            case 411 -> HttpStatus.LENGTH_REQUIRED; // 缺少Content-Length
             case 400 -> HttpStatus.BAD_REQUEST; // 请求参数错误
             case 413 -> HttpStatus.PAYLOAD_TOO_LARGE; // 请求实体过大
             case 429 -> HttpStatus.TOO_MANY_REQUESTS; // 请求频率过高
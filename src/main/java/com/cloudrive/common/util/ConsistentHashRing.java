@@ -0,0 +1,68 @@
+package com.cloudrive.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author cd
+ * @date 2025/11/30
+ * @description 一致性哈希环：每个节点按权重放置若干虚拟节点，增加节点只会把其余节点的一部分键转移到新节点；
+ * 构建完成后只读，可被多个线程并发查询
+ */
+public class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    private final int virtualNodes;
+
+    /**
+     * @param virtualNodes 权重为1的节点对应的虚拟节点数
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * 加入节点，虚拟节点的位置只由id决定，与加入顺序无关
+     *
+     * @param id 节点的稳定标识
+     * @param node 节点
+     * @param weight 权重，为0时不加入
+     */
+    public void add(String id, T node, int weight) {
+        for (int i = 0; i < virtualNodes * weight; i++) {
+            ring.put(hash(id + "#" + i), node);
+        }
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * 顺时针找到键所在位置之后的第一个虚拟节点
+     */
+    public T locate(String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 取MD5的前8个字节，分布均匀且与JVM无关，不同节点计算的结果一致
+     */
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
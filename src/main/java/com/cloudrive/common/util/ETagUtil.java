@@ -0,0 +1,57 @@
+package com.cloudrive.common.util;
+
+/**
+ * @author cd
+ * @date 2025/11/26
+ * @description 基于内容SHA-256的实体标签，内容不变标签就不变，可作为强ETag
+ */
+public class ETagUtil {
+
+    /**
+     * 由内容哈希生成强ETag
+     *
+     * @param sha256Hash 内容哈希值
+     * @return 带引号的ETag，哈希值为空（文件夹）时返回null
+     */
+    public static String contentETag(String sha256Hash) {
+        return sha256Hash == null ? null : "\"" + sha256Hash + "\"";
+    }
+
+    /**
+     * 判断If-None-Match是否匹配，按RFC 9110使用弱比较（忽略W/前缀）
+     *
+     * @param ifNoneMatch If-None-Match请求头，可以是*或逗号分隔的多个ETag
+     * @param etag 当前ETag
+     * @return 是否匹配
+     */
+    public static boolean ifNoneMatchMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        if ("*".equals(ifNoneMatch.trim())) {
+            return true;
+        }
+        String opaqueTag = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            if (opaqueTag.equals(stripWeak(candidate.trim()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断If-Range中的实体标签是否匹配，按RFC 9110使用强比较，弱ETag永不匹配
+     *
+     * @param ifRange If-Range请求头中的实体标签
+     * @param etag 当前ETag
+     * @return 是否匹配
+     */
+    public static boolean strongMatches(String ifRange, String etag) {
+        return etag != null && !ifRange.startsWith("W/") && ifRange.equals(etag);
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
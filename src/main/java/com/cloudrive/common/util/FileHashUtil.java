@@ -1,5 +1,6 @@
 package com.cloudrive.common.util;
 
+import com.cloudrive.common.enums.ErrorCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
@@ -8,8 +9,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * @author cd
@@ -18,23 +25,49 @@ import java.security.NoSuchAlgorithmException;
  */
 public class FileHashUtil {
     private static final Logger logger = LoggerFactory.getLogger(FileHashUtil.class);
-    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 流式读取使用的堆缓冲区大小，每次计算单独分配，不超过G1的大对象阈值
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * FileChannel读取使用的直接缓冲区大小
+     */
+    private static final int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * 池中最多保留的直接缓冲区个数
+     */
+    private static final int CHANNEL_BUFFER_POOL_SIZE = 8;
+
+    /**
+     * 直接缓冲区池，避免每次计算都分配堆外内存；池空时临时分配，归还时池满则丢弃，
+     * 常驻的堆外内存不超过CHANNEL_BUFFER_POOL_SIZE * CHANNEL_BUFFER_SIZE，与线程数无关
+     */
+    private static final BlockingQueue<ByteBuffer> CHANNEL_BUFFERS = new ArrayBlockingQueue<>(CHANNEL_BUFFER_POOL_SIZE);
 
     /**
      * 计算MultipartFile的SHA-256哈希值
      *
      * @param file 上传的文件
-     * @return SHA-256哈希值的十六进制字符串表示，如果计算失败则返回null
+     * @return SHA-256哈希值的十六进制字符串表示
+     * @throws com.cloudrive.common.exception.BusinessException 读取失败时抛出
      */
     public static String calculateSHA256(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
-            return null;
-        }
+        ExceptionUtil.throwIfNull(file, ErrorCode.FILE_HASH_FAILED, "文件不能为空");
 
         try (InputStream inputStream = file.getInputStream()) {
+            // 落盘的multipart通常以FileInputStream读取，直接走FileChannel和直接缓冲区
+            if (inputStream instanceof FileInputStream fileInputStream) {
+                return digestToHex(digest(fileInputStream.getChannel()));
+            }
             return calculateSHA256(inputStream);
         } catch (IOException e) {
             logger.error("计算文件SHA-256哈希值时发生IO错误", e);
+            ExceptionUtil.throwBizException(ErrorCode.FILE_HASH_FAILED, e.getMessage());
             return null;
         }
     }
@@ -43,79 +76,126 @@ public class FileHashUtil {
      * 计算File的SHA-256哈希值
      *
      * @param file 文件对象
-     * @return SHA-256哈希值的十六进制字符串表示，如果计算失败则返回null
+     * @return SHA-256哈希值的十六进制字符串表示
+     * @throws com.cloudrive.common.exception.BusinessException 文件不存在或读取失败时抛出
      */
     public static String calculateSHA256(File file) {
-        if (file == null || !file.exists() || !file.isFile()) {
-            return null;
-        }
+        ExceptionUtil.throwIfNull(file, ErrorCode.FILE_HASH_FAILED, "文件不能为空");
+        return calculateSHA256(file.toPath());
+    }
 
-        try (FileInputStream inputStream = new FileInputStream(file)) {
-            return calculateSHA256(inputStream);
+    /**
+     * 计算本地文件的SHA-256哈希值：通过FileChannel读入池化的直接缓冲区；
+     * 不使用内存映射，映射区域在GC前不会释放，并发计算多个大文件时会耗尽映射内存
+     *
+     * @param path 文件路径
+     * @return SHA-256哈希值的十六进制字符串表示
+     * @throws com.cloudrive.common.exception.BusinessException 文件不存在或读取失败时抛出
+     */
+    public static String calculateSHA256(Path path) {
+        ExceptionUtil.throwIfNull(path, ErrorCode.FILE_HASH_FAILED, "文件路径不能为空");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return digestToHex(digest(channel));
         } catch (IOException e) {
-            logger.error("计算文件SHA-256哈希值时发生IO错误", e);
+            logger.error("计算文件SHA-256哈希值时发生IO错误：{}", path, e);
+            ExceptionUtil.throwBizException(ErrorCode.FILE_HASH_FAILED, e.getMessage());
             return null;
         }
     }
 
+    private static MessageDigest digest(FileChannel channel) throws IOException {
+        MessageDigest digest = newSHA256Digest();
+        ByteBuffer buffer = CHANNEL_BUFFERS.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        }
+        try {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest;
+        } finally {
+            CHANNEL_BUFFERS.offer(buffer);
+        }
+    }
+
     /**
      * 计算输入流的SHA-256哈希值
      *
      * @param inputStream 输入流
-     * @return SHA-256哈希值的十六进制字符串表示，如果计算失败则返回null
+     * @return SHA-256哈希值的十六进制字符串表示
+     * @throws com.cloudrive.common.exception.BusinessException 读取失败时抛出
      */
     public static String calculateSHA256(InputStream inputStream) {
-        if (inputStream == null) {
-            return null;
+        ExceptionUtil.throwIfNull(inputStream, ErrorCode.FILE_HASH_FAILED, "输入流不能为空");
+
+        MessageDigest digest = newSHA256Digest();
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int bytesRead;
+
+        // 重置输入流位置（如果支持）
+        if (inputStream.markSupported()) {
+            inputStream.mark(Integer.MAX_VALUE);
         }
 
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
 
             // 重置输入流位置（如果支持）
             if (inputStream.markSupported()) {
-                inputStream.mark(Integer.MAX_VALUE);
+                inputStream.reset();
             }
 
-            try {
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    digest.update(buffer, 0, bytesRead);
-                }
-
-                // 重置输入流位置（如果支持）
-                if (inputStream.markSupported()) {
-                    inputStream.reset();
-                }
-
-                byte[] hashBytes = digest.digest();
-                return bytesToHex(hashBytes);
-            } catch (IOException e) {
-                logger.error("计算SHA-256哈希值时发生IO错误", e);
-                return null;
-            }
-        } catch (NoSuchAlgorithmException e) {
-            logger.error("SHA-256算法不可用", e);
+            return digestToHex(digest);
+        } catch (IOException e) {
+            logger.error("计算SHA-256哈希值时发生IO错误", e);
+            ExceptionUtil.throwBizException(ErrorCode.FILE_HASH_FAILED, e.getMessage());
             return null;
         }
     }
 
     /**
-     * 将字节数组转换为十六进制字符串
+     * 创建SHA-256摘要对象，可配合DigestInputStream在上传的同时计算哈希值
+     *
+     * @return SHA-256摘要对象
+     */
+    public static MessageDigest newSHA256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256算法不可用", e);
+        }
+    }
+
+    /**
+     * 完成摘要计算并转换为十六进制字符串
+     *
+     * @param digest 已更新完数据的摘要对象
+     * @return 十六进制哈希值
+     */
+    public static String digestToHex(MessageDigest digest) {
+        return bytesToHex(digest.digest());
+    }
+
+    /**
+     * 将字节数组转换为十六进制字符串，查表转换，除结果外不产生中间对象
      *
      * @param bytes 字节数组
      * @return 十六进制字符串
      */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder(2 * bytes.length);
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
+    public static String bytesToHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[v >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[v & 0x0f];
         }
-        return hexString.toString();
+        return new String(hex);
     }
 }
@@ -0,0 +1,222 @@
+package com.cloudrive.common.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @author cd
+ * @date 2025/12/01
+ * @description 对冲读：先读主存储，超过主存储近期的延迟分位数仍未返回时再向副本发起同样的读取，
+ * 先返回的数据流被采用，后返回的直接关闭；主存储失败时立即改读副本。
+ * 各存储的首字节延迟记录在Micrometer的storage.read.latency中，对冲等待时间由其分位数定期计算
+ */
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
+public class HedgedReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedReader.class);
+
+    private static final String ROLE_PRIMARY = "primary";
+    private static final String ROLE_REPLICA = "replica";
+
+    private final Executor storageReadExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.hedge.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 以主存储延迟的该分位数作为对冲等待时间，0.95表示约5%的读取会发起对冲
+     */
+    @Value("${storage.hedge.percentile:0.95}")
+    private double percentile;
+
+    @Value("${storage.hedge.min-delay:PT0.01S}")
+    private Duration minDelay;
+
+    /**
+     * 对冲等待时间的上限，也是还没有延迟样本时的等待时间
+     */
+    @Value("${storage.hedge.max-delay:PT1S}")
+    private Duration maxDelay;
+
+    /**
+     * 计算分位数的滑动窗口长度
+     */
+    @Value("${storage.hedge.window:PT2M}")
+    private Duration window;
+
+    /**
+     * 分片名:角色 -> 该存储的延迟统计
+     */
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+
+    public HedgedReader(@Qualifier("storageReadExecutor") Executor storageReadExecutor, MeterRegistry meterRegistry) {
+        this.storageReadExecutor = storageReadExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 读取对象，分片没有副本或未启用对冲时只读主存储
+     *
+     * @param shard 对象所在分片
+     * @param open 在指定存储上打开数据流的操作
+     * @return 先返回的数据流，由调用方关闭
+     */
+    public InputStream read(MinioShardRouter.Shard shard, Function<MinioUtil, InputStream> open) {
+        Backend primary = backend(shard.name(), ROLE_PRIMARY);
+        if (!enabled || shard.replica() == null) {
+            return primary.open(shard.primary(), open);
+        }
+        Backend replica = backend(shard.name(), ROLE_REPLICA);
+
+        CompletableFuture<InputStream> primaryRead = CompletableFuture.supplyAsync(() -> primary.open(shard.primary(), open), storageReadExecutor);
+        try {
+            return primaryRead.get(primary.hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // 主存储慢，向副本发起对冲读，两者谁先返回用谁
+            CompletableFuture<InputStream> replicaRead = CompletableFuture.supplyAsync(() -> replica.open(shard.replica(), open), storageReadExecutor);
+            return join(firstSuccessful(shard.name(), primaryRead, replicaRead));
+        } catch (ExecutionException e) {
+            logger.warn("Primary read failed, falling back to replica: shard={}, error={}", shard.name(), e.getCause().getMessage());
+            replica.wins.increment();
+            return replica.open(shard.replica(), open);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primaryRead.thenAccept(HedgedReader::closeQuietly);
+            throw new IllegalStateException("Interrupted while reading from storage", e);
+        }
+    }
+
+    /**
+     * 按各主存储近期的延迟分位数更新对冲等待时间
+     */
+    @Scheduled(fixedDelayString = "${storage.hedge.refresh-interval:PT1S}")
+    public void refreshHedgeDelays() {
+        backends.values().forEach(Backend::refreshHedgeDelay);
+    }
+
+    private CompletableFuture<InputStream> firstSuccessful(String shard, CompletableFuture<InputStream> primaryRead,
+                                                           CompletableFuture<InputStream> replicaRead) {
+        CompletableFuture<InputStream> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        Backend primary = backend(shard, ROLE_PRIMARY);
+        Backend replica = backend(shard, ROLE_REPLICA);
+        primaryRead.whenComplete((stream, e) -> settle(result, failures, primary, stream, e));
+        replicaRead.whenComplete((stream, e) -> settle(result, failures, replica, stream, e));
+        return result;
+    }
+
+    private static void settle(CompletableFuture<InputStream> result, AtomicInteger failures, Backend backend,
+                               InputStream stream, Throwable error) {
+        if (error == null) {
+            if (result.complete(stream)) {
+                backend.wins.increment();
+            } else {
+                // 另一个读取已被采用，关闭连接放弃这次读取
+                closeQuietly(stream);
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static InputStream join(CompletableFuture<InputStream> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private Backend backend(String shard, String role) {
+        return backends.computeIfAbsent(shard + ":" + role, key -> new Backend(shard, role));
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close abandoned storage stream: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 一个存储（某分片的主存储或副本）的延迟统计
+     */
+    private class Backend {
+        private final boolean primary;
+        private final Timer latency;
+        /**
+         * 被采用的读取次数，未发起对冲的读取不计入
+         */
+        private final Counter wins;
+        private volatile long hedgeDelayNanos;
+
+        private Backend(String shard, String role) {
+            this.primary = ROLE_PRIMARY.equals(role);
+            this.latency = Timer.builder("storage.read.latency")
+                    .description("对象读取的首字节延迟")
+                    .tag("shard", shard)
+                    .tag("role", role)
+                    .publishPercentiles(percentile)
+                    .distributionStatisticExpiry(window)
+                    .register(meterRegistry);
+            this.wins = Counter.builder("storage.read.hedge.wins")
+                    .description("对冲读中被采用的次数")
+                    .tag("shard", shard)
+                    .tag("role", role)
+                    .register(meterRegistry);
+            this.hedgeDelayNanos = maxDelay.toNanos();
+        }
+
+        private InputStream open(MinioUtil client, Function<MinioUtil, InputStream> open) {
+            long start = System.nanoTime();
+            InputStream stream = open.apply(client);
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return stream;
+        }
+
+        private void refreshHedgeDelay() {
+            if (!primary) {
+                return;
+            }
+            HistogramSnapshot snapshot = latency.takeSnapshot();
+            ValueAtPercentile[] percentiles = snapshot.percentileValues();
+            long delay = percentiles.length == 0 ? 0 : (long) percentiles[0].value(TimeUnit.NANOSECONDS);
+            if (snapshot.count() == 0 || delay <= 0) {
+                // 窗口内没有样本，保守地等待最长时间，避免空闲后的第一批读取都发起对冲
+                hedgeDelayNanos = maxDelay.toNanos();
+                return;
+            }
+            hedgeDelayNanos = Math.max(minDelay.toNanos(), Math.min(maxDelay.toNanos(), delay));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.cloudrive.common.util;
+
+import com.cloudrive.config.MinioProperties;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * @author cd
+ * @date 2025/11/30
+ * @description MinIO分片路由：新对象按对象名的一致性哈希选择分片，分片名写进对象路径（@分片名/原对象名），
+ * 读取时从路径解析分片，不需要查表；默认分片的对象不带前缀，与分片前写入的对象兼容；
+ * 每个分片可以配置一个副本
+ */
+@Component
+@ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
+public class MinioShardRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MinioShardRouter.class);
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private static final String SHARD_PREFIX = "@";
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final Pattern SHARD_NAME = Pattern.compile("^[a-z0-9][a-z0-9-]{0,31}$");
+
+    private final MinioProperties properties;
+
+    /**
+     * 分片名 -> 分片，包含weight为0的分片，它们仍需要服务已有对象的读取和删除
+     */
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+
+    private final ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+
+    public MinioShardRouter(MinioProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        register(DEFAULT_SHARD, properties.getEndpoint(), properties.getAccessKeyId(),
+                properties.getAccessKeySecret(), properties.getBucketName(), properties.getReplica());
+        ring.add(DEFAULT_SHARD, DEFAULT_SHARD, properties.getWeight());
+
+        for (MinioProperties.Shard shard : properties.getShards()) {
+            String name = shard.getName();
+            if (name == null || !SHARD_NAME.matcher(name).matches() || shards.containsKey(name)) {
+                throw new IllegalStateException("Invalid or duplicate MinIO shard name: " + name);
+            }
+            register(name,
+                    shard.getEndpoint() != null ? shard.getEndpoint() : properties.getEndpoint(),
+                    shard.getAccessKeyId() != null ? shard.getAccessKeyId() : properties.getAccessKeyId(),
+                    shard.getAccessKeySecret() != null ? shard.getAccessKeySecret() : properties.getAccessKeySecret(),
+                    shard.getBucketName() != null ? shard.getBucketName() : properties.getBucketName(),
+                    shard.getReplica());
+            ring.add(name, name, shard.getWeight());
+        }
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("No MinIO shard accepts writes, at least one shard must have a positive weight");
+        }
+        logger.info("MinIO shards initialized: {}", shards.keySet());
+    }
+
+    private void register(String name, String endpoint, String accessKey, String secretKey, String bucketName,
+                          MinioProperties.Replica replicaConfig) {
+        MinioUtil primary = new MinioUtil(endpoint, accessKey, secretKey, bucketName, properties.getMaxIdleConnections());
+        primary.init();
+        MinioUtil replica = null;
+        if (replicaConfig != null) {
+            replica = new MinioUtil(
+                    replicaConfig.getEndpoint() != null ? replicaConfig.getEndpoint() : endpoint,
+                    replicaConfig.getAccessKeyId() != null ? replicaConfig.getAccessKeyId() : accessKey,
+                    replicaConfig.getAccessKeySecret() != null ? replicaConfig.getAccessKeySecret() : secretKey,
+                    replicaConfig.getBucketName() != null ? replicaConfig.getBucketName() : bucketName,
+                    properties.getMaxIdleConnections());
+            replica.init();
+        }
+        shards.put(name, new Shard(name, primary, replica));
+    }
+
+    /**
+     * 为新对象选择分片
+     *
+     * @param key 不带分片前缀的对象名
+     * @return 写入对象路径的完整对象名
+     */
+    public String assign(String key) {
+        String shard = ring.locate(key);
+        return DEFAULT_SHARD.equals(shard) ? key : SHARD_PREFIX + shard + "/" + key;
+    }
+
+    /**
+     * 对象放到指定分片时的完整对象名，用于在分片之间迁移对象
+     *
+     * @param shard 目标分片名
+     * @param objectName 当前的完整对象名
+     */
+    public String placeOn(String shard, String objectName) {
+        String key = resolve(objectName).key();
+        return DEFAULT_SHARD.equals(shard) ? key : SHARD_PREFIX + shard + "/" + key;
+    }
+
+    public boolean hasShard(String shard) {
+        return shards.containsKey(shard);
+    }
+
+    /**
+     * 解析对象所在的分片和分片内的对象名
+     *
+     * @param objectName 完整对象名
+     * @return 分片客户端和对象名
+     */
+    public Target resolve(String objectName) {
+        if (!objectName.startsWith(SHARD_PREFIX)) {
+            return new Target(shards.get(DEFAULT_SHARD), objectName);
+        }
+        int slash = objectName.indexOf('/');
+        Shard shard = slash > 0 ? shards.get(objectName.substring(SHARD_PREFIX.length(), slash)) : null;
+        if (shard == null) {
+            throw new IllegalStateException("Object belongs to an unknown MinIO shard: " + objectName);
+        }
+        return new Target(shard, objectName.substring(slash + 1));
+    }
+
+    /**
+     * 一个分片：主存储和可选的副本
+     */
+    public record Shard(String name, MinioUtil primary, MinioUtil replica) {
+    }
+
+    /**
+     * 对象所在的分片和分片内的对象名
+     */
+    public record Target(Shard shard, String key) {
+
+        /**
+         * 主存储客户端，所有写入和预签名都使用主存储
+         */
+        public MinioUtil client() {
+            return shard.primary();
+        }
+    }
+}
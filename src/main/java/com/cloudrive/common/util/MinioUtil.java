@@ -1,53 +1,87 @@
 package com.cloudrive.common.util;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 import io.minio.*;
+import io.minio.http.HttpUtils;
 import io.minio.http.Method;
-import jakarta.annotation.PostConstruct;
+import io.minio.messages.Part;
 import lombok.Getter;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author cd
  * @date 2025/10/10
- * @description
+ * @description MinIO客户端封装，每个存储分片一个实例，各自持有客户端和连接池，由MinioShardRouter创建
  */
-@Component
 public class MinioUtil {
     private static final Logger logger = LoggerFactory.getLogger(MinioUtil.class);
 
-    @Value("${minio.endpoint}")
-    private String endpoint;
+    /**
+     * 连接、读、写超时，与MinIO客户端的默认值一致
+     */
+    private static final long HTTP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String endpoint;
 
-    @Value("${minio.access-key-id}")
-    private String accessKey;
+    private final String accessKey;
 
-    @Value("${minio.access-key-secret}")
-    private String secretKey;
+    private final String secretKey;
 
-    @Value("${minio.bucket-name}")
     @Getter
-    private String bucketName;
+    private final String bucketName;
+
+    /**
+     * 连接池保留的空闲连接数，应不小于该分片上的并发请求数，避免频繁重建连接
+     */
+    private final int maxIdleConnections;
 
     private MinioClient minioClient;
 
     /**
-     * 初始化Minio客户端
+     * 异步客户端，用于分片上传（createMultipartUpload/uploadPart等接口只在异步客户端公开）
+     */
+    private MinioAsyncClient minioAsyncClient;
+
+    public MinioUtil(String endpoint, String accessKey, String secretKey, String bucketName, int maxIdleConnections) {
+        this.endpoint = endpoint;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.bucketName = bucketName;
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * 初始化Minio客户端，同步和异步客户端共用一个连接池
      */
-    @PostConstruct
     public void init() {
         try {
+            OkHttpClient httpClient = HttpUtils.newDefaultHttpClient(HTTP_TIMEOUT_MILLIS, HTTP_TIMEOUT_MILLIS, HTTP_TIMEOUT_MILLIS)
+                    .newBuilder()
+                    .connectionPool(new ConnectionPool(maxIdleConnections, 5, TimeUnit.MINUTES))
+                    .build();
             minioClient = MinioClient.builder()
                     .endpoint(endpoint)
                     .credentials(accessKey, secretKey)
+                    .httpClient(httpClient)
+                    .build();
+            minioAsyncClient = MinioAsyncClient.builder()
+                    .endpoint(endpoint)
+                    .credentials(accessKey, secretKey)
+                    .httpClient(httpClient)
                     .build();
 
             // 检查并创建存储桶
@@ -56,7 +90,7 @@ public class MinioUtil {
                 logger.info("Bucket {} created successfully", bucketName);
             }
         } catch (Exception e) {
-            logger.error("Failed to initialize Minio client: {}", e.getMessage());
+            logger.error("Failed to initialize Minio client: endpoint={}, bucket={}, error={}", endpoint, bucketName, e.getMessage());
             throw new RuntimeException("Minio initialization failed", e);
         }
     }
@@ -86,6 +120,31 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 按已知大小上传文件流，流只会被读取一次
+     *
+     * @param objectName  文件对象名
+     * @param inputStream 文件输入流
+     * @param objectSize  文件大小（字节）
+     * @param contentType 文件类型
+     */
+    public void uploadFile(String objectName, InputStream inputStream, long objectSize, String contentType) {
+        try {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .stream(inputStream, objectSize, -1)
+                            .contentType(contentType)
+                            .build()
+            );
+            logger.info("File {} uploaded successfully, size={}", objectName, objectSize);
+        } catch (Exception e) {
+            logger.error("Failed to upload file {}: {}", objectName, e.getMessage());
+            throw new RuntimeException("File upload failed", e);
+        }
+    }
+
     /**
      * 上传文件并支持进度监听
      *
@@ -113,6 +172,104 @@ public class MinioUtil {
     }
 
 
+    /**
+     * 创建分片上传
+     *
+     * @param objectName  文件对象名
+     * @param contentType 文件类型
+     * @return MinIO分片上传ID
+     */
+    public String createMultipartUpload(String objectName, String contentType) {
+        try {
+            Multimap<String, String> headers = HashMultimap.create();
+            if (contentType != null) {
+                headers.put("Content-Type", contentType);
+            }
+            return minioAsyncClient.createMultipartUploadAsync(bucketName, null, objectName, headers, null)
+                    .get().result().uploadId();
+        } catch (Exception e) {
+            logger.error("Failed to create multipart upload {}: {}", objectName, e.getMessage());
+            throw new RuntimeException("Create multipart upload failed", unwrap(e));
+        }
+    }
+
+    /**
+     * 上传单个分片
+     *
+     * @param objectName 文件对象名
+     * @param uploadId   MinIO分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param data       分片数据
+     * @param length     分片有效长度
+     * @return 分片ETag
+     */
+    public String uploadPart(String objectName, String uploadId, int partNumber, byte[] data, int length) {
+        try {
+            return minioAsyncClient.uploadPartAsync(bucketName, null, objectName, data, length, uploadId, partNumber, null, null)
+                    .get().etag();
+        } catch (Exception e) {
+            logger.error("Failed to upload part {} of {}: {}", partNumber, objectName, e.getMessage());
+            throw new RuntimeException("Upload part failed", unwrap(e));
+        }
+    }
+
+    /**
+     * 从本地文件上传单个分片，SDK从文件中按需读取，不把分片读入Java堆
+     *
+     * @param objectName 文件对象名
+     * @param uploadId   MinIO分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param file       分片数据所在的文件，从当前位置读取
+     * @param length     分片长度
+     * @return 分片ETag
+     */
+    public String uploadPart(String objectName, String uploadId, int partNumber, RandomAccessFile file, long length) {
+        try {
+            return minioAsyncClient.uploadPartAsync(bucketName, null, objectName, file, length, uploadId, partNumber, null, null)
+                    .get().etag();
+        } catch (Exception e) {
+            logger.error("Failed to upload part {} of {}: {}", partNumber, objectName, e.getMessage());
+            throw new RuntimeException("Upload part failed", unwrap(e));
+        }
+    }
+
+    /**
+     * 完成分片上传，由MinIO在服务端合并分片
+     *
+     * @param objectName 文件对象名
+     * @param uploadId   MinIO分片上传ID
+     * @param parts      按分片序号升序排列的分片
+     */
+    public void completeMultipartUpload(String objectName, String uploadId, Part[] parts) {
+        try {
+            minioAsyncClient.completeMultipartUploadAsync(bucketName, null, objectName, uploadId, parts, null, null).get();
+            logger.info("Multipart upload {} completed, parts={}", objectName, parts.length);
+        } catch (Exception e) {
+            logger.error("Failed to complete multipart upload {}: {}", objectName, e.getMessage());
+            throw new RuntimeException("Complete multipart upload failed", unwrap(e));
+        }
+    }
+
+    /**
+     * 取消分片上传并清理已上传的分片
+     *
+     * @param objectName 文件对象名
+     * @param uploadId   MinIO分片上传ID
+     */
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            minioAsyncClient.abortMultipartUploadAsync(bucketName, null, objectName, uploadId, null, null).get();
+            logger.info("Multipart upload {} aborted", objectName);
+        } catch (Exception e) {
+            logger.error("Failed to abort multipart upload {}: {}", objectName, e.getMessage());
+            throw new RuntimeException("Abort multipart upload failed", unwrap(e));
+        }
+    }
+
+    private Throwable unwrap(Exception e) {
+        return e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+    }
+
     /**
      * 上传字节数组
      *
@@ -150,6 +307,65 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 读取文件的一段
+     *
+     * @param objectName 文件对象名
+     * @param offset 起始位置
+     * @param length 读取长度
+     * @return 文件输入流
+     */
+    public InputStream downloadFile(String objectName, long offset, long length) {
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .offset(offset)
+                            .length(length)
+                            .build()
+            );
+        } catch (Exception e) {
+            logger.error("Failed to download file {} range {}+{}: {}", objectName, offset, length, e.getMessage());
+            throw new RuntimeException("File download failed", e);
+        }
+    }
+
+    /**
+     * 把对象复制到另一个存储（如副本），跨MinIO实例无法服务端复制，由本节点边读边写
+     *
+     * @param target 目标存储
+     * @param objectName 文件对象名，两边相同
+     */
+    public void copyTo(MinioUtil target, String objectName) {
+        copyTo(target, objectName, objectName, Function.identity());
+    }
+
+    /**
+     * 把对象复制到另一个存储的指定对象名
+     *
+     * @param target 目标存储
+     * @param sourceName 源对象名
+     * @param targetName 目标对象名
+     * @param streamDecorator 包装读取流，如限速
+     */
+    public void copyTo(MinioUtil target, String sourceName, String targetName, Function<InputStream, InputStream> streamDecorator) {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(sourceName)
+                            .build()
+            );
+            try (InputStream inputStream = streamDecorator.apply(downloadFile(sourceName))) {
+                target.uploadFile(targetName, inputStream, stat.size(), stat.contentType());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to copy file {} to {}/{}/{}: {}", sourceName, target.endpoint, target.bucketName, targetName, e.getMessage());
+            throw new RuntimeException("File copy failed", e);
+        }
+    }
+
     /**
      * 删除文件
      *
@@ -192,6 +408,32 @@ public class MinioUtil {
         }
     }
 
+    /**
+     * 生成下载用的预签名URL，由MinIO按指定的文件名返回Content-Disposition
+     *
+     * @param objectName 文件对象名
+     * @param contentDisposition 响应的Content-Disposition
+     * @param expirySeconds 有效期（秒）
+     * @return 预签名URL
+     */
+    public String getPresignedDownloadUrl(String objectName, String contentDisposition, int expirySeconds) {
+        try {
+            return minioClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .expiry(expirySeconds, TimeUnit.SECONDS)
+                            .extraQueryParams(Map.of(
+                                    "response-content-disposition", contentDisposition,
+                                    "response-content-type", "application/octet-stream"))
+                            .build()
+            );
+        } catch (Exception e) {
+            logger.error("Failed to get presigned download URL for {}: {}", objectName, e.getMessage());
+            throw new RuntimeException("Get presigned URL failed", e);
+        }
+    }
 
     private static class ProgressInputStream extends FilterInputStream {
         private final long totalSize;
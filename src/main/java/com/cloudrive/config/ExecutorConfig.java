@@ -0,0 +1,86 @@
+package com.cloudrive.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @author cd
+ * @date 2025/11/18
+ * @description 线程池配置
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 存储I/O线程池，用于并行上传分片等阻塞的存储请求
+     */
+    @Bean("storageIoExecutor")
+    public ThreadPoolTaskExecutor storageIoExecutor(@Value("${storage.io-threads:16}") int ioThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ioThreads);
+        executor.setMaxPoolSize(ioThreads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("storage-io-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 存储读取线程池，对冲读在这里同时向主存储和副本发起请求，与上传使用的存储I/O线程池隔离
+     */
+    @Bean("storageReadExecutor")
+    public ThreadPoolTaskExecutor storageReadExecutor(@Value("${storage.read-threads:64}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("storage-read-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 下载线程池，StreamingResponseBody在这里把存储端的数据写到响应
+     */
+    @Bean("downloadExecutor")
+    public ThreadPoolTaskExecutor downloadExecutor(@Value("${download.threads:64}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("download-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 上传进度推送线程池，向SSE连接写事件；每个连接同一时刻最多占用一个线程，待发送事件排在连接自己的有界队列里
+     */
+    @Bean("progressPushExecutor")
+    public ThreadPoolTaskExecutor progressPushExecutor(@Value("${upload.progress.push-threads:8}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("progress-push-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 定时任务线程池，避免耗时的回收任务推迟上传进度的刷新
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.initialize();
+        return scheduler;
+    }
+}
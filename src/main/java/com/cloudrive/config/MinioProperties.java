@@ -0,0 +1,83 @@
+package com.cloudrive.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/30
+ * @description MinIO配置：minio.endpoint等为默认分片，minio.shards为额外分片；
+ * 分片只要还存有对象就必须保留在配置中，不再写入时把weight设为0即可；
+ * 分片配置了replica时对象同时写入副本，读取慢时向副本发起对冲读
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio")
+public class MinioProperties {
+
+    private String endpoint;
+
+    private String accessKeyId;
+
+    private String accessKeySecret;
+
+    private String bucketName;
+
+    /**
+     * 默认分片在一致性哈希环上的权重，为0时不再接收新写入
+     */
+    private int weight = 1;
+
+    /**
+     * 每个分片连接池保留的空闲连接数
+     */
+    private int maxIdleConnections = 32;
+
+    /**
+     * 默认分片的副本，为空时不复制
+     */
+    private Replica replica;
+
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * 额外的分片，未配置的endpoint和凭证沿用默认分片的值，可用于同一MinIO上的多个存储桶
+     */
+    @Data
+    public static class Shard {
+        /**
+         * 分片名称，会写入对象路径，配置后不能修改
+         */
+        private String name;
+
+        private String endpoint;
+
+        private String accessKeyId;
+
+        private String accessKeySecret;
+
+        private String bucketName;
+
+        private int weight = 1;
+
+        private Replica replica;
+    }
+
+    /**
+     * 分片的副本，通常是另一台MinIO上的存储桶；未配置的endpoint和凭证沿用所属分片的值
+     */
+    @Data
+    public static class Replica {
+        private String endpoint;
+
+        private String accessKeyId;
+
+        private String accessKeySecret;
+
+        private String bucketName;
+    }
+}
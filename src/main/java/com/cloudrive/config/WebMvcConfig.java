@@ -0,0 +1,37 @@
+package com.cloudrive.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * @author cd
+ * @date 2025/11/25
+ * @description 异步请求配置，流式下载和SSE都是异步请求
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final ThreadPoolTaskExecutor downloadExecutor;
+
+    /**
+     * 流式下载的最长时间，大文件在慢速网络上需要较长时间
+     */
+    @Value("${download.timeout:PT6H}")
+    private Duration downloadTimeout;
+
+    public WebMvcConfig(@Qualifier("downloadExecutor") ThreadPoolTaskExecutor downloadExecutor) {
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(downloadExecutor);
+        configurer.setDefaultTimeout(downloadTimeout.toMillis());
+    }
+}
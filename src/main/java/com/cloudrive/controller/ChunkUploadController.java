@@ -0,0 +1,72 @@
+package com.cloudrive.controller;
+
+import com.cloudrive.common.Result;
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.model.dto.ChunkUploadInitDTO;
+import com.cloudrive.model.vo.ChunkUploadVO;
+import com.cloudrive.service.ChunkUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 分片上传（断点续传）
+ */
+@RestController
+@RequestMapping("/api/files/uploads")
+@RequiredArgsConstructor
+public class ChunkUploadController {
+    private final ChunkUploadService chunkUploadService;
+
+    /**
+     * 初始化上传会话
+     */
+    @PostMapping
+    public Result<ChunkUploadVO> initUpload(@Valid @RequestBody ChunkUploadInitDTO dto) {
+        return Result.success(chunkUploadService.initUpload(dto));
+    }
+
+    /**
+     * 上传分片，请求体为分片原始字节
+     */
+    @PutMapping("/{uploadId}/chunks/{chunkIndex}")
+    public Result<Void> uploadChunk(@PathVariable String uploadId, @PathVariable int chunkIndex, HttpServletRequest request) {
+        try {
+            chunkUploadService.uploadChunk(uploadId, chunkIndex, request.getInputStream(), request.getContentLengthLong());
+        } catch (IOException e) {
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+        return Result.success();
+    }
+
+    /**
+     * 查询上传会话状态及缺失的分片
+     */
+    @GetMapping("/{uploadId}")
+    public Result<ChunkUploadVO> getUploadStatus(@PathVariable String uploadId) {
+        return Result.success(chunkUploadService.getUploadStatus(uploadId));
+    }
+
+    /**
+     * 合并分片，校验结果通过上传进度查询或推送获取
+     */
+    @PostMapping("/{uploadId}/complete")
+    public Result<ChunkUploadVO> completeUpload(@PathVariable String uploadId) {
+        return Result.success(chunkUploadService.completeUpload(uploadId));
+    }
+
+    /**
+     * 取消上传
+     */
+    @DeleteMapping("/{uploadId}")
+    public Result<Void> abortUpload(@PathVariable String uploadId) {
+        chunkUploadService.abortUpload(uploadId);
+        return Result.success();
+    }
+}
@@ -1,21 +1,46 @@
 package com.cloudrive.controller;
 
 import com.cloudrive.common.Result;
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ETagUtil;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.FileChannelInputStream;
+import com.cloudrive.model.dto.ArchiveDownloadDTO;
 import com.cloudrive.model.dto.FileRenameDTO;
+import com.cloudrive.model.dto.UploadManifestDTO;
+import com.cloudrive.model.entity.FileInfo;
 import com.cloudrive.model.vo.FileListVO;
+import com.cloudrive.model.vo.UploadManifestVO;
+import com.cloudrive.service.ArchiveDownloadService;
 import com.cloudrive.service.FileService;
+import com.cloudrive.service.LocalContentCache;
 import com.cloudrive.service.UploadProgressService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 /**
@@ -28,8 +53,19 @@ import java.util.List;
 @RequestMapping("/api/files")
 @RequiredArgsConstructor
 public class FileController {
+    /**
+     * 下载时的复制缓冲区大小
+     */
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 下载响应可以被客户端缓存，但每次使用前需带ETag重新验证，以便删除和权限变化立即生效
+     */
+    private static final CacheControl DOWNLOAD_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     private final FileService fileService;
     private final UploadProgressService uploadProgressService;
+    private final ArchiveDownloadService archiveDownloadService;
 
     /**
      * 上传文件
@@ -42,6 +78,51 @@ public class FileController {
         return Result.success(filePath);
     }
 
+    /**
+     * 一次请求上传多个文件
+     */
+    @PostMapping("/batch")
+    public Result<List<String>> uploadFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "parentId", required = false) String parentId) {
+        return Result.success(fileService.uploadFiles(files, parentId));
+    }
+
+    /**
+     * 以原始请求体上传文件，不经过multipart解析和临时文件落盘，直接流式写入存储；
+     * 携带X-Content-SHA256时，当前用户已拥有相同内容则直接秒传、不读取请求体；
+     * 其他用户的相同内容不会因为声明了哈希值而被引用，仍需上传后由服务端计算哈希值校验并去重
+     */
+    @PutMapping("/raw")
+    public Result<String> uploadRawFile(
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "parentId", required = false) String parentId,
+            @RequestHeader(value = "X-Content-SHA256", required = false) String sha256Hash,
+            HttpServletRequest request) {
+        long contentLength = request.getContentLengthLong();
+        ExceptionUtil.throwIf(contentLength < 0, ErrorCode.CONTENT_LENGTH_REQUIRED);
+
+        String contentType = request.getContentType();
+        if (contentType == null || MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentType)) {
+            contentType = MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        }
+        try {
+            String filePath = fileService.uploadFile(request.getInputStream(), filename, contentType, contentLength, parentId, sha256Hash);
+            return Result.success(filePath);
+        } catch (IOException e) {
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 上传前提交文件清单进行秒传协商，返回仍需上传内容的文件
+     */
+    @PostMapping("/manifest")
+    public Result<UploadManifestVO> checkUploadManifest(@Valid @RequestBody UploadManifestDTO manifest) {
+        return Result.success(fileService.checkUploadManifest(manifest));
+    }
+
     /**
      * 获取文件列表
      */
@@ -52,22 +133,234 @@ public class FileController {
     }
 
     /**
-     * 下载文件
+     * 下载文件，从存储端边读边写到响应，每个下载只占用固定大小的缓冲区；
+     * 支持Range和If-Range，多个范围时返回multipart/byteranges
      */
     @GetMapping("/{fileId}/content")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String fileId) {
-        byte[] content = fileService.downloadFile(fileId);
+    public ResponseEntity<StreamingResponseBody> downloadFile(
+            @PathVariable String fileId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FileInfo fileInfo = fileService.getDownloadableFile(fileId);
+        // 内容哈希即强ETag，客户端已有相同内容时只查询元数据就返回304，不访问存储端
+        String etag = ETagUtil.contentETag(fileInfo.getSha256Hash());
+        if (ETagUtil.ifNoneMatchMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(DOWNLOAD_CACHE_CONTROL)
+                    .lastModified(lastModified(fileInfo))
+                    .build();
+        }
+        // 重定向下载：鉴权后由客户端直接从存储端下载，Range由存储端处理
+        String redirectUrl = fileService.getDownloadRedirectUrl(fileInfo);
+        if (redirectUrl != null) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(redirectUrl))
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
+        long fileSize = fileInfo.getFileSize();
         // 设置响应头
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
         headers.setContentDisposition(ContentDisposition.builder("attachment")
-                .filename(fileService.getFilename(fileId), StandardCharsets.UTF_8)
+                .filename(fileInfo.getFilename(), StandardCharsets.UTF_8)
                 .build());
-        headers.setContentLength(content.length);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setLastModified(lastModified(fileInfo));
+        headers.setCacheControl(DOWNLOAD_CACHE_CONTROL);
+        if (etag != null) {
+            headers.setETag(etag);
+        }
 
-        return ResponseEntity.ok()
+        List<HttpRange> ranges = parseRanges(rangeHeader, ifRange, fileInfo);
+        if (ranges.isEmpty()) {
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentLength(fileSize);
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(rangeBody(fileInfo, 0, fileSize));
+        }
+
+        // 计算各范围的起止位置，任一范围不可满足时返回416
+        long[] starts = new long[ranges.size()];
+        long[] ends = new long[ranges.size()];
+        long requestedBytes = 0;
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                starts[i] = ranges.get(i).getRangeStart(fileSize);
+                ends[i] = ranges.get(i).getRangeEnd(fileSize);
+                requestedBytes += ends[i] - starts[i] + 1;
+            }
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(fileSize);
+        }
+        if (ranges.size() > 1 && requestedBytes > fileSize) {
+            // 重叠的多范围请求总量超过文件大小，视为滥用
+            return rangeNotSatisfiable(fileSize);
+        }
+
+        if (ranges.size() == 1) {
+            long length = ends[0] - starts[0] + 1;
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(starts[0], ends[0], fileSize));
+            headers.setContentLength(length);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .body(rangeBody(fileInfo, starts[0], length));
+        }
+
+        // 多个范围：multipart/byteranges，各段依次从本地缓存或存储端按范围读取
+        LocalContentCache.CachedContent cached = fileService.openCachedContent(fileInfo);
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            partHeaders[i] = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(starts[i], ends[i], fileSize) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + ends[i] - starts[i] + 1;
+        }
+        byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closeDelimiter.length;
+
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        headers.setContentLength(contentLength);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
                 .headers(headers)
-                .body(content);
+                .body(outputStream -> {
+                    try (cached) {
+                        for (int i = 0; i < ranges.size(); i++) {
+                            outputStream.write(partHeaders[i]);
+                            long length = ends[i] - starts[i] + 1;
+                            if (cached != null) {
+                                cached.transferTo(starts[i], length, outputStream);
+                                continue;
+                            }
+                            try (InputStream content = fileService.openFileContent(fileInfo, starts[i], length)) {
+                                copy(content, outputStream);
+                            }
+                        }
+                        outputStream.write(closeDelimiter);
+                        outputStream.flush();
+                    }
+                });
+    }
+
+    /**
+     * 一段内容的响应体：本地缓存命中时从缓存文件发送，否则从存储端读取；
+     * 在返回前打开数据源，存储端的错误仍能以普通错误响应返回
+     */
+    private StreamingResponseBody rangeBody(FileInfo fileInfo, long start, long length) {
+        LocalContentCache.CachedContent cached = fileService.openCachedContent(fileInfo);
+        if (cached != null) {
+            return outputStream -> {
+                try (cached) {
+                    cached.transferTo(start, length, outputStream);
+                }
+            };
+        }
+        InputStream content = start == 0 && length == fileInfo.getFileSize()
+                ? fileService.openFileContent(fileInfo)
+                : fileService.openFileContent(fileInfo, start, length);
+        return outputStream -> {
+            try (content) {
+                copy(content, outputStream);
+            }
+        };
+    }
+
+    /**
+     * 解析Range请求头；If-Range与当前文件不匹配或Range格式不合法时忽略Range，返回完整文件
+     */
+    private List<HttpRange> parseRanges(String rangeHeader, String ifRange, FileInfo fileInfo) {
+        if (rangeHeader == null || (ifRange != null && !ifRangeMatches(ifRange, fileInfo))) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * If-Range可以是实体标签（与内容哈希强比较）或HTTP日期（与最后修改时间精确比较）
+     */
+    private boolean ifRangeMatches(String ifRange, FileInfo fileInfo) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ETagUtil.strongMatches(ifRange, ETagUtil.contentETag(fileInfo.getSha256Hash()));
+        }
+        try {
+            long ifRangeTime = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return ifRangeTime == lastModified(fileInfo) / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private long lastModified(FileInfo fileInfo) {
+        return fileInfo.getUpdatedAt().atZone(ZoneId.systemDefault()).toEpochSecond() * 1000;
+    }
+
+    private String contentRange(long start, long end, long fileSize) {
+        return "bytes " + start + "-" + end + "/" + fileSize;
+    }
+
+    private ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long fileSize) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                .build();
+    }
+
+    /**
+     * 以固定大小的缓冲区复制数据流，本地文件直接从文件通道发送
+     */
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        if (inputStream instanceof FileChannelInputStream) {
+            // 本地存储的文件直接从文件通道发送，省去按固定缓冲区的逐次读取
+            inputStream.transferTo(outputStream);
+            outputStream.flush();
+            return;
+        }
+        byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * 把文件夹打包为ZIP下载
+     */
+    @GetMapping("/{fileId}/archive")
+    public ResponseEntity<StreamingResponseBody> downloadFolderArchive(@PathVariable String fileId) {
+        return archiveResponse(archiveDownloadService.prepareArchive(List.of(fileId), null));
+    }
+
+    /**
+     * 把选择的多个文件或文件夹打包为ZIP下载
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(@Valid @RequestBody ArchiveDownloadDTO dto) {
+        return archiveResponse(archiveDownloadService.prepareArchive(dto.getFileIds(), dto.getArchiveName()));
+    }
+
+    /**
+     * 压缩包边生成边写到响应，长度未知，以分块编码传输
+     */
+    private ResponseEntity<StreamingResponseBody> archiveResponse(ArchiveDownloadService.Archive archive) {
+        List<ArchiveDownloadService.ArchiveEntry> entries = archive.getEntries();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.builder("attachment")
+                        .filename(archive.getFilename(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .cacheControl(CacheControl.noStore())
+                .body(outputStream -> archiveDownloadService.writeArchive(entries, outputStream));
     }
 
     /**
@@ -79,4 +372,12 @@ public class FileController {
         return Result.success();
     }
 
+    /**
+     * 删除文件
+     */
+    @DeleteMapping("/{fileId}")
+    public Result<Void> deleteFile(@PathVariable String fileId) {
+        fileService.deleteFile(fileId);
+        return Result.success();
+    }
 }
@@ -0,0 +1,70 @@
+package com.cloudrive.controller;
+
+import com.cloudrive.common.Result;
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.UserContext;
+import com.cloudrive.model.dto.UploadProgressQueryDTO;
+import com.cloudrive.model.vo.UploadProgressBatchVO;
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.UploadProgressPushService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * @author cd
+ * @date 2025/11/22
+ * @description 上传进度查询与推送
+ */
+@RestController
+@RequestMapping("/api/files/progress")
+@RequiredArgsConstructor
+public class UploadProgressController {
+    private final UploadProgressService uploadProgressService;
+    private final UploadProgressPushService uploadProgressPushService;
+
+    /**
+     * 订阅当前用户所有上传任务的进度（SSE）
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamUserProgress() {
+        return uploadProgressPushService.subscribeUser(UserContext.getCurrentUserId());
+    }
+
+    /**
+     * 订阅单个上传任务的进度（SSE），任务完成后服务端关闭连接
+     */
+    @GetMapping(value = "/{taskId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTaskProgress(@PathVariable String taskId) {
+        return uploadProgressPushService.subscribeTask(UserContext.getCurrentUserId(), taskId);
+    }
+
+    /**
+     * 批量查询上传进度，只返回客户端版本之后有变化的任务
+     */
+    @PostMapping("/query")
+    public Result<UploadProgressBatchVO> queryProgress(@Valid @RequestBody UploadProgressQueryDTO query) {
+        return Result.success(uploadProgressService.queryProgress(UserContext.getCurrentUserId(), query));
+    }
+
+    /**
+     * 查询单个上传任务的进度
+     */
+    @GetMapping("/{taskId}")
+    public Result<UploadProgressVO> getProgress(@PathVariable String taskId) {
+        UploadTask task = uploadProgressService.getUploadTask(taskId);
+        ExceptionUtil.throwIfNull(task, ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+        ExceptionUtil.throwIf(!UserContext.getCurrentUserId().equals(task.getUserId()), ErrorCode.NO_PERMISSION);
+        return Result.success(UploadProgressService.toProgressVO(task));
+    }
+}
@@ -0,0 +1,67 @@
+package com.cloudrive.dao;
+
+import com.cloudrive.model.entity.FileContent;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author cd
+ * @date 2025/11/16
+ * @description
+ */
+@Mapper
+public interface FileContentDao {
+
+    /**
+     * 根据SHA-256哈希值查找内容
+     */
+    FileContent findBySha256Hash(@Param("sha256Hash") String sha256Hash);
+
+    /**
+     * 根据一批SHA-256哈希值查找内容
+     */
+    List<FileContent> findBySha256Hashes(@Param("sha256Hashes") List<String> sha256Hashes);
+
+    /**
+     * 根据一批SHA-256哈希值查找内容并加行锁，保证事务内引用计数不会被并发删除
+     */
+    List<FileContent> findBySha256HashesForUpdate(@Param("sha256Hashes") List<String> sha256Hashes);
+
+    /**
+     * 插入内容，哈希值已存在时忽略
+     * @return 插入的行数，0表示内容已存在
+     */
+    int insertIgnore(@Param("fileContent") FileContent fileContent);
+
+    /**
+     * 批量插入内容（多行INSERT）
+     */
+    void batchInsert(@Param("fileContents") List<FileContent> fileContents);
+
+    /**
+     * 增加引用计数
+     * @return 更新的行数，0表示内容不存在
+     */
+    int incrementRefCount(@Param("sha256Hash") String sha256Hash, @Param("delta") int delta);
+
+    /**
+     * 一条语句批量增加多个内容的引用计数
+     * @param deltas 哈希值 -> 增加的引用数
+     */
+    int batchIncrementRefCount(@Param("deltas") Map<String, Integer> deltas);
+
+    /**
+     * 引用计数减一
+     * @return 更新的行数，0表示内容不存在
+     */
+    int decrementRefCount(@Param("sha256Hash") String sha256Hash);
+
+    /**
+     * 删除引用计数为0的内容
+     * @return 删除的行数，0表示仍被引用或已被删除
+     */
+    int deleteIfUnreferenced(@Param("sha256Hash") String sha256Hash);
+}
@@ -37,6 +37,21 @@ public interface FileInfoDao {
      */
     List<FileInfo> findBySha256HashAndUserId(@Param("sha256Hash") String sha256Hash, @Param("userId") String userId);
 
+    /**
+     * 在一批哈希值中找出用户未删除的文件已拥有的哈希值
+     */
+    List<String> findOwnedSha256Hashes(@Param("userId") String userId, @Param("sha256Hashes") List<String> sha256Hashes);
+
+    /**
+     * 批量插入文件信息（多行INSERT）
+     */
+    void batchInsertFileInfo(@Param("fileInfos") List<FileInfo> fileInfos);
+
+    /**
+     * 根据父目录ID和名称查找未删除的文件夹
+     */
+    FileInfo findFolderByParentIdAndName(@Param("userId") String userId, @Param("parentId") String parentId, @Param("filename") String filename);
+
 
     /**
      * 根据父目录ID查找父目录路径
@@ -47,6 +62,16 @@ public interface FileInfoDao {
 
     List<FileInfo> findFileInfoByUserIdAndParentId(@Param("userId") String userId, @Param("parentId") String parentId);
 
+    /**
+     * 根据ID批量查找用户未删除的文件
+     */
+    List<FileInfo> findByUserIdAndIds(@Param("userId") String userId, @Param("fileIds") List<String> fileIds);
+
+    /**
+     * 批量查找多个目录下未删除的文件，用于逐层展开目录树
+     */
+    List<FileInfo> findByUserIdAndParentIds(@Param("userId") String userId, @Param("parentIds") List<String> parentIds);
+
 
     /**
      * 统计引用同一文件路径的文件数量
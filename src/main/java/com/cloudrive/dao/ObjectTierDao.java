@@ -0,0 +1,62 @@
+package com.cloudrive.dao;
+
+import com.cloudrive.model.entity.ObjectTier;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description
+ */
+@Mapper
+public interface ObjectTierDao {
+
+    ObjectTier findByObjectPath(@Param("objectPath") String objectPath);
+
+    /**
+     * 批量累加访问次数，没有记录的对象按热层插入
+     */
+    void batchUpsertAccess(@Param("accesses") List<ObjectTier> accesses, @Param("now") LocalDateTime now);
+
+    /**
+     * 为热层对象插入记录，已有记录或内容已无引用时忽略
+     */
+    void insertHotIfAbsent(@Param("objectPath") String objectPath, @Param("now") LocalDateTime now);
+
+    /**
+     * 切换对象的层级和位置，只在位置仍为expectedStoragePath且内容仍被引用时生效，同时清零访问次数；
+     * 内容记录先于存储对象删除，复制期间内容被删除时切换失败，由调用方删除新副本
+     * @return 更新的行数，0表示对象已被删除或已被迁移
+     */
+    int switchTier(@Param("objectPath") String objectPath,
+                   @Param("expectedStoragePath") String expectedStoragePath,
+                   @Param("tier") String tier,
+                   @Param("storagePath") String storagePath,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * 查找降级候选：创建和最后访问都早于cutoff的热层内容
+     * @param excludePacked 启用小文件打包时排除已打包的内容，它们的独立对象会被删除
+     */
+    List<ObjectTier> findDemotionCandidates(@Param("cutoff") LocalDateTime cutoff,
+                                           @Param("excludePacked") boolean excludePacked,
+                                           @Param("limit") int limit);
+
+    /**
+     * 查找升级候选：进入冷层后访问次数达到阈值的对象
+     */
+    List<ObjectTier> findPromotionCandidates(@Param("minAccessCount") long minAccessCount, @Param("limit") int limit);
+
+    /**
+     * 查找迁移早于switchedBefore、旧位置仍待删除的对象
+     */
+    List<ObjectTier> findPendingCleanup(@Param("switchedBefore") LocalDateTime switchedBefore, @Param("limit") int limit);
+
+    int clearPreviousPath(@Param("objectPath") String objectPath, @Param("previousPath") String previousPath);
+
+    int deleteByObjectPath(@Param("objectPath") String objectPath);
+}
@@ -0,0 +1,83 @@
+package com.cloudrive.dao;
+
+import com.cloudrive.model.entity.Pack;
+import com.cloudrive.model.entity.PackEntry;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description
+ */
+@Mapper
+public interface PackDao {
+
+    PackEntry findEntry(@Param("objectPath") String objectPath);
+
+    /**
+     * 查找条目并加行锁，保证释放时条目不会被并发重写到其他聚合对象
+     */
+    PackEntry findEntryForUpdate(@Param("objectPath") String objectPath);
+
+    /**
+     * 查找尚未打包的小文件内容，按创建时间从早到晚
+     * @return 只填充objectPath和length
+     */
+    List<PackEntry> findPackCandidates(@Param("maxFileSize") long maxFileSize,
+                                       @Param("createdBefore") LocalDateTime createdBefore,
+                                       @Param("limit") int limit);
+
+    void insertPack(@Param("pack") Pack pack);
+
+    /**
+     * 登记打包条目，只在内容仍被引用且尚未打包时插入
+     * @return 插入的行数，0表示内容已被回收或已被打包
+     */
+    int insertEntryIfReferenced(@Param("entry") PackEntry entry);
+
+    /**
+     * 把条目移到新的聚合对象，只在条目仍位于fromPackPath时生效
+     * @return 更新的行数，0表示条目已被删除
+     */
+    int moveEntry(@Param("objectPath") String objectPath,
+                  @Param("fromPackPath") String fromPackPath,
+                  @Param("toPackPath") String toPackPath,
+                  @Param("packOffset") long packOffset);
+
+    int deleteEntry(@Param("objectPath") String objectPath);
+
+    /**
+     * 条目被删除后扣减聚合对象的有效大小
+     */
+    int releaseBytes(@Param("packPath") String packPath, @Param("length") long length, @Param("now") LocalDateTime now);
+
+    /**
+     * 按条目表重新计算聚合对象的有效大小和条目数
+     */
+    int refreshLiveStats(@Param("packPath") String packPath, @Param("now") LocalDateTime now);
+
+    /**
+     * 查找有效大小占比不超过maxLiveRatio、需要重写的聚合对象，有效大小小的在前
+     */
+    List<Pack> findSparsePacks(@Param("maxLiveRatio") double maxLiveRatio, @Param("limit") int limit);
+
+    List<PackEntry> findEntriesByPackPath(@Param("packPath") String packPath);
+
+    /**
+     * 查找不再有条目、且最后变更早于updatedBefore的聚合对象
+     */
+    List<Pack> findEmptyPacks(@Param("updatedBefore") LocalDateTime updatedBefore, @Param("limit") int limit);
+
+    int deleteEmptyPack(@Param("packPath") String packPath);
+
+    /**
+     * 查找打包早于createdBefore、独立对象仍待删除的条目
+     */
+    List<PackEntry> findOriginalsPendingCleanup(@Param("createdBefore") LocalDateTime createdBefore, @Param("limit") int limit);
+
+    int markOriginalDeleted(@Param("objectPath") String objectPath);
+}
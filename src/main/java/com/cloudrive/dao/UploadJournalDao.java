@@ -0,0 +1,33 @@
+package com.cloudrive.dao;
+
+import com.cloudrive.model.entity.UploadJournal;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description
+ */
+@Mapper
+public interface UploadJournalDao {
+
+    /**
+     * 批量登记即将写入存储的对象
+     */
+    void batchInsert(@Param("objectPaths") List<String> objectPaths, @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * 删除上传日志
+     * @return 删除的行数，0表示日志已被回收任务处理
+     */
+    int batchDelete(@Param("objectPaths") List<String> objectPaths);
+
+    /**
+     * 查找早于指定时间的残留日志
+     */
+    List<UploadJournal> findCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore, @Param("limit") int limit);
+}
@@ -23,6 +23,7 @@ public interface FileInfoMapper {
     @Mapping(source = "isFolder", target = "isFolder")
     @Mapping(source = "createdAt", target = "createdAt")
     @Mapping(source = "updatedAt", target = "updatedAt")
+    @Mapping(target = "etag", expression = "java(com.cloudrive.common.util.ETagUtil.contentETag(fileInfo.getSha256Hash()))")
     FileListVO fileInfoToFileListVO(FileInfo fileInfo);
 
 
@@ -0,0 +1,29 @@
+package com.cloudrive.model.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/28
+ * @description 打包下载多个文件或文件夹
+ */
+@Data
+public class ArchiveDownloadDTO {
+
+    /**
+     * 要打包的文件或文件夹ID，文件夹会包含其下所有内容
+     */
+    @NotEmpty(message = "文件列表不能为空")
+    @Size(max = 1000, message = "单次最多选择1000个文件")
+    private List<String> fileIds;
+
+    /**
+     * 压缩包文件名（不含扩展名），为空时使用默认名称
+     */
+    @Size(max = 100, message = "压缩包文件名不能超过100个字符")
+    private String archiveName;
+}
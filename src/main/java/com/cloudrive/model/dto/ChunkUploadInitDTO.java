@@ -0,0 +1,30 @@
+package com.cloudrive.model.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 初始化分片上传
+ */
+@Data
+public class ChunkUploadInitDTO {
+    @NotBlank(message = "文件名不能为空")
+    private String filename;
+
+    @NotNull(message = "文件大小不能为空")
+    @Positive(message = "文件大小必须大于0")
+    private Long fileSize;
+
+    @NotBlank(message = "文件哈希值不能为空")
+    @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "文件哈希值必须是SHA-256十六进制字符串")
+    private String sha256Hash;
+
+    private String contentType;
+
+    private String parentId;
+}
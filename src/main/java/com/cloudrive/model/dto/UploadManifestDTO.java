@@ -0,0 +1,45 @@
+package com.cloudrive.model.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/14
+ * @description 上传清单，用于整个文件夹上传前的秒传协商
+ */
+@Data
+public class UploadManifestDTO {
+    private String parentId;
+
+    @NotEmpty(message = "上传清单不能为空")
+    @Size(max = 1000, message = "单次上传清单不能超过1000个文件")
+    @Valid
+    private List<Entry> files;
+
+    @Data
+    public static class Entry {
+        /**
+         * 相对于parentId的路径，例如 photos/2024/a.jpg
+         */
+        @NotBlank(message = "相对路径不能为空")
+        @Size(max = 1024, message = "相对路径不能超过1024个字符")
+        private String relativePath;
+
+        @NotNull(message = "文件大小不能为空")
+        @PositiveOrZero(message = "文件大小不能为负数")
+        private Long fileSize;
+
+        @NotBlank(message = "文件哈希值不能为空")
+        @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "文件哈希值必须是SHA-256十六进制字符串")
+        private String sha256Hash;
+    }
+}
@@ -0,0 +1,36 @@
+package com.cloudrive.model.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/23
+ * @description 批量查询上传进度
+ */
+@Data
+public class UploadProgressQueryDTO {
+
+    @NotEmpty(message = "任务列表不能为空")
+    @Size(max = 500, message = "单次最多查询500个任务")
+    @Valid
+    private List<Entry> tasks;
+
+    @Data
+    public static class Entry {
+        @NotBlank(message = "任务ID不能为空")
+        private String taskId;
+
+        /**
+         * 客户端已有的版本号，为空表示首次查询
+         */
+        @PositiveOrZero(message = "版本号不能为负数")
+        private Long version;
+    }
+}
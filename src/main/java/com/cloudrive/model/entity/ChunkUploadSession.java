@@ -0,0 +1,60 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 分片上传会话，保存在Redis中，任意节点都可以继续上传
+ */
+@Data
+public class ChunkUploadSession implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 会话ID，同时作为上传进度任务ID
+     */
+    private String uploadId;
+
+    private String userId;
+
+    private String parentId;
+
+    private String filename;
+
+    private String contentType;
+
+    private long fileSize;
+
+    private String sha256Hash;
+
+    private long chunkSize;
+
+    private int totalChunks;
+
+    /**
+     * 存储中的对象名
+     */
+    private String objectName;
+
+    /**
+     * 存储端的分片上传ID
+     */
+    private String multipartUploadId;
+
+    private long createdAt;
+
+    /**
+     * 计算指定分片的大小，最后一个分片可能不足chunkSize
+     */
+    public long getChunkLength(int chunkIndex) {
+        if (chunkIndex == totalChunks - 1) {
+            return fileSize - chunkSize * (totalChunks - 1);
+        }
+        return chunkSize;
+    }
+}
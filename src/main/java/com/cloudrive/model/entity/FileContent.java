@@ -0,0 +1,32 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/11/16
+ * @description 全局内容表，按SHA-256寻址，所有用户的相同内容共享一个存储对象
+ */
+@Data
+public class FileContent {
+
+    private String sha256Hash;
+
+    /**
+     * 存储中的对象路径
+     */
+    private String path;
+
+    private Long fileSize;
+
+    /**
+     * 引用该内容的文件记录数量，降为0时删除存储对象
+     */
+    private Integer refCount;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,51 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description 对象的存储层级：文件记录中的路径保持不变，实际位置由这里间接指向；
+ * 没有记录的对象位于热层，实际位置就是对象路径
+ */
+@Data
+public class ObjectTier {
+
+    public static final String TIER_HOT = "hot";
+    public static final String TIER_COLD = "cold";
+
+    /**
+     * 文件记录中的对象路径（逻辑路径）
+     */
+    private String objectPath;
+
+    private String tier;
+
+    /**
+     * 对象当前的实际位置
+     */
+    private String storagePath;
+
+    /**
+     * 迁移前的位置，其他节点缓存的旧位置过期后才删除
+     */
+    private String previousPath;
+
+    /**
+     * 进入当前层级以来的访问次数
+     */
+    private Long accessCount;
+
+    private LocalDateTime lastAccessedAt;
+
+    /**
+     * 内容大小，只在查询迁移候选时填充
+     */
+    private Long fileSize;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description 聚合对象：多个小文件的内容首尾相接写入一个存储对象，各文件的位置记录在PackEntry中
+ */
+@Data
+public class Pack {
+
+    /**
+     * 聚合对象的存储路径
+     */
+    private String packPath;
+
+    /**
+     * 聚合对象的总大小
+     */
+    private Long totalBytes;
+
+    /**
+     * 仍被引用的条目大小之和，与totalBytes的比例过低时重写
+     */
+    private Long liveBytes;
+
+    private Integer liveCount;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description 小文件在聚合对象中的位置：文件记录中的路径保持不变，读取时按偏移和长度对聚合对象做范围读取
+ */
+@Data
+public class PackEntry {
+
+    /**
+     * 文件记录中的对象路径（逻辑路径）
+     */
+    private String objectPath;
+
+    private String packPath;
+
+    /**
+     * 在聚合对象中的起始位置
+     */
+    private Long packOffset;
+
+    private Long length;
+
+    /**
+     * 打包前的独立对象是否已删除，打包后保留一段时间供缓存了旧位置的读取使用
+     */
+    private Boolean originalDeleted;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,19 @@
+package com.cloudrive.model.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description 上传日志：写入存储前登记对象路径，文件记录提交时在同一事务中删除，
+ * 残留的记录说明对象写入后元数据未提交，由定时任务回收
+ */
+@Data
+public class UploadJournal {
+
+    private String objectPath;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,27 @@
+package com.cloudrive.model.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 分片上传会话状态
+ */
+@Data
+public class ChunkUploadVO {
+    private String uploadId;
+    private Long fileSize;
+    private Long chunkSize;
+    private Integer totalChunks;
+    /**
+     * 尚未提交的分片序号（从0开始）
+     */
+    private List<Integer> missingChunks;
+    /**
+     * 是否已完成（秒传命中时初始化即完成）
+     */
+    private Boolean completed;
+    private String path;
+}
@@ -19,6 +19,10 @@ public class FileListVO {
     private String fileType;
     private String parentId;
     private Boolean isFolder;
+    /**
+     * 内容的强ETag，与下载响应的ETag一致，客户端可据此判断内容是否变化；文件夹为null
+     */
+    private String etag;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
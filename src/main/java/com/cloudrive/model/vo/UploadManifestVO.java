@@ -0,0 +1,28 @@
+package com.cloudrive.model.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/14
+ * @description 上传清单协商结果，只返回仍需上传内容的文件
+ */
+@Data
+public class UploadManifestVO {
+    private Integer totalFiles;
+    private Integer matchedFiles;
+    private List<MissingFile> missingFiles;
+
+    @Data
+    public static class MissingFile {
+        private String relativePath;
+        private Long fileSize;
+        private String sha256Hash;
+        /**
+         * 文件所在目录的ID，上传时作为parentId传入
+         */
+        private String parentId;
+    }
+}
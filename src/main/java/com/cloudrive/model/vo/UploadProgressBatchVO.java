@@ -0,0 +1,22 @@
+package com.cloudrive.model.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/23
+ * @description 批量查询上传进度的结果，未变化的任务不返回
+ */
+@Data
+public class UploadProgressBatchVO {
+    /**
+     * 版本高于客户端已有版本的任务
+     */
+    private List<UploadProgressVO> changed;
+    /**
+     * 不存在或已过期的任务ID
+     */
+    private List<String> notFound;
+}
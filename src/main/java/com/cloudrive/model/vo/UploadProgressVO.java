@@ -0,0 +1,39 @@
+package com.cloudrive.model.vo;
+
+import lombok.Data;
+
+/**
+ * @author cd
+ * @date 2025/11/22
+ * @description 上传进度，查询接口和SSE推送共用
+ */
+@Data
+public class UploadProgressVO {
+    private String taskId;
+    private Long bytesTransferred;
+    private Long totalSize;
+    /**
+     * 进度百分比，由已传输字节数计算
+     */
+    private Double progress;
+    private Boolean completed;
+    private Boolean success;
+    private String message;
+    /**
+     * 任务版本号，批量查询时回传以跳过未变化的任务
+     */
+    private Long version;
+
+    /**
+     * 根据已传输字节数计算进度百分比，已完成的任务为100
+     */
+    public void computeProgress() {
+        if (Boolean.TRUE.equals(completed)) {
+            progress = 100.0;
+        } else if (totalSize != null && totalSize > 0 && bytesTransferred != null) {
+            progress = Math.min(100.0, bytesTransferred * 100.0 / totalSize);
+        } else {
+            progress = 0.0;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.cloudrive.redis;
+
+import com.cloudrive.common.constant.CommonConstants;
+import com.cloudrive.model.entity.ChunkUploadSession;
+import org.redisson.api.RBitSet;
+import org.redisson.api.RBucket;
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 分片上传会话状态：会话信息、已提交分片位图、分片ETag
+ */
+@Component
+public class ChunkUploadRedis {
+    private final RedissonClient redissonClient;
+    public static final String SESSION_PREFIX = "chunk_upload:session:";
+    public static final String CHUNKS_PREFIX = "chunk_upload:chunks:";
+    public static final String ETAGS_PREFIX = "chunk_upload:etags:";
+    public static final String LOCK_PREFIX = "chunk_upload:lock:";
+    /**
+     * 会话过期时间索引（有序集合，分数为过期时间戳），会话键过期后由回收任务据此中止存储端的分片上传
+     */
+    public static final String EXPIRY_KEY = "chunk_upload:expiry";
+    /**
+     * 回收任务使用的会话副本，会话键过期后仍能找到对象名和存储端的分片上传ID
+     */
+    public static final String PENDING_KEY = "chunk_upload:pending";
+
+    private static final Duration SESSION_TTL = Duration.ofMillis(CommonConstants.Time.ONE_DAY);
+
+    public ChunkUploadRedis(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    private RBucket<ChunkUploadSession> getSessionBucket(String uploadId) {
+        return redissonClient.getBucket(SESSION_PREFIX + uploadId);
+    }
+
+    private RBitSet getChunkBitSet(String uploadId) {
+        return redissonClient.getBitSet(CHUNKS_PREFIX + uploadId);
+    }
+
+    private RMap<Integer, String> getETagMap(String uploadId) {
+        return redissonClient.getMap(ETAGS_PREFIX + uploadId);
+    }
+
+    private RScoredSortedSet<String> getExpiryIndex() {
+        return redissonClient.getScoredSortedSet(EXPIRY_KEY, StringCodec.INSTANCE);
+    }
+
+    private RMap<String, ChunkUploadSession> getPendingSessions() {
+        return redissonClient.getMap(PENDING_KEY);
+    }
+
+    private void touchExpiry(String uploadId) {
+        getExpiryIndex().add(System.currentTimeMillis() + SESSION_TTL.toMillis(), uploadId);
+    }
+
+    /**
+     * 保存上传会话
+     *
+     * @param session 上传会话
+     */
+    public void saveSession(ChunkUploadSession session) {
+        getPendingSessions().fastPut(session.getUploadId(), session);
+        getSessionBucket(session.getUploadId()).set(session, SESSION_TTL);
+        touchExpiry(session.getUploadId());
+    }
+
+    /**
+     * 获取上传会话
+     *
+     * @param uploadId 会话ID
+     * @return 上传会话，不存在或已过期时返回null
+     */
+    public ChunkUploadSession getSession(String uploadId) {
+        return getSessionBucket(uploadId).get();
+    }
+
+    /**
+     * 记录已提交的分片，先写ETag再置位，保证位图中的分片一定有ETag
+     *
+     * @param uploadId   会话ID
+     * @param chunkIndex 分片序号（从0开始）
+     * @param etag       分片ETag
+     * @return 已提交的分片数量
+     */
+    public long markChunkUploaded(String uploadId, int chunkIndex, String etag) {
+        RMap<Integer, String> etags = getETagMap(uploadId);
+        etags.fastPut(chunkIndex + 1, etag);
+        etags.expire(SESSION_TTL);
+
+        RBitSet chunks = getChunkBitSet(uploadId);
+        chunks.set(chunkIndex);
+        chunks.expire(SESSION_TTL);
+        getSessionBucket(uploadId).expire(SESSION_TTL);
+        touchExpiry(uploadId);
+        return chunks.cardinality();
+    }
+
+    /**
+     * 获取已提交分片的位图
+     *
+     * @param uploadId 会话ID
+     * @return 已提交分片位图
+     */
+    public BitSet getUploadedChunks(String uploadId) {
+        return getChunkBitSet(uploadId).asBitSet();
+    }
+
+    /**
+     * 获取所有分片的ETag
+     *
+     * @param uploadId 会话ID
+     * @return 分片序号（从1开始）到ETag的映射
+     */
+    public Map<Integer, String> getPartETags(String uploadId) {
+        return getETagMap(uploadId).readAllMap();
+    }
+
+    /**
+     * 获取合并分片时使用的分布式锁名
+     *
+     * @param uploadId 会话ID
+     * @return 锁名
+     */
+    public String getLockName(String uploadId) {
+        return LOCK_PREFIX + uploadId;
+    }
+
+    /**
+     * 删除上传会话及其分片状态
+     *
+     * @param uploadId 会话ID
+     */
+    public void deleteSession(String uploadId) {
+        redissonClient.getKeys().delete(SESSION_PREFIX + uploadId, CHUNKS_PREFIX + uploadId, ETAGS_PREFIX + uploadId);
+        getExpiryIndex().remove(uploadId);
+        getPendingSessions().fastRemove(uploadId);
+    }
+
+    /**
+     * 获取已过期但存储端分片上传未中止的会话
+     *
+     * @param now   当前时间戳
+     * @param limit 最多返回的数量
+     * @return 会话键已过期的会话；索引过期但会话键仍存在的（刚续期）不返回
+     */
+    public List<ChunkUploadSession> getExpiredSessions(long now, int limit) {
+        Collection<String> uploadIds = getExpiryIndex().valueRange(Double.NEGATIVE_INFINITY, true, now, true, 0, limit);
+        if (uploadIds.isEmpty()) {
+            return List.of();
+        }
+        Map<String, ChunkUploadSession> sessions = getPendingSessions().getAll(Set.copyOf(uploadIds));
+        List<ChunkUploadSession> expired = new ArrayList<>();
+        for (String uploadId : uploadIds) {
+            ChunkUploadSession session = sessions.get(uploadId);
+            if (session == null) {
+                // 没有副本无法中止，只清理索引
+                getExpiryIndex().remove(uploadId);
+            } else if (!getSessionBucket(uploadId).isExists()) {
+                expired.add(session);
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,30 @@
+package com.cloudrive.redis;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author cd
+ * @date 2025/11/21
+ * @description 按内容哈希的上传互斥锁，集群内相同内容同一时间只有一个请求写入存储
+ */
+@Component
+public class UploadFlightRedis {
+    private final RedissonClient redissonClient;
+    public static final String FLIGHT_LOCK_PREFIX = "upload_flight:lock:";
+
+    public UploadFlightRedis(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * 获取内容哈希对应的上传锁，由持有者续期，持有者宕机后自动释放
+     *
+     * @param sha256Hash 内容哈希值
+     * @return 分布式锁
+     */
+    public RLock getLock(String sha256Hash) {
+        return redissonClient.getLock(FLIGHT_LOCK_PREFIX + sha256Hash);
+    }
+}
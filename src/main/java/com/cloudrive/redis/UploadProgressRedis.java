@@ -1,25 +1,77 @@
 package com.cloudrive.redis;
 
 import com.cloudrive.common.constant.CommonConstants;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
 import com.cloudrive.service.UploadProgressService.UploadTask;
-import org.redisson.api.RBucket;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author cd
  * @date 2025/10/10
- * @description
+ * @description 上传任务以Redis哈希保存，进度字段原地原子更新，不再整体读出和写回
  */
 @Component
 public class UploadProgressRedis {
     private final RedissonClient redissonClient;
     public static final String UPLOAD_PROGRESS_PREFIX = "upload_progress:";
+    public static final String PROGRESS_CHANNEL_PREFIX = "upload_progress:channel:";
 
-    public UploadProgressRedis(RedissonClient redissonClient, ObjectMapper objectMapper) {
+    private static final Duration ACTIVE_TTL = Duration.ofMillis(CommonConstants.Time.ONE_HOUR);
+    private static final Duration COMPLETED_TTL = Duration.ofMillis(CommonConstants.Time.ONE_MINUTE);
+
+    /**
+     * 合并更新脚本：任务不存在时忽略；已完成的任务不再有任何变化；已传输字节数取较大值后再原子累加；
+     * 每次更新递增版本号，并把最新状态发布到任务所属用户的频道
+     * ARGV: 1 已传输字节数绝对值 2 累加字节数 3 总大小 4 是否成功 5 消息 6 过期毫秒数 7 频道前缀 8 任务ID
+     */
+    private static final String APPLY_UPDATE_SCRIPT = """
+            if redis.call('exists', KEYS[1]) == 0 then return 0 end
+            if redis.call('hget', KEYS[1], 'completed') == '1' then return 1 end
+            if ARGV[1] ~= '' and tonumber(ARGV[1]) > tonumber(redis.call('hget', KEYS[1], 'bytesTransferred') or '0') then
+                redis.call('hset', KEYS[1], 'bytesTransferred', ARGV[1])
+            end
+            if ARGV[2] ~= '0' then redis.call('hincrby', KEYS[1], 'bytesTransferred', ARGV[2]) end
+            if ARGV[3] ~= '' then redis.call('hset', KEYS[1], 'totalSize', ARGV[3]) end
+            if ARGV[4] ~= '' then
+                redis.call('hset', KEYS[1], 'completed', '1', 'success', ARGV[4], 'message', ARGV[5])
+            end
+            redis.call('pexpire', KEYS[1], ARGV[6])
+            local version = redis.call('hincrby', KEYS[1], 'version', 1)
+            local state = redis.call('hmget', KEYS[1], 'userId', 'bytesTransferred', 'totalSize', 'completed', 'success', 'message')
+            if state[1] and state[1] ~= '' then
+                redis.call('publish', ARGV[7] .. state[1], cjson.encode({
+                    taskId = ARGV[8], version = version, bytesTransferred = tonumber(state[2]), totalSize = tonumber(state[3]),
+                    completed = state[4] == '1', success = state[5] == '1', message = state[6]}))
+            end
+            return 1
+            """;
+
+    /**
+     * 按版本读取脚本：任务不存在返回空列表；版本未超过客户端版本时只返回version字段；否则返回全部字段
+     * ARGV: 1 客户端已有的版本号
+     */
+    private static final String READ_IF_CHANGED_SCRIPT = """
+            local version = redis.call('hget', KEYS[1], 'version')
+            if not version then return {} end
+            if tonumber(version) <= tonumber(ARGV[1]) then return {'version', version} end
+            return redis.call('hgetall', KEYS[1])
+            """;
+
+    public UploadProgressRedis(RedissonClient redissonClient) {
         this.redissonClient = redissonClient;
     }
 
@@ -27,8 +79,8 @@ public class UploadProgressRedis {
         return UPLOAD_PROGRESS_PREFIX + taskId;
     }
 
-    private RBucket<UploadTask> getBucket(String taskId) {
-        return redissonClient.getBucket(getKey(taskId));
+    private RMap<String, String> getHash(String taskId) {
+        return redissonClient.getMap(getKey(taskId), StringCodec.INSTANCE);
     }
 
     /**
@@ -37,27 +89,92 @@ public class UploadProgressRedis {
      * @param task 上传任务
      */
     public void createTask(UploadTask task) {
-        getBucket(task.getId()).set(task, Duration.ofMillis(CommonConstants.Time.ONE_HOUR));
+        Map<String, String> fields = new HashMap<>();
+        fields.put("id", task.getId());
+        fields.put("userId", task.getUserId() == null ? "" : task.getUserId());
+        fields.put("filename", task.getFilename() == null ? "" : task.getFilename());
+        fields.put("totalSize", String.valueOf(task.getTotalSize()));
+        fields.put("bytesTransferred", "0");
+        fields.put("completed", "0");
+        fields.put("success", "0");
+        fields.put("message", "");
+        fields.put("createdAt", String.valueOf(task.getCreatedAt()));
+        fields.put("version", "1");
+
+        RBatch batch = redissonClient.createBatch();
+        RMapAsync<String, String> hash = batch.getMap(getKey(task.getId()), StringCodec.INSTANCE);
+        hash.putAllAsync(fields);
+        hash.expireAsync(ACTIVE_TTL);
+        batch.execute();
     }
 
     /**
-     * 更新上传任务
+     * 在一次往返中写入多个任务的合并更新
      *
-     * @param task 上传任务
+     * @param updates 合并后的进度更新
      */
-    public void updateTask(UploadTask task) {
-        RBucket<UploadTask> bucket = getBucket(task.getId());
-        bucket.set(task, Duration.ofMillis(CommonConstants.Time.ONE_HOUR));
+    public void applyUpdates(Collection<ProgressUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        for (ProgressUpdate update : updates) {
+            boolean completed = update.getSuccess() != null;
+            batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, APPLY_UPDATE_SCRIPT, RScript.ReturnType.INTEGER,
+                    List.of(getKey(update.getTaskId())),
+                    update.getBytesTransferred() == null ? "" : String.valueOf(update.getBytesTransferred()),
+                    String.valueOf(update.getBytesDelta()),
+                    update.getTotalSize() == null ? "" : String.valueOf(update.getTotalSize()),
+                    completed ? (update.getSuccess() ? "1" : "0") : "",
+                    update.getMessage() == null ? "" : update.getMessage(),
+                    String.valueOf((completed ? COMPLETED_TTL : ACTIVE_TTL).toMillis()),
+                    PROGRESS_CHANNEL_PREFIX,
+                    update.getTaskId());
+        }
+        batch.execute();
     }
 
     /**
      * 获取上传任务
      *
      * @param taskId 任务ID
-     * @return 上传任务
+     * @return 上传任务，不存在或已过期时返回null
      */
     public UploadTask getTask(String taskId) {
-        return getBucket(taskId).get();
+        return toTask(getHash(taskId).readAllMap());
+    }
+
+    /**
+     * 在一次往返中读取多个任务，只返回版本高于客户端已有版本的任务
+     *
+     * @param sinceVersions 任务ID -> 客户端已有的版本号，0表示没有
+     * @param changed 输出：有变化的任务
+     * @param notFound 输出：不存在或已过期的任务ID
+     */
+    @SuppressWarnings("unchecked")
+    public void getTasksChangedSince(Map<String, Long> sinceVersions, List<UploadTask> changed, List<String> notFound) {
+        if (sinceVersions.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        List<String> taskIds = new ArrayList<>(sinceVersions.keySet());
+        for (String taskId : taskIds) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_ONLY, READ_IF_CHANGED_SCRIPT, RScript.ReturnType.MULTI,
+                    List.of(getKey(taskId)), String.valueOf(sinceVersions.get(taskId)));
+        }
+        List<?> responses = batch.execute().getResponses();
+        for (int i = 0; i < taskIds.size(); i++) {
+            List<Object> flat = (List<Object>) responses.get(i);
+            if (flat == null || flat.isEmpty()) {
+                notFound.add(taskIds.get(i));
+            } else if (flat.size() > 2) {
+                Map<String, String> fields = new HashMap<>();
+                for (int j = 0; j + 1 < flat.size(); j += 2) {
+                    fields.put(String.valueOf(flat.get(j)), String.valueOf(flat.get(j + 1)));
+                }
+                changed.add(toTask(fields));
+            }
+        }
     }
 
     /**
@@ -66,19 +183,39 @@ public class UploadProgressRedis {
      * @param taskId 任务ID
      */
     public void deleteTask(String taskId) {
-        getBucket(taskId).delete();
+        getHash(taskId).delete();
     }
 
     /**
-     * 标记任务完成并设置过期时间
+     * 获取用户的进度频道，订阅后可收到该用户所有任务的进度，不要求上传发生在当前节点
      *
-     * @param task 上传任务
+     * @param userId 用户ID
+     * @return 进度频道，消息为JSON格式的进度
      */
-    public void completeTask(UploadTask task) {
-        // 设置任务为完成状态
-        task.setCompleted(true);
+    public RTopic getProgressTopic(String userId) {
+        return redissonClient.getTopic(PROGRESS_CHANNEL_PREFIX + userId, StringCodec.INSTANCE);
+    }
+
+    private UploadTask toTask(Map<String, String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        UploadTask task = new UploadTask(fields.get("id"), fields.get("userId"), fields.get("filename"), parseLong(fields.get("totalSize")));
+        task.setBytesTransferred(parseLong(fields.get("bytesTransferred")));
+        task.setCompleted("1".equals(fields.get("completed")));
+        task.setSuccess("1".equals(fields.get("success")));
+        task.setMessage(fields.getOrDefault("message", ""));
+        task.setCreatedAt(parseLong(fields.get("createdAt")));
+        task.setVersion(parseLong(fields.get("version")));
+        if (task.isCompleted()) {
+            task.setProgress(100);
+        } else if (task.getTotalSize() > 0) {
+            task.setProgress(Math.min(100, task.getBytesTransferred() * 100.0 / task.getTotalSize()));
+        }
+        return task;
+    }
 
-        // 保存到Redis并设置5分钟的过期时间
-        getBucket(task.getId()).set(task, Duration.ofMillis(CommonConstants.Time.ONE_MINUTE));
+    private long parseLong(String value) {
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
     }
 }
@@ -0,0 +1,285 @@
+package com.cloudrive.service;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.UserContext;
+import com.cloudrive.dao.FileInfoDao;
+import com.cloudrive.model.entity.FileInfo;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @author cd
+ * @date 2025/11/28
+ * @description 打包下载：把文件夹子树或任意选择的文件以ZIP流式写到响应，不在磁盘或内存中暂存压缩包
+ */
+@Service
+public class ArchiveDownloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveDownloadService.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 查询子目录时每批的目录数量，避免IN列表过长
+     */
+    private static final int PARENT_BATCH_SIZE = 500;
+
+    /**
+     * 本身已压缩的格式，再次压缩几乎不减小体积，只按存储方式写入以节省CPU
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar", "apk",
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp3", "aac", "m4a", "ogg", "flac", "opus",
+            "mp4", "m4v", "mkv", "mov", "avi", "webm", "flv", "wmv",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "pdf");
+
+    private static final DateTimeFormatter DEFAULT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final FileInfoDao fileInfoDao;
+    private final FileService fileService;
+    private final Executor storageIoExecutor;
+
+    /**
+     * 单个压缩包最多包含的条目数（含文件夹）
+     */
+    @Value("${download.archive.max-entries:10000}")
+    private int maxEntries;
+
+    /**
+     * 写当前条目时提前打开的后续文件数，小文件的内容在等待期间即可到达，隐藏逐个请求存储端的往返延迟
+     */
+    @Value("${download.archive.prefetch:4}")
+    private int prefetch;
+
+    public ArchiveDownloadService(FileInfoDao fileInfoDao, FileService fileService,
+                                  @Qualifier("storageIoExecutor") Executor storageIoExecutor) {
+        this.fileInfoDao = fileInfoDao;
+        this.fileService = fileService;
+        this.storageIoExecutor = storageIoExecutor;
+    }
+
+    /**
+     * 展开要打包的文件，在请求线程中完成鉴权和元数据查询，写压缩包时不再访问数据库
+     *
+     * @param fileIds 文件或文件夹ID，文件夹会包含其下所有内容
+     * @param archiveName 压缩包文件名（不含扩展名），为空时单个文件夹使用文件夹名，否则使用默认名称
+     * @return 压缩包的文件名和条目
+     */
+    public Archive prepareArchive(List<String> fileIds, String archiveName) {
+        String userId = UserContext.getCurrentUserId();
+        List<String> distinctIds = fileIds.stream().distinct().toList();
+        Map<String, FileInfo> selectedById = new HashMap<>();
+        for (FileInfo fileInfo : fileInfoDao.findByUserIdAndIds(userId, distinctIds)) {
+            selectedById.put(fileInfo.getFileInfoId(), fileInfo);
+        }
+        ExceptionUtil.throwIf(selectedById.size() != distinctIds.size(), ErrorCode.FILE_NOT_FOUND);
+        ExceptionUtil.throwIf(distinctIds.size() > maxEntries, ErrorCode.ARCHIVE_TOO_LARGE);
+
+        List<ArchiveEntry> entries = new ArrayList<>();
+        // 目录前缀 -> 该目录下已使用的名称，同名文件追加序号
+        Map<String, Set<String>> usedNames = new HashMap<>();
+        // 待展开的文件夹ID -> 在压缩包中的目录前缀
+        Map<String, String> folders = new LinkedHashMap<>();
+        for (String fileId : distinctIds) {
+            addEntry(selectedById.get(fileId), "", entries, usedNames, folders);
+        }
+
+        Set<String> visited = new HashSet<>();
+        while (!folders.isEmpty()) {
+            Map<String, String> level = folders;
+            folders = new LinkedHashMap<>();
+            visited.addAll(level.keySet());
+            List<String> parentIds = new ArrayList<>(level.keySet());
+            for (int from = 0; from < parentIds.size(); from += PARENT_BATCH_SIZE) {
+                List<String> batch = parentIds.subList(from, Math.min(from + PARENT_BATCH_SIZE, parentIds.size()));
+                for (FileInfo child : fileInfoDao.findByUserIdAndParentIds(userId, batch)) {
+                    if (visited.contains(child.getFileInfoId())) {
+                        continue;
+                    }
+                    addEntry(child, level.get(child.getParentId()), entries, usedNames, folders);
+                    ExceptionUtil.throwIf(entries.size() > maxEntries, ErrorCode.ARCHIVE_TOO_LARGE);
+                }
+            }
+        }
+
+        String name = archiveName;
+        if (name == null || name.isBlank()) {
+            FileInfo single = distinctIds.size() == 1 ? selectedById.get(distinctIds.get(0)) : null;
+            name = single != null && single.getIsFolder()
+                    ? single.getFilename()
+                    : "cloudrive-" + LocalDateTime.now().format(DEFAULT_NAME_FORMAT);
+        }
+        return new Archive(name + ".zip", entries);
+    }
+
+    /**
+     * 把条目依次写成ZIP；后续文件在存储I/O线程池中提前打开，同时打开的文件数不超过prefetch
+     *
+     * @param entries prepareArchive返回的条目
+     * @param outputStream 响应输出流
+     */
+    public void writeArchive(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException {
+        List<ArchiveEntry> files = entries.stream().filter(entry -> !entry.isDirectory()).toList();
+        Deque<CompletableFuture<InputStream>> window = new ArrayDeque<>();
+        int nextFile = 0;
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(outputStream, COPY_BUFFER_SIZE), StandardCharsets.UTF_8);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try {
+            for (ArchiveEntry entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry.getName());
+                zipEntry.setLastModifiedTime(FileTime.from(entry.getFileInfo().getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant()));
+                if (entry.isDirectory()) {
+                    zip.putNextEntry(zipEntry);
+                    zip.closeEntry();
+                    continue;
+                }
+                while (window.size() < Math.max(1, prefetch) && nextFile < files.size()) {
+                    FileInfo fileInfo = files.get(nextFile++).getFileInfo();
+                    window.add(CompletableFuture.supplyAsync(() -> fileService.openFileContent(fileInfo), storageIoExecutor));
+                }
+                // 已压缩的格式以0级压缩写入，只计算CRC不做压缩；STORED方式需要预先知道CRC，无法边读边写
+                zip.setLevel(isCompressed(entry.getName()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(zipEntry);
+                try (InputStream inputStream = await(window.poll(), entry)) {
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        zip.write(buffer, 0, bytesRead);
+                    }
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // 中途失败时关闭已提前打开的数据流
+            window.forEach(future -> future.thenAccept(this::closeQuietly));
+        }
+    }
+
+    private InputStream await(CompletableFuture<InputStream> future, ArchiveEntry entry) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 响应已开始，无法再返回错误码，只能中断连接让客户端发现压缩包不完整
+            logger.error("打包下载读取文件失败：fileId={}, name={}", entry.getFileInfo().getFileInfoId(), entry.getName(), e.getCause());
+            throw new IOException("读取文件失败：" + entry.getName(), e.getCause());
+        }
+    }
+
+    private void addEntry(FileInfo fileInfo, String prefix, List<ArchiveEntry> entries,
+                          Map<String, Set<String>> usedNames, Map<String, String> folders) {
+        String name = prefix + uniqueName(usedNames.computeIfAbsent(prefix, k -> new HashSet<>()), sanitize(fileInfo.getFilename()));
+        if (fileInfo.getIsFolder()) {
+            entries.add(new ArchiveEntry(name + "/", fileInfo));
+            folders.put(fileInfo.getFileInfoId(), name + "/");
+        } else {
+            entries.add(new ArchiveEntry(name, fileInfo));
+        }
+    }
+
+    /**
+     * 同一目录下重名时追加序号，如 a.txt、a (1).txt
+     */
+    private static String uniqueName(Set<String> used, String name) {
+        if (used.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (used.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * 文件名中的路径分隔符和.、..会让解压时的路径逃出目标目录，替换掉
+     */
+    private static String sanitize(String filename) {
+        String name = filename == null ? "" : filename.replace('/', '_').replace('\\', '_');
+        if (name.isBlank() || ".".equals(name) || "..".equals(name)) {
+            return "_";
+        }
+        return name;
+    }
+
+    private static boolean isCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            logger.warn("关闭文件流失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 待写出的压缩包
+     */
+    @Getter
+    public static class Archive {
+        private final String filename;
+        private final List<ArchiveEntry> entries;
+
+        private Archive(String filename, List<ArchiveEntry> entries) {
+            this.filename = filename;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * 压缩包中的一个条目，文件夹的名称以/结尾
+     */
+    @Getter
+    public static class ArchiveEntry {
+        private final String name;
+        private final FileInfo fileInfo;
+
+        private ArchiveEntry(String name, FileInfo fileInfo) {
+            this.name = name;
+            this.fileInfo = fileInfo;
+        }
+
+        public boolean isDirectory() {
+            return fileInfo.getIsFolder();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloudrive.service;
+
+import com.cloudrive.model.dto.ChunkUploadInitDTO;
+import com.cloudrive.model.vo.ChunkUploadVO;
+
+import java.io.InputStream;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 可断点续传的分片上传
+ */
+public interface ChunkUploadService {
+    /**
+     * 初始化分片上传会话，命中秒传时直接完成
+     */
+    ChunkUploadVO initUpload(ChunkUploadInitDTO dto);
+
+    /**
+     * 上传单个分片，分片可以乱序、由任意节点接收
+     * @param uploadId 会话ID
+     * @param chunkIndex 分片序号（从0开始）
+     * @param inputStream 分片数据
+     * @param contentLength 请求体长度
+     */
+    void uploadChunk(String uploadId, int chunkIndex, InputStream inputStream, long contentLength);
+
+    /**
+     * 查询会话状态及缺失的分片
+     */
+    ChunkUploadVO getUploadStatus(String uploadId);
+
+    /**
+     * 所有分片提交后在存储端合并，之后在后台校验哈希值并保存文件记录，
+     * 结果通过上传进度任务（任务ID即uploadId）返回，校验期间再次合并或取消返回上传正在合并
+     * @return 会话状态，completed为false表示正在校验
+     */
+    ChunkUploadVO completeUpload(String uploadId);
+
+    /**
+     * 取消上传并清理分片
+     */
+    void abortUpload(String uploadId);
+}
@@ -0,0 +1,65 @@
+package com.cloudrive.service;
+
+import com.cloudrive.model.entity.FileContent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author cd
+ * @date 2025/11/16
+ * @description 全局内容寻址存储，负责内容对象的引用计数与回收
+ */
+public interface FileContentService {
+    /**
+     * 引用已存在的内容（秒传），引用计数加一
+     * @param sha256Hash 内容哈希值
+     * @param fileSize 声明的文件大小，与已存储内容不一致时视为未命中
+     * @return 已存在的内容，未命中时返回null
+     */
+    FileContent acquireExisting(String sha256Hash, long fileSize);
+
+    /**
+     * 批量查找内容并加行锁，需在事务中调用，随后用addReferences登记命中的引用
+     * @param sha256Hashes 内容哈希值
+     * @return 已存在的内容
+     */
+    List<FileContent> lockContents(List<String> sha256Hashes);
+
+    /**
+     * 一条语句批量增加引用计数
+     * @param refsByHash 内容哈希值 -> 本次新增的引用数
+     */
+    void addReferences(Map<String, Integer> refsByHash);
+
+    /**
+     * 登记刚写入存储的对象；内容已存在时在事务提交后删除该对象并返回已有对象路径
+     * @param sha256Hash 内容哈希值
+     * @param objectPath 刚写入的对象路径
+     * @param fileSize 文件大小
+     * @return 文件记录应指向的对象路径
+     */
+    String register(String sha256Hash, String objectPath, long fileSize);
+
+    /**
+     * 批量查找已存在的内容（不加锁），用于事务外的预判断
+     * @param sha256Hashes 内容哈希值
+     * @return 哈希值 -> 内容
+     */
+    Map<String, FileContent> findContents(List<String> sha256Hashes);
+
+    /**
+     * 在一个事务中批量登记引用：已存在的内容增加引用，其余内容以本次写入的对象登记（多行INSERT），
+     * 写入期间被并发登记的内容改为引用已有对象，本次写入的对象在事务提交后删除
+     * @param refsByHash 哈希值 -> 本次新增的引用数
+     * @param uploadedContents 本次新写入的对象（哈希值 -> 对象路径和大小）
+     * @return 哈希值 -> 文件记录应指向的对象路径
+     */
+    Map<String, String> registerAll(Map<String, Integer> refsByHash, Map<String, FileContent> uploadedContents);
+
+    /**
+     * 释放一个引用，引用计数降为0时在事务提交后删除存储对象
+     * @param sha256Hash 内容哈希值
+     */
+    void release(String sha256Hash);
+}
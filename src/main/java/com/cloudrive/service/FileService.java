@@ -1,10 +1,15 @@
 package com.cloudrive.service;
 
+import com.cloudrive.model.dto.UploadManifestDTO;
+import com.cloudrive.model.entity.FileInfo;
+import com.cloudrive.model.entity.User;
 import com.cloudrive.model.vo.FileListVO;
+import com.cloudrive.model.vo.UploadManifestVO;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -18,15 +23,78 @@ public interface FileService {
      */
     String uploadFile(MultipartFile file, String parentId);
 
+    /**
+     * 一次请求上传多个文件：批次内相同内容只存储一次，文件记录在一个短事务中批量写入
+     * @return 各文件的路径，与入参顺序一致
+     */
+    List<String> uploadFiles(List<MultipartFile> files, String parentId);
+
+    /**
+     * 以流的方式上传文件，流按fileSize读取一次，边上传边计算哈希值
+     */
+    String uploadFile(InputStream inputStream, String filename, String contentType, long fileSize, String parentId);
+
+    /**
+     * 以流的方式上传已知哈希值的文件，先尝试秒传（只命中当前用户已拥有的内容），相同内容的并发上传只有一个写入存储
+     * @param sha256Hash 客户端声明的SHA-256，写入完成后校验，为null时等同于不带哈希值的上传
+     */
+    String uploadFile(InputStream inputStream, String filename, String contentType, long fileSize, String parentId, String sha256Hash);
+
+    /**
+     * 获取上传路径
+     */
+    String getUploadPath(String parentId, User currentUser);
+
+    /**
+     * 尝试秒传：当前用户已拥有相同内容时直接创建文件记录；哈希值由客户端声明，不会命中其他用户的内容
+     * @param taskId 上传任务ID，如果为null则不进行进度跟踪
+     * @return 新创建的文件记录，未命中时返回null
+     */
+    FileInfo tryFastUpload(String filename, long fileSize, String contentType, String sha256Hash, String parentId, String taskId, User currentUser);
+
+    /**
+     * 为已写入存储的对象保存文件记录，命中秒传时删除该对象并指向已有文件，同时提交该对象的上传日志
+     * @param objectPath 已写入存储并登记了上传日志的对象路径
+     * @return 文件记录最终指向的对象路径
+     */
+    String saveUploadedFile(String filename, long fileSize, String contentType, String sha256Hash, String objectPath, String parentId, User currentUser);
+
+    /**
+     * 上传前按清单协商秒传：命中当前用户已拥有内容的文件直接创建记录，只返回仍需上传内容的文件
+     */
+    UploadManifestVO checkUploadManifest(UploadManifestDTO manifest);
+
     /**
      * 获取文件列表
      */
     List<FileListVO> listFiles(String parentId);
 
     /**
-     * 下载文件
+     * 获取可下载的文件，校验归属并排除文件夹
+     */
+    FileInfo getDownloadableFile(String fileId);
+
+    /**
+     * 打开文件内容的数据流，由调用方关闭
+     */
+    InputStream openFileContent(FileInfo fileInfo);
+
+    /**
+     * 获取重定向下载的临时URL，同一对象和文件名在同一有效期区间内复用已签名的URL
+     * @return 临时URL，未启用重定向下载或存储端不支持时返回null
      */
-    byte[] downloadFile(String fileId);
+    String getDownloadRedirectUrl(FileInfo fileInfo);
+
+    /**
+     * 打开文件内容的本地缓存，由调用方关闭
+     * @return 缓存内容，未启用缓存、不可缓存或未命中（后台填充中）时返回null，此时应直接读取存储端
+     */
+    LocalContentCache.CachedContent openCachedContent(FileInfo fileInfo);
+
+    /**
+     * 打开文件内容中一段的数据流，由调用方关闭
+     */
+    InputStream openFileContent(FileInfo fileInfo, long offset, long length);
 
     /**
      * 获取文件名
@@ -34,4 +102,9 @@ public interface FileService {
     String getFilename(String fileId);
 
     void renameFile(String fileId, String newFilename);
+
+    /**
+     * 删除文件或空文件夹
+     */
+    void deleteFile(String fileId);
 }
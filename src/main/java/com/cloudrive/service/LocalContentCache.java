@@ -0,0 +1,210 @@
+package com.cloudrive.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * @author cd
+ * @date 2025/11/27
+ * @description 下载的本地磁盘热点缓存：按内容哈希缓存，去重后的文件共用一份；
+ * 容量按字节数限制，由Caffeine的W-TinyLFU淘汰；未命中时在后台填充，同一内容的并发未命中只从存储端拉取一次
+ */
+@Service
+public class LocalContentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalContentCache.class);
+
+    private static final Pattern CACHE_FILE_NAME = Pattern.compile("^[0-9a-f]{64}-[0-9a-f-]{36}$");
+
+    private final StorageServiceFactory storageServiceFactory;
+    private final Executor storageIoExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${download.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${download.cache.dir:${java.io.tmpdir}/cloudrive-cache}")
+    private Path cacheDir;
+
+    @Value("${download.cache.max-size:10GB}")
+    private DataSize maxSize;
+
+    /**
+     * 超过该大小的文件不缓存，避免单个大文件挤掉大量热点文件
+     */
+    @Value("${download.cache.max-object-size:256MB}")
+    private DataSize maxObjectSize;
+
+    /**
+     * 内容哈希 -> 本地缓存文件，权重以KB计
+     */
+    private AsyncCache<String, CachedObject> cache;
+
+    private final LongAdder bytesServed = new LongAdder();
+
+    public LocalContentCache(StorageServiceFactory storageServiceFactory,
+                             @Qualifier("storageIoExecutor") Executor storageIoExecutor,
+                             MeterRegistry meterRegistry) {
+        this.storageServiceFactory = storageServiceFactory;
+        this.storageIoExecutor = storageIoExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        // 索引只在内存中，启动时删除上次遗留的缓存文件（只删除本缓存命名格式的文件）
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(file -> CACHE_FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .forEach(this::deleteQuietly);
+        }
+
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toKilobytes())
+                .weigher((String hash, CachedObject object) -> (int) Math.max(1, object.size() / 1024))
+                .removalListener((String hash, CachedObject object, RemovalCause cause) -> {
+                    if (object != null) {
+                        deleteQuietly(object.path());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "download.content", List.of());
+        FunctionCounter.builder("download.content.served.bytes", bytesServed, LongAdder::sum)
+                .description("从本地缓存发送的字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        logger.info("本地下载缓存已启用：dir={}, maxSize={}", cacheDir, maxSize);
+    }
+
+    /**
+     * 打开内容的本地缓存；未命中时在后台从存储端拉取到本地，本次请求不等待拉取完成，
+     * 同一内容的并发未命中只触发一次拉取
+     *
+     * @param sha256Hash 内容哈希值
+     * @param path 存储端对象路径
+     * @param size 内容大小
+     * @return 已打开的缓存内容，未启用、内容过大、未命中或仍在拉取时返回null，由调用方直接读取存储端
+     */
+    public CachedContent open(String sha256Hash, String path, long size) {
+        if (!enabled || sha256Hash == null || size > maxObjectSize.toBytes()) {
+            return null;
+        }
+        CompletableFuture<CachedObject> future = cache.get(sha256Hash, (hash, executor) ->
+                CompletableFuture.supplyAsync(() -> fetch(hash, path, size), storageIoExecutor));
+        // 拉取失败的条目由Caffeine自动移除，下次请求会重新拉取
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        CachedObject object = future.join();
+        try {
+            // 打开后即使被淘汰删除，已打开的通道仍可读取
+            return new CachedContent(FileChannel.open(object.path(), StandardOpenOption.READ));
+        } catch (IOException e) {
+            logger.warn("读取本地下载缓存失败，直接读取存储端：sha256={}, error={}", sha256Hash, e.getMessage());
+            return null;
+        }
+    }
+
+    private CachedObject fetch(String sha256Hash, String path, long size) {
+        // 文件名带随机后缀，淘汰旧条目时不会删除同一内容重新拉取的新文件
+        Path target = cacheDir.resolve(sha256Hash + "-" + UUID.randomUUID());
+        try (InputStream inputStream = storageServiceFactory.getStorageService().downloadFile(path)) {
+            long copied = Files.copy(inputStream, target);
+            if (copied != size) {
+                throw new IOException("内容大小不一致：expected=" + size + ", actual=" + copied);
+            }
+            return new CachedObject(target, size);
+        } catch (IOException e) {
+            logger.warn("拉取内容到本地下载缓存失败：sha256={}, error={}", sha256Hash, e.getMessage());
+            deleteQuietly(target);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            logger.warn("拉取内容到本地下载缓存失败：sha256={}, error={}", sha256Hash, e.getMessage());
+            deleteQuietly(target);
+            throw e;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("删除缓存文件失败：path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private record CachedObject(Path path, long size) {
+    }
+
+    /**
+     * 已打开的缓存内容，命中时直接从本地文件按范围读取，不再访问存储端；
+     * Servlet输出流不是文件或套接字通道，FileChannel.transferTo会退化为经缓冲区逐块复制，并非零拷贝
+     */
+    public class CachedContent implements AutoCloseable {
+        private final FileChannel channel;
+
+        private CachedContent(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * 把内容的一段写到输出流
+         *
+         * @param position 起始位置
+         * @param count 字节数
+         * @param outputStream 输出流
+         */
+        public void transferTo(long position, long count, OutputStream outputStream) throws IOException {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long end = position + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("缓存文件在位置" + position + "提前结束");
+                }
+                position += transferred;
+                bytesServed.add(transferred);
+            }
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.cloudrive.service;
+
+import com.cloudrive.dao.ObjectTierDao;
+import com.cloudrive.model.entity.ObjectTier;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description 分层存储的间接寻址和访问统计：对象路径 -> 实际位置的映射在本地短暂缓存，
+ * 迁移后旧位置延迟删除，其他节点缓存过期前读取旧位置仍然可用；访问次数先在本地累加，定期批量写入
+ */
+@Service
+@ConditionalOnProperty(name = "storage.tier.enabled", havingValue = "true")
+public class ObjectTierService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectTierService.class);
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private final ObjectTierDao objectTierDao;
+
+    /**
+     * 位置缓存的有效期，迁移后旧位置的保留时间（storage.tier.cleanup-delay）必须大于它
+     */
+    @Value("${storage.tier.location-cache-ttl:PT1M}")
+    private Duration locationCacheTtl;
+
+    @Value("${storage.tier.location-cache-size:100000}")
+    private long locationCacheSize;
+
+    /**
+     * 对象路径 -> 实际位置，没有记录的对象映射到自身
+     */
+    private LoadingCache<String, String> locations;
+
+    /**
+     * 尚未写入数据库的访问统计，只在compute中修改
+     */
+    private final Map<String, ObjectTier> pendingAccesses = new ConcurrentHashMap<>();
+
+    public ObjectTierService(ObjectTierDao objectTierDao) {
+        this.objectTierDao = objectTierDao;
+    }
+
+    @PostConstruct
+    public void init() {
+        locations = Caffeine.newBuilder()
+                .maximumSize(locationCacheSize)
+                .expireAfterWrite(locationCacheTtl)
+                .build(objectPath -> {
+                    ObjectTier tier = objectTierDao.findByObjectPath(objectPath);
+                    return tier != null ? tier.getStoragePath() : objectPath;
+                });
+    }
+
+    /**
+     * 对象当前的实际位置
+     */
+    public String locate(String objectPath) {
+        return locations.get(objectPath);
+    }
+
+    /**
+     * 迁移后使本节点的位置缓存失效
+     */
+    public void invalidate(String objectPath) {
+        locations.invalidate(objectPath);
+    }
+
+    /**
+     * 记录一次读取
+     */
+    public void recordAccess(String objectPath) {
+        LocalDateTime now = LocalDateTime.now();
+        pendingAccesses.compute(objectPath, (path, access) -> {
+            if (access == null) {
+                access = new ObjectTier();
+                access.setObjectPath(path);
+                access.setAccessCount(0L);
+            }
+            access.setAccessCount(access.getAccessCount() + 1);
+            access.setLastAccessedAt(now);
+            return access;
+        });
+    }
+
+    /**
+     * 删除对象时移除层级记录，与PackService.remove一样在afterCommit中调用，使用新事务
+     *
+     * @return 需要从存储中删除的所有位置（当前位置和尚未清理的旧位置）
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<String> remove(String objectPath) {
+        List<String> storagePaths = new ArrayList<>();
+        ObjectTier tier = objectTierDao.findByObjectPath(objectPath);
+        if (tier == null) {
+            storagePaths.add(objectPath);
+        } else {
+            storagePaths.add(tier.getStoragePath());
+            if (tier.getPreviousPath() != null) {
+                storagePaths.add(tier.getPreviousPath());
+            }
+            objectTierDao.deleteByObjectPath(objectPath);
+        }
+        pendingAccesses.remove(objectPath);
+        locations.invalidate(objectPath);
+        return storagePaths;
+    }
+
+    /**
+     * 把本地累加的访问统计写入数据库
+     */
+    @Scheduled(fixedDelayString = "${storage.tier.access-flush-interval:PT10S}")
+    public void flushAccesses() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+        List<ObjectTier> batch = new ArrayList<>();
+        for (String objectPath : pendingAccesses.keySet()) {
+            ObjectTier access = pendingAccesses.remove(objectPath);
+            if (access != null) {
+                batch.add(access);
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < batch.size(); from += FLUSH_BATCH_SIZE) {
+            List<ObjectTier> chunk = batch.subList(from, Math.min(from + FLUSH_BATCH_SIZE, batch.size()));
+            try {
+                objectTierDao.batchUpsertAccess(chunk, now);
+            } catch (Exception e) {
+                // 访问统计只影响迁移决策，写入失败时丢弃
+                logger.warn("写入对象访问统计失败：count={}, error={}", chunk.size(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushAccesses();
+    }
+}
@@ -0,0 +1,139 @@
+package com.cloudrive.service;
+
+import com.cloudrive.dao.PackDao;
+import com.cloudrive.model.entity.Pack;
+import com.cloudrive.model.entity.PackEntry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description 小文件打包的索引：对象路径 -> (聚合对象, 偏移, 长度)，在本地短暂缓存（包括未打包的结果）；
+ * 打包和重写后旧位置延迟删除，其他节点缓存过期前读取旧位置仍然可用
+ */
+@Service
+@ConditionalOnProperty(name = "storage.pack.enabled", havingValue = "true")
+public class PackService {
+
+    private final PackDao packDao;
+
+    /**
+     * 索引缓存的有效期，打包后独立对象和重写后旧聚合对象的保留时间（storage.pack.cleanup-delay）必须大于它
+     */
+    @Value("${storage.pack.location-cache-ttl:PT1M}")
+    private Duration locationCacheTtl;
+
+    @Value("${storage.pack.location-cache-size:100000}")
+    private long locationCacheSize;
+
+    private LoadingCache<String, Optional<PackEntry>> locations;
+
+    public PackService(PackDao packDao) {
+        this.packDao = packDao;
+    }
+
+    @PostConstruct
+    public void init() {
+        locations = Caffeine.newBuilder()
+                .maximumSize(locationCacheSize)
+                .expireAfterWrite(locationCacheTtl)
+                .build(objectPath -> Optional.ofNullable(packDao.findEntry(objectPath)));
+    }
+
+    /**
+     * 对象在聚合对象中的位置
+     *
+     * @return 未打包时返回null
+     */
+    public PackEntry locate(String objectPath) {
+        return locations.get(objectPath).orElse(null);
+    }
+
+    public void invalidate(String objectPath) {
+        locations.invalidate(objectPath);
+    }
+
+    /**
+     * 删除对象时移除打包条目并扣减聚合对象的有效大小，聚合对象本身由压缩任务重写或删除。
+     * 回收内容时在引用计数事务的afterCommit中调用，此时原事务已提交但连接仍绑定在线程上，必须开启新事务才能提交
+     *
+     * @return 被移除的条目，对象未打包时返回null
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public PackEntry remove(String objectPath) {
+        PackEntry entry = packDao.findEntryForUpdate(objectPath);
+        if (entry != null) {
+            packDao.deleteEntry(objectPath);
+            packDao.releaseBytes(entry.getPackPath(), entry.getLength(), LocalDateTime.now());
+        }
+        locations.invalidate(objectPath);
+        return entry;
+    }
+
+    /**
+     * 登记新写入的聚合对象和其中的小文件，打包期间已被回收的内容不登记
+     *
+     * @param entries 各小文件在新聚合对象中的位置
+     * @return 登记成功的条目数
+     */
+    @Transactional
+    public int commitPack(String packPath, long totalBytes, List<PackEntry> entries) {
+        LocalDateTime now = LocalDateTime.now();
+        packDao.insertPack(newPack(packPath, totalBytes, now));
+        int committed = 0;
+        for (PackEntry entry : entries) {
+            entry.setPackPath(packPath);
+            entry.setCreatedAt(now);
+            committed += packDao.insertEntryIfReferenced(entry);
+        }
+        packDao.refreshLiveStats(packPath, now);
+        return committed;
+    }
+
+    /**
+     * 登记重写后的聚合对象，把条目从旧聚合对象移过来；重写期间已被删除的条目不再移动
+     *
+     * @param entries packPath为条目原来所在的聚合对象，packOffset为在新聚合对象中的位置
+     * @return 移动成功的条目数
+     */
+    @Transactional
+    public int commitCompaction(String packPath, long totalBytes, List<PackEntry> entries) {
+        LocalDateTime now = LocalDateTime.now();
+        packDao.insertPack(newPack(packPath, totalBytes, now));
+        Set<String> sourcePackPaths = new LinkedHashSet<>();
+        int committed = 0;
+        for (PackEntry entry : entries) {
+            sourcePackPaths.add(entry.getPackPath());
+            committed += packDao.moveEntry(entry.getObjectPath(), entry.getPackPath(), packPath, entry.getPackOffset());
+        }
+        packDao.refreshLiveStats(packPath, now);
+        sourcePackPaths.forEach(sourcePackPath -> packDao.refreshLiveStats(sourcePackPath, now));
+        entries.forEach(entry -> locations.invalidate(entry.getObjectPath()));
+        return committed;
+    }
+
+    private static Pack newPack(String packPath, long totalBytes, LocalDateTime now) {
+        Pack pack = new Pack();
+        pack.setPackPath(packPath);
+        pack.setTotalBytes(totalBytes);
+        pack.setLiveBytes(0L);
+        pack.setLiveCount(0);
+        pack.setCreatedAt(now);
+        pack.setUpdatedAt(now);
+        return pack;
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloudrive.service;
+
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 上传进度存储，由upload.progress.store选择实现：redis（默认，多节点共享）或local（单节点进程内）
+ */
+public interface ProgressStore {
+    /**
+     * 创建上传任务
+     * @param task 上传任务
+     */
+    void createTask(UploadTask task);
+
+    /**
+     * 写入合并后的进度更新：任务不存在时忽略，已传输字节数只增不减，每次更新递增版本号并通知任务所属用户的订阅者
+     * @param updates 合并后的进度更新
+     */
+    void applyUpdates(Collection<ProgressUpdate> updates);
+
+    /**
+     * 获取上传任务
+     * @param taskId 任务ID
+     * @return 上传任务，不存在或已过期时返回null
+     */
+    UploadTask getTask(String taskId);
+
+    /**
+     * 批量读取版本高于客户端已有版本的任务
+     * @param sinceVersions 任务ID -> 客户端已有的版本号
+     * @param changed 输出：有变化的任务
+     * @param notFound 输出：不存在或已过期的任务ID
+     */
+    void getTasksChangedSince(Map<String, Long> sinceVersions, List<UploadTask> changed, List<String> notFound);
+
+    /**
+     * 订阅用户所有任务的进度更新
+     * @param userId 用户ID
+     * @param listener 进度回调
+     * @return 订阅ID，用于取消订阅
+     */
+    int subscribe(String userId, Consumer<UploadProgressVO> listener);
+
+    /**
+     * 取消订阅
+     * @param userId 用户ID
+     * @param subscriptionId 订阅ID
+     */
+    void unsubscribe(String userId, int subscriptionId);
+}
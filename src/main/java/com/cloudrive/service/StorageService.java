@@ -3,6 +3,9 @@ package com.cloudrive.service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
 
 /**
  * @author cd
@@ -15,6 +18,25 @@ public interface StorageService {
      */
     String uploadFile(MultipartFile file, String path);
 
+    /**
+     * 按已知大小上传文件流，流只读取一次
+     * @param inputStream 文件输入流
+     * @param size 文件大小
+     * @param contentType 文件类型
+     * @param path 目标路径
+     * @return 文件路径
+     */
+    String uploadFile(InputStream inputStream, long size, String contentType, String path);
+
+    /**
+     * 按指定对象名上传文件流，用于需要在写入前确定对象名的场景
+     * @param objectName 对象名
+     * @param inputStream 文件输入流
+     * @param size 文件大小
+     * @param contentType 文件类型
+     */
+    void uploadObject(String objectName, InputStream inputStream, long size, String contentType);
+
     /**
      * 从文件路径上传文件并跟踪进度
      * @param file 文件对象
@@ -26,13 +48,74 @@ public interface StorageService {
      */
     String uploadFileWithProgressFromPath(File file, String path, String taskId, String originalFilename, long fileSize);
 
+    /**
+     * 在目标路径下生成唯一的对象名
+     * @param path 目标路径
+     * @return 对象名
+     */
+    String generateObjectName(String path);
+
+    /**
+     * 创建分片上传
+     * @param objectName 对象名
+     * @param contentType 文件类型
+     * @return 分片上传ID
+     */
+    String createMultipartUpload(String objectName, String contentType);
+
+    /**
+     * 上传单个分片，从流中恰好读取length字节，不在Java堆中缓冲整个分片
+     * @param objectName 对象名
+     * @param uploadId 分片上传ID
+     * @param partNumber 分片序号（从1开始）
+     * @param inputStream 分片数据流，由调用方关闭
+     * @param length 分片长度，流提前结束时上传失败
+     * @return 分片ETag
+     */
+    String uploadPart(String objectName, String uploadId, int partNumber, InputStream inputStream, long length);
+
+    /**
+     * 完成分片上传，在存储端合并所有分片
+     * @param objectName 对象名
+     * @param uploadId 分片上传ID
+     * @param partETags 分片序号到ETag的映射
+     */
+    void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> partETags);
+
+    /**
+     * 取消分片上传
+     * @param objectName 对象名
+     * @param uploadId 分片上传ID
+     */
+    void abortMultipartUpload(String objectName, String uploadId);
+
     /**
      * 删除文件
      */
     void deleteFile(String path);
 
     /**
-     * 下载文件
+     * 下载文件，返回存储端的数据流，不在内存中缓冲整个文件
+     * @param path 文件路径
+     * @return 文件输入流，由调用方关闭
+     */
+    InputStream downloadFile(String path);
+
+    /**
+     * 下载文件的一段，用于HTTP Range请求
+     * @param path 文件路径
+     * @param offset 起始位置
+     * @param length 读取长度
+     * @return 文件输入流，由调用方关闭
+     */
+    InputStream downloadFile(String path, long offset, long length);
+
+    /**
+     * 生成客户端直接从存储端下载的临时URL
+     * @param path 文件路径
+     * @param filename 下载时的文件名
+     * @param expiry 有效期
+     * @return 临时URL，存储端不支持时返回null
      */
-    byte[] downloadFile(String path);
+    String getDownloadUrl(String path, String filename, Duration expiry);
 }
@@ -1,25 +1,24 @@
 package com.cloudrive.service;
 
-import com.cloudrive.service.impl.MinioStorageServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  * @author cd
  * @date 2025/10/10
- * @description
+ * @description 返回当前配置的存储后端，由storage.type选择：minio（默认）或local
  */
 @Component
 public class StorageServiceFactory {
 
-    private final MinioStorageServiceImpl minioStorageService;
+    private final StorageService storageService;
 
     @Autowired
-    public StorageServiceFactory(MinioStorageServiceImpl minioStorageService) {
-        this.minioStorageService = minioStorageService;
+    public StorageServiceFactory(StorageService storageService) {
+        this.storageService = storageService;
     }
 
     public StorageService getStorageService() {
-        return minioStorageService;
+        return storageService;
     }
 }
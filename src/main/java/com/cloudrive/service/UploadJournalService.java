@@ -0,0 +1,94 @@
+package com.cloudrive.service;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.dao.UploadJournalDao;
+import com.cloudrive.model.entity.UploadJournal;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description 两阶段上传的日志：写入存储前登记，提交元数据时删除，覆盖写入后进程崩溃的情况
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadJournalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJournalService.class);
+
+    private final UploadJournalDao uploadJournalDao;
+
+    /**
+     * 写入存储前登记对象路径（不在事务中，立即提交）
+     *
+     * @param objectPaths 即将写入的对象路径
+     */
+    public void begin(List<String> objectPaths) {
+        if (!objectPaths.isEmpty()) {
+            uploadJournalDao.batchInsert(objectPaths, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * 在提交文件记录的事务中删除日志；日志已被回收任务处理时抛出异常使事务回滚
+     *
+     * @param objectPaths 已写入的对象路径
+     */
+    public void commit(List<String> objectPaths) {
+        if (objectPaths.isEmpty()) {
+            return;
+        }
+        int deleted = uploadJournalDao.batchDelete(objectPaths);
+        ExceptionUtil.throwIf(deleted != objectPaths.size(), ErrorCode.FILE_UPLOAD_FAILED, "上传超时，对象已被回收，请重新上传");
+    }
+
+    /**
+     * 补偿：删除已写入的对象及其日志，失败只记录日志，由回收任务兜底
+     *
+     * @param storageService 存储服务
+     * @param objectPaths 需要回收的对象路径
+     */
+    public void abort(StorageService storageService, List<String> objectPaths) {
+        for (String objectPath : objectPaths) {
+            try {
+                storageService.deleteFile(objectPath);
+            } catch (Exception e) {
+                logger.warn("补偿删除对象失败，等待回收任务处理：path={}, error={}", objectPath, e.getMessage());
+                continue;
+            }
+            uploadJournalDao.batchDelete(List.of(objectPath));
+        }
+    }
+
+    /**
+     * 回收早于指定时间的残留日志对应的对象
+     *
+     * @param storageService 存储服务
+     * @param createdBefore 截止时间
+     * @param limit 单次处理的最大数量
+     * @return 回收的对象数量
+     */
+    public int reclaim(StorageService storageService, LocalDateTime createdBefore, int limit) {
+        int reclaimed = 0;
+        for (UploadJournal journal : uploadJournalDao.findCreatedBefore(createdBefore, limit)) {
+            // 先删除日志：仍在进行中的上传提交时会发现日志已不存在并回滚
+            if (uploadJournalDao.batchDelete(List.of(journal.getObjectPath())) == 0) {
+                continue;
+            }
+            try {
+                storageService.deleteFile(journal.getObjectPath());
+                reclaimed++;
+            } catch (Exception e) {
+                logger.warn("回收残留对象失败：path={}, error={}", journal.getObjectPath(), e.getMessage());
+            }
+        }
+        return reclaimed;
+    }
+}
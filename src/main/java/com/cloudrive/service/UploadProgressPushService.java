@@ -0,0 +1,299 @@
+package com.cloudrive.service;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author cd
+ * @date 2025/11/22
+ * @description 通过SSE推送上传进度：每个节点只订阅有连接的用户，使用Redis存储时上传可以发生在任意节点
+ */
+@Service
+public class UploadProgressPushService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadProgressPushService.class);
+
+    private final ProgressStore progressStore;
+    private final UploadProgressService uploadProgressService;
+
+    /**
+     * 向客户端写事件的共享线程池，避免慢连接阻塞进度存储的回调线程；每个连接同一时刻只有一个发送任务，保证事件有序
+     */
+    private final ThreadPoolTaskExecutor pushExecutor;
+
+    /**
+     * 用户ID -> 当前节点上该用户的订阅
+     */
+    private final Map<String, UserSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    @Value("${upload.progress.sse-timeout:PT30M}")
+    private Duration sseTimeout;
+
+    /**
+     * 每个连接最多积压的事件数，队列满说明客户端读得太慢，直接关闭连接，客户端重连后会先收到最新状态
+     */
+    @Value("${upload.progress.sse-queue-size:64}")
+    private int queueSize;
+
+    /**
+     * 单次写事件超过该时长视为客户端卡住，心跳时关闭连接，不再给它排队事件
+     */
+    @Value("${upload.progress.sse-send-timeout:PT10S}")
+    private Duration sendTimeout;
+
+    public UploadProgressPushService(ProgressStore progressStore, UploadProgressService uploadProgressService,
+                                     @Qualifier("progressPushExecutor") ThreadPoolTaskExecutor pushExecutor) {
+        this.progressStore = progressStore;
+        this.uploadProgressService = uploadProgressService;
+        this.pushExecutor = pushExecutor;
+    }
+
+    /**
+     * 订阅单个任务的进度，先推送当前状态，任务完成后关闭连接
+     *
+     * @param userId 当前用户ID
+     * @param taskId 任务ID
+     * @return SSE连接
+     */
+    public SseEmitter subscribeTask(String userId, String taskId) {
+        UploadTask task = uploadProgressService.getUploadTask(taskId);
+        ExceptionUtil.throwIfNull(task, ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+        ExceptionUtil.throwIf(!userId.equals(task.getUserId()), ErrorCode.NO_PERMISSION);
+
+        UploadProgressVO snapshot = UploadProgressService.toProgressVO(task);
+        Subscriber subscriber = register(userId, taskId);
+        push(userId, subscriber, snapshot);
+        return subscriber.emitter;
+    }
+
+    /**
+     * 订阅用户所有任务的进度
+     *
+     * @param userId 当前用户ID
+     * @return SSE连接
+     */
+    public SseEmitter subscribeUser(String userId) {
+        return register(userId, null).emitter;
+    }
+
+    /**
+     * 定期发送注释行保持连接，同时关闭写事件卡住的连接
+     */
+    @Scheduled(fixedDelayString = "${upload.progress.sse-heartbeat:PT25S}")
+    public void heartbeat() {
+        long now = System.nanoTime();
+        subscriptions.forEach((userId, subscription) -> subscription.subscribers.forEach(subscriber -> {
+            if (subscriber.sending && now - subscriber.sendStartedNanos > sendTimeout.toNanos()) {
+                logger.warn("SSE连接写事件超时，关闭连接: userId={}", userId);
+                close(userId, subscriber);
+            } else {
+                enqueue(userId, subscriber, new PushEvent(SseEmitter.event().comment("ping"), false));
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        subscriptions.values().forEach(subscription -> subscription.subscribers.forEach(subscriber -> {
+            subscriber.closed = true;
+            subscriber.emitter.complete();
+        }));
+    }
+
+    private Subscriber register(String userId, String taskId) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(sseTimeout.toMillis()), taskId, queueSize);
+        while (true) {
+            // 占位只在map里放一个空对象，Redis订阅在该用户自己的锁里完成，不占用map的桶锁
+            UserSubscription subscription = subscriptions.computeIfAbsent(userId, id -> new UserSubscription());
+            synchronized (subscription) {
+                if (subscription.removed) {
+                    // 最后一个连接刚断开，该订阅已移除，重新放置
+                    continue;
+                }
+                if (subscription.subscriptionId == null) {
+                    // 该用户在当前节点的第一个连接，订阅其进度
+                    try {
+                        subscription.subscriptionId = progressStore.subscribe(userId, progress -> dispatch(userId, progress));
+                    } catch (RuntimeException e) {
+                        subscription.removed = true;
+                        subscriptions.remove(userId, subscription);
+                        throw e;
+                    }
+                }
+                subscription.subscribers.add(subscriber);
+            }
+            break;
+        }
+        subscriber.emitter.onCompletion(() -> unregister(userId, subscriber));
+        subscriber.emitter.onTimeout(() -> unregister(userId, subscriber));
+        subscriber.emitter.onError(e -> unregister(userId, subscriber));
+        return subscriber;
+    }
+
+    private void unregister(String userId, Subscriber subscriber) {
+        subscriber.closed = true;
+        subscriber.queue.clear();
+        UserSubscription subscription = subscriptions.get(userId);
+        if (subscription == null) {
+            return;
+        }
+        Integer subscriptionId;
+        synchronized (subscription) {
+            if (!subscription.subscribers.remove(subscriber) || !subscription.subscribers.isEmpty() || subscription.removed) {
+                return;
+            }
+            subscription.removed = true;
+            subscriptions.remove(userId, subscription);
+            subscriptionId = subscription.subscriptionId;
+        }
+        if (subscriptionId != null) {
+            progressStore.unsubscribe(userId, subscriptionId);
+        }
+    }
+
+    private void dispatch(String userId, UploadProgressVO progress) {
+        progress.computeProgress();
+        UserSubscription subscription = subscriptions.get(userId);
+        if (subscription == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscription.subscribers) {
+            if (subscriber.taskId == null || subscriber.taskId.equals(progress.getTaskId())) {
+                push(userId, subscriber, progress);
+            }
+        }
+    }
+
+    private void push(String userId, Subscriber subscriber, UploadProgressVO progress) {
+        SseEventBuilder event = SseEmitter.event().name("progress").data(progress, MediaType.APPLICATION_JSON);
+        boolean last = subscriber.taskId != null && Boolean.TRUE.equals(progress.getCompleted());
+        enqueue(userId, subscriber, new PushEvent(event, last));
+    }
+
+    /**
+     * 事件放入连接自己的队列，连接没有在发送时提交一个发送任务
+     */
+    private void enqueue(String userId, Subscriber subscriber, PushEvent event) {
+        if (subscriber.closed) {
+            return;
+        }
+        if (!subscriber.queue.offer(event)) {
+            logger.warn("SSE连接积压事件过多，关闭连接: userId={}", userId);
+            close(userId, subscriber);
+            return;
+        }
+        scheduleDrain(userId, subscriber);
+    }
+
+    private void scheduleDrain(String userId, Subscriber subscriber) {
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            pushExecutor.execute(() -> drain(userId, subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.draining.set(false);
+            close(userId, subscriber);
+        }
+    }
+
+    private void drain(String userId, Subscriber subscriber) {
+        try {
+            PushEvent event;
+            while (!subscriber.closed && (event = subscriber.queue.poll()) != null) {
+                subscriber.sendStartedNanos = System.nanoTime();
+                subscriber.sending = true;
+                try {
+                    subscriber.emitter.send(event.event);
+                    if (event.last) {
+                        // 先移除再结束连接，客户端看到连接关闭时订阅状态已更新
+                        unregister(userId, subscriber);
+                        subscriber.emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // 客户端已断开
+                    unregister(userId, subscriber);
+                } finally {
+                    subscriber.sending = false;
+                }
+            }
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // 释放标记前后可能有新事件入队
+        if (!subscriber.closed && !subscriber.queue.isEmpty()) {
+            scheduleDrain(userId, subscriber);
+        }
+    }
+
+    /**
+     * 关闭慢连接：不再排队事件，并在推送线程上结束连接；卡在写操作里的线程由容器的写超时释放
+     */
+    private void close(String userId, Subscriber subscriber) {
+        unregister(userId, subscriber);
+        if (!subscriber.sending) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private static class UserSubscription {
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        /**
+         * 进度存储的订阅ID，第一个连接注册时赋值
+         */
+        private Integer subscriptionId;
+        /**
+         * 最后一个连接断开后置为true，之后的注册放置新的订阅
+         */
+        private boolean removed;
+    }
+
+    /**
+     * 一个SSE连接，taskId为null时接收用户所有任务的进度
+     */
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final String taskId;
+        private final BlockingQueue<PushEvent> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean sending;
+        private volatile long sendStartedNanos;
+
+        private Subscriber(SseEmitter emitter, String taskId, int queueSize) {
+            this.emitter = emitter;
+            this.taskId = taskId;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+    }
+
+    /**
+     * 待发送的事件，last为true时发送后关闭连接
+     */
+    private record PushEvent(SseEventBuilder event, boolean last) {
+    }
+}
@@ -1,94 +1,108 @@
 package com.cloudrive.service;
 
-import com.cloudrive.redis.UploadProgressRedis;
+import com.cloudrive.model.dto.UploadProgressQueryDTO;
+import com.cloudrive.model.vo.UploadProgressBatchVO;
+import com.cloudrive.model.vo.UploadProgressVO;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author cd
  * @date 2025/10/10
- * @description
+ * @description 上传进度：更新先合并到本地缓冲区，由定时任务批量写入进度存储，上传线程不等待存储
  */
 
 @Service
 public class UploadProgressService {
 
-    private final UploadProgressRedis uploadProgressRedis;
+    private static final Logger logger = LoggerFactory.getLogger(UploadProgressService.class);
 
-    public UploadProgressService(UploadProgressRedis uploadProgressRedis) {
-        this.uploadProgressRedis = uploadProgressRedis;
+    private final ProgressStore progressStore;
+
+    /**
+     * 尚未写入Redis的进度更新，同一任务在一个刷新周期内的多次更新合并为一次
+     */
+    private final ConcurrentHashMap<String, ProgressUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+    public UploadProgressService(ProgressStore progressStore) {
+        this.progressStore = progressStore;
     }
 
     /**
-     * 创建一个新的上传任务
+     * 创建一个新的上传任务，立即写入Redis以便客户端马上可以查询
      *
      * @param taskId    任务ID
+     * @param userId    任务所属用户ID，进度推送到该用户的频道
      * @param filename  文件名
      * @param totalSize 文件总大小
      */
-    public void createUploadTask(String taskId, String filename, long totalSize) {
-        UploadTask task = new UploadTask(taskId, filename, totalSize);
-        uploadProgressRedis.createTask(task);
+    public void createUploadTask(String taskId, String userId, String filename, long totalSize) {
+        UploadTask task = new UploadTask(taskId, userId, filename, totalSize);
+        progressStore.createTask(task);
     }
 
     /**
-     * 更新上传进度
+     * 更新上传进度，已传输字节数只增不减，进度百分比在读取时计算
      * @param taskId 任务ID
      * @param bytesTransferred 已传输字节数
      * @param totalBytes 总字节数
      */
-    public void updateProgress(String taskId, Double progress, long bytesTransferred, long totalBytes) {
-        UploadTask task = uploadProgressRedis.getTask(taskId);
-        if (task != null) {
-            task.setBytesTransferred(bytesTransferred);
-            task.setTotalSize(totalBytes);
-            task.setProgress(progress);
-            uploadProgressRedis.updateTask(task);
-        }
+    public void updateProgress(String taskId, long bytesTransferred, long totalBytes) {
+        pendingUpdates.compute(taskId, (id, update) -> {
+            if (update == null) {
+                update = new ProgressUpdate(id);
+            }
+            if (update.getBytesTransferred() == null || bytesTransferred > update.getBytesTransferred() + update.getBytesDelta()) {
+                update.setBytesTransferred(bytesTransferred);
+                update.setBytesDelta(0);
+            }
+            update.setTotalSize(totalBytes);
+            return update;
+        });
     }
 
     /**
-     * 累加已传输的字节数
+     * 累加已传输的字节数，并发分片的累加在Redis中以原子自增完成
      * @param taskId 任务ID
      * @param additionalBytes 本次传输的字节数
      */
     public void updateBytesTransferred(String taskId, long additionalBytes) {
-        UploadTask task = uploadProgressRedis.getTask(taskId);
-        if (task != null) {
-            // 累加已传输字节数
-            long newBytesTransferred = task.getBytesTransferred() + additionalBytes;
-            task.setBytesTransferred(newBytesTransferred);
-
-            // 计算百分比进度
-            if (task.getTotalSize() > 0) {
-                double percentage = (double) newBytesTransferred / task.getTotalSize() * 100;
-                task.setProgress(Math.min(100, percentage));
+        pendingUpdates.compute(taskId, (id, update) -> {
+            if (update == null) {
+                update = new ProgressUpdate(id);
             }
-
-            uploadProgressRedis.updateTask(task);
-        }
+            update.setBytesDelta(update.getBytesDelta() + additionalBytes);
+            return update;
+        });
     }
 
     /**
-     * 完成上传任务
+     * 完成上传任务，与之前未写入的进度一起在下一个刷新周期写入
      * @param taskId 任务ID
      * @param success 是否成功
      * @param message 消息
      */
     public void completeUploadTask(String taskId, boolean success, String message) {
-        UploadTask task = uploadProgressRedis.getTask(taskId);
-        if (task != null) {
-            task.setCompleted(true);
-            task.setSuccess(success);
-            task.setMessage(message);
-            task.setProgress(100);
-
-            // 使用Redis的TTL机制自动过期，无需使用线程清理
-            uploadProgressRedis.completeTask(task);
-        }
+        pendingUpdates.compute(taskId, (id, update) -> {
+            if (update == null) {
+                update = new ProgressUpdate(id);
+            }
+            update.setSuccess(success);
+            update.setMessage(message);
+            return update;
+        });
     }
 
     /**
@@ -97,7 +111,106 @@ public class UploadProgressService {
      * @return 上传任务
      */
     public UploadTask getUploadTask(String taskId) {
-        return uploadProgressRedis.getTask(taskId);
+        return progressStore.getTask(taskId);
+    }
+
+    /**
+     * 批量查询当前用户的上传任务，一次Redis往返，只返回版本高于客户端已有版本的任务
+     * @param userId 当前用户ID
+     * @param query 任务ID及客户端已有的版本号
+     * @return 有变化的任务和不存在的任务ID，未变化的任务不返回
+     */
+    public UploadProgressBatchVO queryProgress(String userId, UploadProgressQueryDTO query) {
+        Map<String, Long> sinceVersions = new LinkedHashMap<>();
+        for (UploadProgressQueryDTO.Entry entry : query.getTasks()) {
+            sinceVersions.put(entry.getTaskId(), entry.getVersion() == null ? 0L : entry.getVersion());
+        }
+        List<UploadTask> changed = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+        progressStore.getTasksChangedSince(sinceVersions, changed, notFound);
+
+        UploadProgressBatchVO vo = new UploadProgressBatchVO();
+        vo.setChanged(new ArrayList<>(changed.size()));
+        vo.setNotFound(notFound);
+        for (UploadTask task : changed) {
+            // 其他用户的任务按不存在处理，不暴露任务是否存在
+            if (userId.equals(task.getUserId())) {
+                vo.getChanged().add(toProgressVO(task));
+            } else {
+                notFound.add(task.getId());
+            }
+        }
+        return vo;
+    }
+
+    /**
+     * 转换为进度视图
+     * @param task 上传任务
+     * @return 进度视图
+     */
+    public static UploadProgressVO toProgressVO(UploadTask task) {
+        UploadProgressVO vo = new UploadProgressVO();
+        vo.setTaskId(task.getId());
+        vo.setBytesTransferred(task.getBytesTransferred());
+        vo.setTotalSize(task.getTotalSize());
+        vo.setCompleted(task.isCompleted());
+        vo.setSuccess(task.isSuccess());
+        vo.setMessage(task.getMessage());
+        vo.setVersion(task.getVersion());
+        vo.computeProgress();
+        return vo;
+    }
+
+    /**
+     * 把缓冲区中的进度批量写入Redis，所有任务共用一次往返
+     */
+    @Scheduled(fixedDelayString = "${upload.progress.flush-interval:200}")
+    public void flush() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        List<ProgressUpdate> updates = new ArrayList<>(pendingUpdates.size());
+        for (String taskId : pendingUpdates.keySet()) {
+            // remove与compute对同一个key互斥，取出后的更新对象不会再被修改
+            ProgressUpdate update = pendingUpdates.remove(taskId);
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+        try {
+            progressStore.applyUpdates(updates);
+        } catch (Exception e) {
+            logger.warn("写入上传进度失败，下个刷新周期重试：tasks={}, error={}", updates.size(), e.getMessage());
+            // 放回缓冲区，与期间新到的更新合并，完成状态不会丢失
+            for (ProgressUpdate update : updates) {
+                pendingUpdates.merge(update.getTaskId(), update, (later, failed) -> merge(failed, later));
+            }
+        }
+    }
+
+    /**
+     * 把较新的更新合并到较早的更新之后，规则与updateProgress、updateBytesTransferred、completeUploadTask的合并一致
+     */
+    private static ProgressUpdate merge(ProgressUpdate earlier, ProgressUpdate later) {
+        if (later.getBytesTransferred() != null && (earlier.getBytesTransferred() == null
+                || later.getBytesTransferred() > earlier.getBytesTransferred() + earlier.getBytesDelta())) {
+            earlier.setBytesTransferred(later.getBytesTransferred());
+            earlier.setBytesDelta(0);
+        }
+        earlier.setBytesDelta(earlier.getBytesDelta() + later.getBytesDelta());
+        if (later.getTotalSize() != null) {
+            earlier.setTotalSize(later.getTotalSize());
+        }
+        if (later.getSuccess() != null) {
+            earlier.setSuccess(later.getSuccess());
+            earlier.setMessage(later.getMessage());
+        }
+        return earlier;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
     }
 
     /**
@@ -109,6 +222,7 @@ public class UploadProgressService {
         private static final long serialVersionUID = 1L;
 
         private final String id;
+        private final String userId;
         private final String filename;
         private long totalSize;
         private long bytesTransferred;
@@ -116,10 +230,15 @@ public class UploadProgressService {
         private boolean completed;
         private boolean success;
         private String message;
-        private final long createdAt;
+        private long createdAt;
+        /**
+         * 每次更新递增，客户端据此只拉取有变化的任务
+         */
+        private long version;
 
-        public UploadTask(String id, String filename, long totalSize) {
+        public UploadTask(String id, String userId, String filename, long totalSize) {
             this.id = id;
+            this.userId = userId;
             this.filename = filename;
             this.totalSize = totalSize;
             this.bytesTransferred = 0;
@@ -130,4 +249,26 @@ public class UploadProgressService {
             this.createdAt = System.currentTimeMillis();
         }
     }
+
+    /**
+     * 一个刷新周期内合并后的进度更新，为null的字段不更新
+     */
+    @Data
+    public static class ProgressUpdate {
+        private final String taskId;
+        /**
+         * 已传输字节数的绝对值，只在大于Redis中的值时写入
+         */
+        private Long bytesTransferred;
+        /**
+         * 在绝对值之后累加的字节数
+         */
+        private long bytesDelta;
+        private Long totalSize;
+        /**
+         * 不为null表示任务已完成
+         */
+        private Boolean success;
+        private String message;
+    }
 }
@@ -0,0 +1,274 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.exception.BusinessException;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.FileHashUtil;
+import com.cloudrive.common.util.UserContext;
+import com.cloudrive.model.dto.ChunkUploadInitDTO;
+import com.cloudrive.model.entity.ChunkUploadSession;
+import com.cloudrive.model.entity.FileInfo;
+import com.cloudrive.model.entity.User;
+import com.cloudrive.model.vo.ChunkUploadVO;
+import com.cloudrive.redis.ChunkUploadRedis;
+import com.cloudrive.service.ChunkUploadService;
+import com.cloudrive.service.FileService;
+import com.cloudrive.service.StorageService;
+import com.cloudrive.service.StorageServiceFactory;
+import com.cloudrive.service.UploadJournalService;
+import com.cloudrive.service.UploadProgressService;
+import lombok.RequiredArgsConstructor;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author cd
+ * @date 2025/11/12
+ * @description 分片上传，会话状态保存在Redis，分片直接写入存储端的分片上传并在服务端合并
+ */
+@Service
+@RequiredArgsConstructor
+public class ChunkUploadServiceImpl implements ChunkUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkUploadServiceImpl.class);
+
+    /**
+     * S3协议单个对象最多10000个分片
+     */
+    private static final int MAX_CHUNKS = 10000;
+
+    private final ChunkUploadRedis chunkUploadRedis;
+    private final RedissonClient redissonClient;
+    private final StorageServiceFactory storageServiceFactory;
+    private final FileService fileService;
+    private final UploadProgressService uploadProgressService;
+    private final UploadJournalService uploadJournalService;
+
+    @Autowired
+    @Qualifier("storageIoExecutor")
+    private Executor storageIoExecutor;
+
+    @Value("${upload.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Override
+    public ChunkUploadVO initUpload(ChunkUploadInitDTO dto) {
+        User currentUser = UserContext.getCurrentUser();
+        String sha256Hash = dto.getSha256Hash().toLowerCase();
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+
+        // 1. 秒传：当前用户已拥有相同内容时不需要上传任何分片
+        FileInfo fastUploaded = fileService.tryFastUpload(dto.getFilename(), dto.getFileSize(), dto.getContentType(), sha256Hash, dto.getParentId(), null, currentUser);
+        if (fastUploaded != null) {
+            ChunkUploadVO vo = new ChunkUploadVO();
+            vo.setUploadId(uploadId);
+            vo.setFileSize(dto.getFileSize());
+            vo.setChunkSize(dto.getFileSize());
+            vo.setTotalChunks(0);
+            vo.setMissingChunks(List.of());
+            vo.setCompleted(true);
+            vo.setPath(fastUploaded.getPath());
+            return vo;
+        }
+
+        // 2. 创建存储端分片上传
+        long effectiveChunkSize = Math.max(chunkSize.toBytes(), (dto.getFileSize() + MAX_CHUNKS - 1) / MAX_CHUNKS);
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String objectName = storageService.generateObjectName(fileService.getUploadPath(dto.getParentId(), currentUser));
+        String multipartUploadId = storageService.createMultipartUpload(objectName, dto.getContentType());
+
+        ChunkUploadSession session = new ChunkUploadSession();
+        session.setUploadId(uploadId);
+        session.setUserId(currentUser.getUserId());
+        session.setParentId(dto.getParentId());
+        session.setFilename(dto.getFilename());
+        session.setContentType(dto.getContentType());
+        session.setFileSize(dto.getFileSize());
+        session.setSha256Hash(sha256Hash);
+        session.setChunkSize(effectiveChunkSize);
+        session.setTotalChunks((int) ((dto.getFileSize() + effectiveChunkSize - 1) / effectiveChunkSize));
+        session.setObjectName(objectName);
+        session.setMultipartUploadId(multipartUploadId);
+        session.setCreatedAt(System.currentTimeMillis());
+        chunkUploadRedis.saveSession(session);
+        uploadProgressService.createUploadTask(uploadId, currentUser.getUserId(), dto.getFilename(), dto.getFileSize());
+
+        logger.info("Chunk upload session created: uploadId={}, objectName={}, totalChunks={}", uploadId, objectName, session.getTotalChunks());
+        return buildUploadVO(session, new BitSet());
+    }
+
+    @Override
+    public void uploadChunk(String uploadId, int chunkIndex, InputStream inputStream, long contentLength) {
+        ChunkUploadSession session = getAndValidateSession(uploadId);
+        ExceptionUtil.throwIf(chunkIndex < 0 || chunkIndex >= session.getTotalChunks(), ErrorCode.INVALID_CHUNK);
+
+        long expectedLength = session.getChunkLength(chunkIndex);
+        ExceptionUtil.throwIf(contentLength >= 0 && contentLength != expectedLength, ErrorCode.INVALID_CHUNK,
+                "分片" + chunkIndex + "大小应为" + expectedLength + "字节");
+
+        // 请求体直接交给存储端，存储端恰好读取分片长度；之后还能读到数据说明请求体超长，该分片不登记，重传时覆盖
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String etag = storageService.uploadPart(session.getObjectName(), session.getMultipartUploadId(), chunkIndex + 1, inputStream, expectedLength);
+        boolean oversized;
+        try {
+            oversized = inputStream.read() != -1;
+        } catch (IOException e) {
+            logger.error("Failed to read chunk: uploadId={}, chunkIndex={}, error={}", uploadId, chunkIndex, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return;
+        }
+        ExceptionUtil.throwIf(oversized, ErrorCode.INVALID_CHUNK, "分片" + chunkIndex + "大小应为" + expectedLength + "字节");
+        chunkUploadRedis.markChunkUploaded(uploadId, chunkIndex, etag);
+
+        // 进度以已提交的分片为准，重复上传同一分片不会重复计数
+        long committedBytes = committedBytes(session, chunkUploadRedis.getUploadedChunks(uploadId));
+        uploadProgressService.updateProgress(uploadId, committedBytes, session.getFileSize());
+    }
+
+    @Override
+    public ChunkUploadVO getUploadStatus(String uploadId) {
+        ChunkUploadSession session = getAndValidateSession(uploadId);
+        return buildUploadVO(session, chunkUploadRedis.getUploadedChunks(uploadId));
+    }
+
+    @Override
+    public ChunkUploadVO completeUpload(String uploadId) {
+        ChunkUploadSession session = getAndValidateSession(uploadId);
+        // 合并后的校验在后台执行，锁以随机的持有者ID获取，由校验任务释放，不与请求线程绑定
+        RLock lock = redissonClient.getLock(chunkUploadRedis.getLockName(uploadId));
+        long lockOwner = ThreadLocalRandom.current().nextLong();
+        ExceptionUtil.throwIf(!lock.tryLockAsync(lockOwner).toCompletableFuture().join(), ErrorCode.UPLOAD_IN_PROGRESS);
+        try {
+            BitSet uploaded = chunkUploadRedis.getUploadedChunks(uploadId);
+            ExceptionUtil.throwIf(uploaded.cardinality() < session.getTotalChunks(), ErrorCode.CHUNKS_INCOMPLETE);
+            Map<Integer, String> partETags = chunkUploadRedis.getPartETags(uploadId);
+            User currentUser = UserContext.getCurrentUser();
+
+            // 由存储端合并分片，应用不再缓冲整个文件；合并前登记上传日志，元数据提交失败时删除对象
+            StorageService storageService = storageServiceFactory.getStorageService();
+            List<String> objectNames = List.of(session.getObjectName());
+            uploadJournalService.begin(objectNames);
+            try {
+                storageService.completeMultipartUpload(session.getObjectName(), session.getMultipartUploadId(), partETags);
+                storageIoExecutor.execute(() -> {
+                    try {
+                        verifyAndRegister(session, currentUser, storageService, objectNames);
+                    } finally {
+                        lock.unlockAsync(lockOwner).toCompletableFuture().join();
+                    }
+                });
+            } catch (RuntimeException e) {
+                uploadJournalService.abort(storageService, objectNames);
+                throw e;
+            }
+            logger.info("Chunk upload assembled, verifying: uploadId={}, objectName={}", uploadId, session.getObjectName());
+            return buildUploadVO(session, uploaded);
+        } catch (RuntimeException e) {
+            // 等待释放完成再返回，客户端收到错误后立即重试或取消时锁已释放
+            lock.unlockAsync(lockOwner).toCompletableFuture().join();
+            throw e;
+        }
+    }
+
+    @Override
+    public void abortUpload(String uploadId) {
+        getAndValidateSession(uploadId);
+        RLock lock = redissonClient.getLock(chunkUploadRedis.getLockName(uploadId));
+        ExceptionUtil.throwIf(!lock.tryLock(), ErrorCode.UPLOAD_IN_PROGRESS);
+        try {
+            // 等锁期间可能已完成合并
+            ChunkUploadSession session = getAndValidateSession(uploadId);
+            storageServiceFactory.getStorageService().abortMultipartUpload(session.getObjectName(), session.getMultipartUploadId());
+            chunkUploadRedis.deleteSession(uploadId);
+            uploadProgressService.completeUploadTask(uploadId, false, "上传已取消");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读回已合并的对象校验哈希值并保存文件记录，结果通过上传进度任务通知客户端；分片已合并，无论成败会话都不再继续
+     */
+    private void verifyAndRegister(ChunkUploadSession session, User currentUser, StorageService storageService, List<String> objectNames) {
+        String uploadId = session.getUploadId();
+        try {
+            // 内容表全局共享，登记的哈希值必须由服务端计算；分片可以乱序、跨节点上传，无法增量计算，合并后读回对象计算
+            String sha256Hash = digestObject(storageService, session.getObjectName());
+            if (!sha256Hash.equals(session.getSha256Hash())) {
+                logger.warn("Chunk upload hash mismatch: uploadId={}, declared={}, actual={}", uploadId, session.getSha256Hash(), sha256Hash);
+                throw new BusinessException(ErrorCode.HASH_MISMATCH);
+            }
+            String path = fileService.saveUploadedFile(session.getFilename(), session.getFileSize(), session.getContentType(),
+                    sha256Hash, session.getObjectName(), session.getParentId(), currentUser);
+            chunkUploadRedis.deleteSession(uploadId);
+            uploadProgressService.completeUploadTask(uploadId, true, "上传完成");
+            logger.info("Chunk upload completed: uploadId={}, path={}", uploadId, path);
+        } catch (RuntimeException e) {
+            logger.error("Chunk upload verification failed: uploadId={}, error={}", uploadId, e.getMessage());
+            uploadJournalService.abort(storageService, objectNames);
+            chunkUploadRedis.deleteSession(uploadId);
+            uploadProgressService.completeUploadTask(uploadId, false,
+                    e instanceof BusinessException ? e.getMessage() : ErrorCode.FILE_UPLOAD_FAILED.getMessage());
+        }
+    }
+
+    /**
+     * 读回已合并的对象计算SHA-256
+     */
+    private String digestObject(StorageService storageService, String objectName) {
+        try (InputStream inputStream = storageService.downloadFile(objectName)) {
+            return FileHashUtil.calculateSHA256(inputStream);
+        } catch (IOException e) {
+            logger.error("Failed to read assembled object: objectName={}, error={}", objectName, e.getMessage());
+            throw new BusinessException(ErrorCode.FILE_HASH_FAILED);
+        }
+    }
+
+    private ChunkUploadSession getAndValidateSession(String uploadId) {
+        ChunkUploadSession session = chunkUploadRedis.getSession(uploadId);
+        ExceptionUtil.throwIfNull(session, ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+        ExceptionUtil.throwIf(!session.getUserId().equals(UserContext.getCurrentUserId()), ErrorCode.NO_PERMISSION);
+        return session;
+    }
+
+    private long committedBytes(ChunkUploadSession session, BitSet uploaded) {
+        int lastChunk = session.getTotalChunks() - 1;
+        long bytes = (long) uploaded.cardinality() * session.getChunkSize();
+        if (uploaded.get(lastChunk)) {
+            bytes -= session.getChunkSize() - session.getChunkLength(lastChunk);
+        }
+        return bytes;
+    }
+
+    private ChunkUploadVO buildUploadVO(ChunkUploadSession session, BitSet uploaded) {
+        List<Integer> missingChunks = new ArrayList<>();
+        for (int i = uploaded.nextClearBit(0); i < session.getTotalChunks(); i = uploaded.nextClearBit(i + 1)) {
+            missingChunks.add(i);
+        }
+        ChunkUploadVO vo = new ChunkUploadVO();
+        vo.setUploadId(session.getUploadId());
+        vo.setFileSize(session.getFileSize());
+        vo.setChunkSize(session.getChunkSize());
+        vo.setTotalChunks(session.getTotalChunks());
+        vo.setMissingChunks(missingChunks);
+        vo.setCompleted(false);
+        return vo;
+    }
+}
@@ -0,0 +1,177 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.dao.FileContentDao;
+import com.cloudrive.model.entity.FileContent;
+import com.cloudrive.service.FileContentService;
+import com.cloudrive.service.StorageServiceFactory;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author cd
+ * @date 2025/11/16
+ * @description 全局内容寻址存储，同一内容只保留一个存储对象
+ */
+@Service
+@RequiredArgsConstructor
+public class FileContentServiceImpl implements FileContentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileContentServiceImpl.class);
+
+    private final FileContentDao fileContentDao;
+    private final StorageServiceFactory storageServiceFactory;
+
+    @Override
+    @Transactional
+    public FileContent acquireExisting(String sha256Hash, long fileSize) {
+        FileContent content = fileContentDao.findBySha256Hash(sha256Hash);
+        if (content == null || content.getFileSize() != fileSize) {
+            return null;
+        }
+        // 查询和加引用之间内容可能已被回收，以更新行数为准
+        if (fileContentDao.incrementRefCount(sha256Hash, 1) == 0) {
+            return null;
+        }
+        return content;
+    }
+
+    @Override
+    public List<FileContent> lockContents(List<String> sha256Hashes) {
+        if (sha256Hashes.isEmpty()) {
+            return List.of();
+        }
+        return fileContentDao.findBySha256HashesForUpdate(sha256Hashes);
+    }
+
+    @Override
+    public void addReferences(Map<String, Integer> refsByHash) {
+        if (!refsByHash.isEmpty()) {
+            fileContentDao.batchIncrementRefCount(refsByHash);
+        }
+    }
+
+    @Override
+    @Transactional
+    public String register(String sha256Hash, String objectPath, long fileSize) {
+        FileContent existing = acquireExisting(sha256Hash, fileSize);
+        if (existing == null) {
+            FileContent content = new FileContent();
+            content.setSha256Hash(sha256Hash);
+            content.setPath(objectPath);
+            content.setFileSize(fileSize);
+            content.setRefCount(1);
+            content.setCreatedAt(LocalDateTime.now());
+            content.setUpdatedAt(LocalDateTime.now());
+            if (fileContentDao.insertIgnore(content) == 1) {
+                return objectPath;
+            }
+            // 并发写入了相同内容，改为引用先登记的内容
+            existing = acquireExisting(sha256Hash, fileSize);
+            ExceptionUtil.throwIfNull(existing, ErrorCode.FILE_UPLOAD_FAILED, "内容登记冲突：" + sha256Hash);
+        }
+        // 内容已存在，刚写入的对象是重复的
+        deleteObjectAfterCommit(objectPath);
+        return existing.getPath();
+    }
+
+    @Override
+    public Map<String, FileContent> findContents(List<String> sha256Hashes) {
+        if (sha256Hashes.isEmpty()) {
+            return Map.of();
+        }
+        return fileContentDao.findBySha256Hashes(sha256Hashes).stream()
+                .collect(Collectors.toMap(FileContent::getSha256Hash, Function.identity()));
+    }
+
+    @Override
+    @Transactional
+    public Map<String, String> registerAll(Map<String, Integer> refsByHash, Map<String, FileContent> uploadedContents) {
+        Map<String, String> pathByHash = new HashMap<>();
+        Map<String, Integer> existingRefs = new HashMap<>();
+        for (FileContent content : lockContents(new ArrayList<>(refsByHash.keySet()))) {
+            pathByHash.put(content.getSha256Hash(), content.getPath());
+            existingRefs.put(content.getSha256Hash(), refsByHash.get(content.getSha256Hash()));
+        }
+
+        List<FileContent> newContents = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, Integer> entry : refsByHash.entrySet()) {
+            String sha256Hash = entry.getKey();
+            FileContent uploaded = uploadedContents.get(sha256Hash);
+            if (pathByHash.containsKey(sha256Hash)) {
+                if (uploaded != null) {
+                    // 写入期间其他请求已登记相同内容
+                    deleteObjectAfterCommit(uploaded.getPath());
+                }
+                continue;
+            }
+            ExceptionUtil.throwIfNull(uploaded, ErrorCode.FILE_UPLOAD_FAILED, "内容已被回收，请重新上传：" + sha256Hash);
+            uploaded.setRefCount(entry.getValue());
+            uploaded.setCreatedAt(now);
+            uploaded.setUpdatedAt(now);
+            newContents.add(uploaded);
+            pathByHash.put(sha256Hash, uploaded.getPath());
+        }
+
+        addReferences(existingRefs);
+        if (!newContents.isEmpty()) {
+            fileContentDao.batchInsert(newContents);
+        }
+        return pathByHash;
+    }
+
+    @Override
+    @Transactional
+    public void release(String sha256Hash) {
+        if (sha256Hash == null) {
+            return;
+        }
+        FileContent content = fileContentDao.findBySha256Hash(sha256Hash);
+        if (content == null || fileContentDao.decrementRefCount(sha256Hash) == 0) {
+            // 内容表建立之前的历史文件没有内容记录，保留其对象
+            return;
+        }
+        if (fileContentDao.deleteIfUnreferenced(sha256Hash) == 1) {
+            logger.info("内容已无引用，回收存储对象：sha256={}, path={}", sha256Hash, content.getPath());
+            deleteObjectAfterCommit(content.getPath());
+        }
+    }
+
+    /**
+     * 事务提交后再删除存储对象，避免事务回滚后记录指向已删除的对象
+     */
+    private void deleteObjectAfterCommit(String objectPath) {
+        Runnable delete = () -> {
+            try {
+                storageServiceFactory.getStorageService().deleteFile(objectPath);
+            } catch (Exception e) {
+                logger.warn("删除存储对象失败：path={}, error={}", objectPath, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete.run();
+                }
+            });
+        } else {
+            delete.run();
+        }
+    }
+}
@@ -10,22 +10,55 @@ import com.cloudrive.common.util.UserContext;
 import com.cloudrive.dao.FileInfoDao;
 import com.cloudrive.dao.UserDao;
 import com.cloudrive.mapper.FileInfoMapper;
+import com.cloudrive.model.dto.UploadManifestDTO;
+import com.cloudrive.model.entity.FileContent;
 import com.cloudrive.model.entity.FileInfo;
 import com.cloudrive.model.entity.User;
 import com.cloudrive.model.vo.FileListVO;
+import com.cloudrive.model.vo.UploadManifestVO;
+import com.cloudrive.redis.UploadFlightRedis;
+import com.cloudrive.service.FileContentService;
 import com.cloudrive.service.FileService;
+import com.cloudrive.service.LocalContentCache;
 import com.cloudrive.service.StorageService;
 import com.cloudrive.service.StorageServiceFactory;
+import com.cloudrive.service.UploadJournalService;
 import com.cloudrive.service.UploadProgressService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.redisson.api.RLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -39,47 +72,297 @@ public class FileServiceImpl implements FileService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileServiceImpl.class);
 
+    private static final String DOWNLOAD_MODE_REDIRECT = "redirect";
+
     private final StorageServiceFactory storageServiceFactory;
     private final FileInfoDao fileInfoDao;
     private final FileInfoMapper fileInfoMapper;
     private final UploadProgressService uploadProgressService;
     private final UserDao userDao;
+    private final FileContentService fileContentService;
+    private final TransactionTemplate transactionTemplate;
+    private final UploadJournalService uploadJournalService;
+    private final UploadFlightRedis uploadFlightRedis;
+    private final LocalContentCache localContentCache;
+
+    @Autowired
+    @Qualifier("storageIoExecutor")
+    private Executor storageIoExecutor;
+
+    /**
+     * 等待相同内容的上传完成的最长时间，超时后独立写入
+     */
+    @Value("${upload.single-flight.wait-timeout:PT60S}")
+    private Duration singleFlightWaitTimeout;
+
+    /**
+     * 下载方式：proxy由应用转发数据，redirect重定向到存储端的临时URL
+     */
+    @Value("${download.mode:proxy}")
+    private String downloadMode;
+
+    /**
+     * 重定向下载时临时URL的最短有效期
+     */
+    @Value("${download.presign.ttl:PT5M}")
+    private Duration presignTtl;
+
+    @Value("${download.presign.cache-size:10000}")
+    private long presignCacheSize;
+
+    /**
+     * 已签名的下载URL，key为对象路径、文件名和有效期区间
+     */
+    private Cache<String, String> presignedUrlCache;
+
+    @Value("${upload.batch.max-files:1000}")
+    private int batchMaxFiles;
+
+    /**
+     * 批量上传时同时写入存储的文件数
+     */
+    @Value("${upload.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @PostConstruct
+    public void init() {
+        presignedUrlCache = Caffeine.newBuilder()
+                .maximumSize(presignCacheSize)
+                .expireAfterWrite(presignTtl)
+                .build();
+    }
 
     @Override
-    @Transactional
     public String uploadFile(MultipartFile file, String parentId) {
-        User currentUser = UserContext.getCurrentUser();
+        // 不预先计算哈希值，写入存储时通过DigestInputStream计算，临时文件只读取一次；
+        // 合并并发上传只用于哈希值事先已知的上传（原始请求体、分片、清单）
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadFile(inputStream, file.getOriginalFilename(), file.getContentType(), file.getSize(), parentId);
+        } catch (IOException e) {
+            logger.error("读取上传文件失败：{}", e.getMessage());
+            throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED);
+        }
+    }
 
-        // 1. 计算文件的SHA-256哈希值
-        String sha256Hash = FileHashUtil.calculateSHA256(file);
+    @Override
+    public String uploadFile(InputStream inputStream, String filename, String contentType, long fileSize, String parentId) {
+        return uploadFile(inputStream, filename, contentType, fileSize, parentId, null);
+    }
 
-        // 2. 检查是否存在相同哈希值的文件（秒传逻辑）
-        if (sha256Hash != null && !sha256Hash.isEmpty()) {
-            // 查找当前用户是否已经上传过相同哈希值的文件
-            List<FileInfo> existingFiles = fileInfoDao.findBySha256HashAndUserId(sha256Hash, currentUser.getUserId());
+    /**
+     * 已知哈希值时按哈希值合并并发上传：第一个请求写入存储，其余请求等待其完成后走秒传，
+     * 等待超时则各自写入，重复对象由内容表登记时删除；哈希值由客户端声明，秒传只命中当前用户已拥有的内容
+     */
+    @Override
+    public String uploadFile(InputStream inputStream, String filename, String contentType, long fileSize, String parentId, String sha256Hash) {
+        User currentUser = UserContext.getCurrentUser();
+        if (sha256Hash == null) {
+            return writeAndSave(inputStream, filename, contentType, fileSize, parentId, null, currentUser);
+        }
+        String expectedHash = sha256Hash.toLowerCase();
+        String fastUploadedPath = fastUpload(filename, fileSize, contentType, expectedHash, parentId, currentUser);
+        if (fastUploadedPath != null) {
+            return fastUploadedPath;
+        }
 
-            if (!existingFiles.isEmpty()) {
-                // 找到了相同哈希值的文件，实现秒传
-                FileInfo existingFile = existingFiles.get(0);
-                // 使用通用的秒传处理方法，传入null表示不需要进度跟踪
-                FileInfo newFileInfo = handleFastUpload(file.getOriginalFilename(), file.getSize(), existingFile, sha256Hash, parentId, null, currentUser);
-                return newFileInfo.getPath();
+        RLock lock = uploadFlightRedis.getLock(expectedHash);
+        boolean locked;
+        try {
+            locked = lock.tryLock(singleFlightWaitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED);
+        }
+        try {
+            if (locked) {
+                // 等待期间其他请求可能已写入相同内容
+                fastUploadedPath = fastUpload(filename, fileSize, contentType, expectedHash, parentId, currentUser);
+                if (fastUploadedPath != null) {
+                    return fastUploadedPath;
+                }
+            } else {
+                logger.warn("等待相同内容的上传超时，独立写入存储：sha256={}", expectedHash);
+            }
+            return writeAndSave(inputStream, filename, contentType, fileSize, parentId, expectedHash, currentUser);
+        } finally {
+            if (locked) {
+                lock.unlock();
             }
         }
+    }
+
+    /**
+     * 在短事务中尝试秒传
+     *
+     * @return 秒传成功时返回文件路径，否则返回null
+     */
+    private String fastUpload(String filename, long fileSize, String contentType, String sha256Hash, String parentId, User currentUser) {
+        FileInfo fileInfo = transactionTemplate.execute(status ->
+                tryFastUpload(filename, fileSize, contentType, sha256Hash, parentId, null, currentUser));
+        return fileInfo == null ? null : fileInfo.getPath();
+    }
+
+    /**
+     * 两阶段上传：先在事务外写入存储，再在短事务中提交文件记录，不在上传期间占用数据库连接
+     *
+     * @param expectedHash 声明的哈希值，不为null时校验写入内容的哈希值
+     */
+    private String writeAndSave(InputStream inputStream, String filename, String contentType, long fileSize, String parentId,
+                                String expectedHash, User currentUser) {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String objectName = storageService.generateObjectName(getUploadPath(parentId, currentUser));
+        List<String> objectNames = List.of(objectName);
+
+        // 1. 登记上传日志后写入存储，同时计算SHA-256哈希值，文件流只读取一次
+        uploadJournalService.begin(objectNames);
+        MessageDigest digest = FileHashUtil.newSHA256Digest();
+        try {
+            storageService.uploadObject(objectName, new DigestInputStream(inputStream, digest), fileSize, contentType);
+        } catch (RuntimeException e) {
+            uploadJournalService.abort(storageService, objectNames);
+            throw e;
+        }
+        String sha256Hash = FileHashUtil.digestToHex(digest);
+        if (expectedHash != null && !expectedHash.equals(sha256Hash)) {
+            uploadJournalService.abort(storageService, objectNames);
+            throw new BusinessException(ErrorCode.HASH_MISMATCH);
+        }
+
+        // 2. 短事务提交文件记录，命中秒传时删除刚写入的重复对象，提交失败时删除对象
+        try {
+            return transactionTemplate.execute(status ->
+                    saveUploadedFile(filename, fileSize, contentType, sha256Hash, objectName, parentId, currentUser));
+        } catch (RuntimeException e) {
+            uploadJournalService.abort(storageService, objectNames);
+            throw e;
+        }
+    }
 
-        // 3. 如果没有找到相同哈希值的文件，执行正常上传流程
+    @Override
+    public List<String> uploadFiles(List<MultipartFile> files, String parentId) {
+        ExceptionUtil.throwIf(files.size() > batchMaxFiles, ErrorCode.TOO_MANY_FILES, "单次最多上传" + batchMaxFiles + "个文件");
+        User currentUser = UserContext.getCurrentUser();
         StorageService storageService = storageServiceFactory.getStorageService();
         String path = getUploadPath(parentId, currentUser);
 
-        // 上传文件
-        String filePath = storageService.uploadFile(file, path);
+        // 1. 计算每个文件的哈希值，批次内相同内容只上传一次
+        List<String> hashes = new ArrayList<>(files.size());
+        Map<String, Integer> refsByHash = new LinkedHashMap<>();
+        Map<String, MultipartFile> firstFileByHash = new HashMap<>();
+        for (MultipartFile file : files) {
+            String sha256Hash = FileHashUtil.calculateSHA256(file);
+            hashes.add(sha256Hash);
+            refsByHash.merge(sha256Hash, 1, Integer::sum);
+            firstFileByHash.putIfAbsent(sha256Hash, file);
+        }
+
+        // 2. 一次查询找出已存储的内容，其余内容以有限并发写入存储
+        Map<String, FileContent> existingContents = fileContentService.findContents(new ArrayList<>(refsByHash.keySet()));
+        Map<String, String> objectNameByHash = new HashMap<>();
+        for (String sha256Hash : firstFileByHash.keySet()) {
+            if (!existingContents.containsKey(sha256Hash)) {
+                objectNameByHash.put(sha256Hash, storageService.generateObjectName(path));
+            }
+        }
+        List<String> objectNames = new ArrayList<>(objectNameByHash.values());
+        uploadJournalService.begin(objectNames);
+        Map<String, FileContent> uploadedContents = uploadMissingContents(storageService, objectNameByHash, firstFileByHash, objectNames);
+
+        // 3. 在一个短事务中登记内容引用并批量写入文件记录，失败时删除本次写入的对象
+        List<FileInfo> fileInfos = new ArrayList<>(files.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, String> pathByHash = fileContentService.registerAll(refsByHash, uploadedContents);
+                LocalDateTime now = LocalDateTime.now();
+                for (int i = 0; i < files.size(); i++) {
+                    MultipartFile file = files.get(i);
+                    FileInfo fileInfo = new FileInfo();
+                    fileInfo.setFileInfoId(GenerateID.generateFileInfoRandomId(13));
+                    fileInfo.setFilename(file.getOriginalFilename());
+                    fileInfo.setOriginalFilename(file.getOriginalFilename());
+                    fileInfo.setPath(pathByHash.get(hashes.get(i)));
+                    fileInfo.setFileSize(file.getSize());
+                    fileInfo.setFileType(file.getContentType());
+                    fileInfo.setUserId(currentUser.getUserId());
+                    fileInfo.setParentId(parentId);
+                    fileInfo.setIsFolder(false);
+                    fileInfo.setIsDeleted(false);
+                    fileInfo.setCreatedAt(now);
+                    fileInfo.setUpdatedAt(now);
+                    fileInfo.setSha256Hash(hashes.get(i));
+                    fileInfos.add(fileInfo);
+                }
+                fileInfoDao.batchInsertFileInfo(fileInfos);
+                uploadJournalService.commit(objectNames);
+            });
+        } catch (RuntimeException e) {
+            uploadJournalService.abort(storageService, objectNames);
+            throw e;
+        }
+        logger.info("批量上传完成：files={}, uploaded={}, deduplicated={}", files.size(), uploadedContents.size(), files.size() - uploadedContents.size());
+        return fileInfos.stream().map(FileInfo::getPath).collect(Collectors.toList());
+    }
+
+    /**
+     * 以有限并发把尚未存储的内容写入存储，失败时删除本次写入的所有对象
+     *
+     * @param objectNameByHash 需要写入的哈希值 -> 预先生成的对象名
+     * @param firstFileByHash 每个哈希值对应的第一个文件
+     * @param objectNames 已登记上传日志的对象名
+     * @return 本次写入的内容（哈希值 -> 对象路径和大小）
+     */
+    private Map<String, FileContent> uploadMissingContents(StorageService storageService, Map<String, String> objectNameByHash,
+                                                           Map<String, MultipartFile> firstFileByHash, List<String> objectNames) {
+        Map<String, FileContent> uploadedContents = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(batchParallelism);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (Map.Entry<String, String> entry : objectNameByHash.entrySet()) {
+                permits.acquire();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    MultipartFile file = firstFileByHash.get(entry.getKey());
+                    try (InputStream inputStream = file.getInputStream()) {
+                        storageService.uploadObject(entry.getValue(), inputStream, file.getSize(), file.getContentType());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    FileContent content = new FileContent();
+                    content.setSha256Hash(entry.getKey());
+                    content.setPath(entry.getValue());
+                    content.setFileSize(file.getSize());
+                    uploadedContents.put(entry.getKey(), content);
+                }, storageIoExecutor).whenComplete((result, e) -> permits.release()));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            return uploadedContents;
+        } catch (InterruptedException | CompletionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // 等待已提交的写入结束后再清理，避免遗留对象
+            futures.forEach(future -> future.exceptionally(ex -> null).join());
+            uploadJournalService.abort(storageService, objectNames);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof BusinessException businessException) {
+                throw businessException;
+            }
+            throw new BusinessException(ErrorCode.FILE_UPLOAD_FAILED);
+        }
+    }
+
+    @Override
+    @Transactional
+    public String saveUploadedFile(String filename, long fileSize, String contentType, String sha256Hash, String objectPath, String parentId, User currentUser) {
+        // 登记到全局内容表（事后去重）：内容已存在时新记录指向已有对象，刚写入的对象在提交后删除
+        String path = fileContentService.register(sha256Hash, objectPath, fileSize);
+
         FileInfo fileInfo = new FileInfo();
         fileInfo.setFileInfoId(GenerateID.generateFileInfoRandomId(13));
-        fileInfo.setFilename(file.getOriginalFilename());
-        fileInfo.setOriginalFilename(file.getOriginalFilename());
-        fileInfo.setPath(filePath);
-        fileInfo.setFileSize(file.getSize());
-        fileInfo.setFileType(file.getContentType());
+        fileInfo.setFilename(filename);
+        fileInfo.setOriginalFilename(filename);
+        fileInfo.setPath(path);
+        fileInfo.setFileSize(fileSize);
+        fileInfo.setFileType(contentType);
         fileInfo.setUserId(currentUser.getUserId());
         fileInfo.setParentId(parentId);
         fileInfo.setIsFolder(false);
@@ -88,13 +371,27 @@ public class FileServiceImpl implements FileService {
         fileInfo.setUpdatedAt(LocalDateTime.now());
         fileInfo.setSha256Hash(sha256Hash);
         fileInfoDao.insertFileInfo(fileInfo);
-        return filePath;
+        uploadJournalService.commit(List.of(objectPath));
+        return path;
     }
 
-    /**
-     * 获取上传路径
-     */
-    private String getUploadPath(String parentId, User currentUser) {
+    @Override
+    @Transactional
+    public FileInfo tryFastUpload(String filename, long fileSize, String contentType, String sha256Hash, String parentId, String taskId, User currentUser) {
+        // 哈希值由客户端声明，只能秒传到自己已拥有的内容，否则知道哈希值和大小就能引用并下载他人的文件；
+        // 跨用户去重只发生在服务端计算出哈希值之后（saveUploadedFile、uploadFiles）
+        if (fileInfoDao.findBySha256HashAndUserId(sha256Hash, currentUser.getUserId()).isEmpty()) {
+            return null;
+        }
+        FileContent content = fileContentService.acquireExisting(sha256Hash, fileSize);
+        if (content == null) {
+            return null;
+        }
+        return handleFastUpload(filename, fileSize, contentType, content.getPath(), sha256Hash, parentId, taskId, currentUser);
+    }
+
+    @Override
+    public String getUploadPath(String parentId, User currentUser) {
         String path = CommonConstants.File.FILE_PATH_PREFIX + currentUser.getUserId();
         if (parentId != null) {
             FileInfo parent = fileInfoDao.findFileInfoByParentId(parentId);
@@ -108,21 +405,22 @@ public class FileServiceImpl implements FileService {
      *
      * @param filename 文件名
      * @param fileSize 文件大小
-     * @param existingFile 已存在的文件
+     * @param fileType 文件类型
+     * @param path 已存在内容的对象路径
      * @param sha256Hash 文件哈希值
      * @param parentId 父目录ID
      * @param taskId 上传任务ID，如果为null则不进行进度跟踪
      * @param currentUser 当前用户
      * @return 新创建的文件信息对象
      */
-    private FileInfo handleFastUpload(String filename, long fileSize, FileInfo existingFile, String sha256Hash, String parentId, String taskId, User currentUser) {
+    private FileInfo handleFastUpload(String filename, long fileSize, String fileType, String path, String sha256Hash, String parentId, String taskId, User currentUser) {
         FileInfo fileInfo = new FileInfo();
         fileInfo.setFileInfoId(GenerateID.generateFileInfoRandomId(13));
         fileInfo.setFilename(filename);
         fileInfo.setOriginalFilename(filename);
-        fileInfo.setPath(existingFile.getPath());
+        fileInfo.setPath(path);
         fileInfo.setFileSize(fileSize);
-        fileInfo.setFileType(existingFile.getFileType());
+        fileInfo.setFileType(fileType);
         fileInfo.setUserId(currentUser.getUserId());
         fileInfo.setParentId(parentId);
         fileInfo.setIsFolder(false);
@@ -133,7 +431,7 @@ public class FileServiceImpl implements FileService {
         // 如果有任务ID，则进行进度跟踪
         if (taskId != null) {
             // 模拟上传进度（秒传情况下直接完成）
-            uploadProgressService.updateProgress(taskId, 100.0,fileSize, fileSize);
+            uploadProgressService.updateProgress(taskId, fileSize, fileSize);
             uploadProgressService.completeUploadTask(taskId, true, "文件秒传成功");
         }
 
@@ -142,6 +440,134 @@ public class FileServiceImpl implements FileService {
         return fileInfo;
     }
 
+    @Override
+    @Transactional
+    public UploadManifestVO checkUploadManifest(UploadManifestDTO manifest) {
+        User currentUser = UserContext.getCurrentUser();
+        List<UploadManifestDTO.Entry> entries = manifest.getFiles();
+
+        // 1. 一次查询取出清单中当前用户已拥有的内容，并加锁防止事务内被回收；
+        // 清单中的哈希值由客户端声明，其他用户的内容需要上传后由服务端计算哈希值再去重
+        List<String> hashes = entries.stream()
+                .map(entry -> entry.getSha256Hash().toLowerCase())
+                .distinct()
+                .collect(Collectors.toList());
+        List<String> ownedHashes = fileInfoDao.findOwnedSha256Hashes(currentUser.getUserId(), hashes);
+        Map<String, FileContent> contentByHash = new HashMap<>();
+        for (FileContent content : fileContentService.lockContents(ownedHashes)) {
+            contentByHash.put(content.getSha256Hash(), content);
+        }
+
+        // 2. 命中的文件直接生成记录，未命中的返回给客户端上传
+        Map<String, String> folderIds = new HashMap<>();
+        Map<String, Integer> refsByHash = new HashMap<>();
+        List<FileInfo> matched = new ArrayList<>();
+        List<UploadManifestVO.MissingFile> missingFiles = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (UploadManifestDTO.Entry entry : entries) {
+            List<String> segments = splitRelativePath(entry.getRelativePath());
+            String folderId = resolveFolder(manifest.getParentId(), segments.subList(0, segments.size() - 1), folderIds, currentUser);
+            String filename = segments.get(segments.size() - 1);
+            String sha256Hash = entry.getSha256Hash().toLowerCase();
+
+            FileContent content = contentByHash.get(sha256Hash);
+            if (content != null && content.getFileSize().equals(entry.getFileSize())) {
+                refsByHash.merge(sha256Hash, 1, Integer::sum);
+                FileInfo fileInfo = new FileInfo();
+                fileInfo.setFileInfoId(GenerateID.generateFileInfoRandomId(13));
+                fileInfo.setFilename(filename);
+                fileInfo.setOriginalFilename(filename);
+                fileInfo.setPath(content.getPath());
+                fileInfo.setFileSize(entry.getFileSize());
+                fileInfo.setFileType(MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse(null));
+                fileInfo.setUserId(currentUser.getUserId());
+                fileInfo.setParentId(folderId);
+                fileInfo.setIsFolder(false);
+                fileInfo.setIsDeleted(false);
+                fileInfo.setCreatedAt(now);
+                fileInfo.setUpdatedAt(now);
+                fileInfo.setSha256Hash(sha256Hash);
+                matched.add(fileInfo);
+            } else {
+                UploadManifestVO.MissingFile missingFile = new UploadManifestVO.MissingFile();
+                missingFile.setRelativePath(entry.getRelativePath());
+                missingFile.setFileSize(entry.getFileSize());
+                missingFile.setSha256Hash(sha256Hash);
+                missingFile.setParentId(folderId);
+                missingFiles.add(missingFile);
+            }
+        }
+        if (!matched.isEmpty()) {
+            fileContentService.addReferences(refsByHash);
+            fileInfoDao.batchInsertFileInfo(matched);
+        }
+        logger.info("上传清单协商完成：total={}, matched={}, missing={}", entries.size(), matched.size(), missingFiles.size());
+
+        UploadManifestVO vo = new UploadManifestVO();
+        vo.setTotalFiles(entries.size());
+        vo.setMatchedFiles(matched.size());
+        vo.setMissingFiles(missingFiles);
+        return vo;
+    }
+
+    /**
+     * 拆分并校验相对路径，不允许出现上级目录引用
+     */
+    private List<String> splitRelativePath(String relativePath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : relativePath.split("[/\\\\]")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            ExceptionUtil.throwIf("..".equals(segment), ErrorCode.INVALID_RELATIVE_PATH);
+            segments.add(segment);
+        }
+        ExceptionUtil.throwIf(segments.isEmpty(), ErrorCode.INVALID_RELATIVE_PATH);
+        return segments;
+    }
+
+    /**
+     * 逐级查找或创建相对路径对应的文件夹，同一清单内的目录只解析一次
+     *
+     * @param parentId 清单的根目录ID
+     * @param folderNames 各级文件夹名称
+     * @param folderIds 已解析的目录缓存（相对目录 -> 文件夹ID）
+     * @return 最末级文件夹ID
+     */
+    private String resolveFolder(String parentId, List<String> folderNames, Map<String, String> folderIds, User currentUser) {
+        String currentId = parentId;
+        StringBuilder relativeDir = new StringBuilder();
+        for (String folderName : folderNames) {
+            relativeDir.append(CommonConstants.File.SLASH).append(folderName);
+            String key = relativeDir.toString();
+            String cachedId = folderIds.get(key);
+            if (cachedId != null) {
+                currentId = cachedId;
+                continue;
+            }
+
+            FileInfo folder = fileInfoDao.findFolderByParentIdAndName(currentUser.getUserId(), currentId, folderName);
+            if (folder == null) {
+                folder = new FileInfo();
+                folder.setFileInfoId(GenerateID.generateFileInfoRandomId(13));
+                folder.setFilename(folderName);
+                folder.setOriginalFilename(folderName);
+                folder.setPath(getUploadPath(currentId, currentUser) + CommonConstants.File.SLASH + folder.getFileInfoId());
+                folder.setFileSize(0L);
+                folder.setUserId(currentUser.getUserId());
+                folder.setParentId(currentId);
+                folder.setIsFolder(true);
+                folder.setIsDeleted(false);
+                folder.setCreatedAt(LocalDateTime.now());
+                folder.setUpdatedAt(LocalDateTime.now());
+                fileInfoDao.insertFileInfo(folder);
+            }
+            folderIds.put(key, folder.getFileInfoId());
+            currentId = folder.getFileInfoId();
+        }
+        return currentId;
+    }
+
     @Override
     public List<FileListVO> listFiles(String parentId) {
         String userId = UserContext.getCurrentUserId();
@@ -153,10 +579,41 @@ public class FileServiceImpl implements FileService {
 
 
     @Override
-    public byte[] downloadFile(String fileId) {
+    public FileInfo getDownloadableFile(String fileId) {
         User currentUser = UserContext.getCurrentUser();
         FileInfo fileInfo = getAndValidateFile(fileId, currentUser);
-        return retrieveFileContent(fileInfo);
+        ExceptionUtil.throwIf(fileInfo.getIsFolder(), ErrorCode.CANNOT_DOWNLOAD_FOLDER);
+        return fileInfo;
+    }
+
+    @Override
+    public InputStream openFileContent(FileInfo fileInfo) {
+        return storageServiceFactory.getStorageService().downloadFile(fileInfo.getPath());
+    }
+
+    @Override
+    public String getDownloadRedirectUrl(FileInfo fileInfo) {
+        if (!DOWNLOAD_MODE_REDIRECT.equals(downloadMode)) {
+            return null;
+        }
+        // 按有效期划分区间，同一区间内的请求共用一个URL，URL在区间结束后仍至少有效一个ttl
+        long ttlMillis = presignTtl.toMillis();
+        long now = System.currentTimeMillis();
+        long bucket = now / ttlMillis;
+        Duration expiry = Duration.ofMillis((bucket + 2) * ttlMillis - now);
+        String key = fileInfo.getPath() + '\n' + fileInfo.getFilename() + '\n' + bucket;
+        return presignedUrlCache.get(key, k -> storageServiceFactory.getStorageService()
+                .getDownloadUrl(fileInfo.getPath(), fileInfo.getFilename(), expiry));
+    }
+
+    @Override
+    public LocalContentCache.CachedContent openCachedContent(FileInfo fileInfo) {
+        return localContentCache.open(fileInfo.getSha256Hash(), fileInfo.getPath(), fileInfo.getFileSize());
+    }
+
+    @Override
+    public InputStream openFileContent(FileInfo fileInfo, long offset, long length) {
+        return storageServiceFactory.getStorageService().downloadFile(fileInfo.getPath(), offset, length);
     }
 
     private FileInfo getAndValidateFile(String fileId, User currentUser) {
@@ -172,15 +629,6 @@ public class FileServiceImpl implements FileService {
         return fileInfo;
     }
 
-    private byte[] retrieveFileContent(FileInfo fileInfo) {
-        ExceptionUtil.throwIf(fileInfo.getIsFolder(), ErrorCode.CANNOT_DOWNLOAD_FOLDER);
-
-        String filePath = fileInfo.getPath();
-        StorageService storageService = storageServiceFactory.getStorageService();
-
-        return storageService.downloadFile(filePath);
-    }
-
     @Override
     public String getFilename(String fileId) {
         FileInfo fileInfo = fileInfoDao.findById(fileId);
@@ -199,4 +647,24 @@ public class FileServiceImpl implements FileService {
         fileInfo.setUpdatedAt(LocalDateTime.now());
         fileInfoDao.updateFileInfo(fileInfo);
     }
+
+    @Override
+    @Transactional
+    public void deleteFile(String fileId) {
+        User currentUser = UserContext.getCurrentUser();
+        FileInfo fileInfo = getAndValidateFile(fileId, currentUser);
+        if (fileInfo.getIsFolder()) {
+            List<FileInfo> children = fileInfoDao.findFileInfoByUserIdAndParentId(currentUser.getUserId(), fileId);
+            ExceptionUtil.throwIf(!children.isEmpty(), ErrorCode.FOLDER_NOT_EMPTY);
+        }
+
+        fileInfo.setIsDeleted(true);
+        fileInfo.setUpdatedAt(LocalDateTime.now());
+        fileInfoDao.updateFileInfo(fileInfo);
+
+        // 释放内容引用，最后一个引用删除时回收存储对象
+        if (!fileInfo.getIsFolder()) {
+            fileContentService.release(fileInfo.getSha256Hash());
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.constant.CommonConstants;
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.ProgressStore;
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 进程内的进度存储，用于单节点部署：任务状态是不可变快照，以CAS替换，无锁；过期规则与Redis实现一致
+ */
+@Component
+@ConditionalOnProperty(name = "upload.progress.store", havingValue = "local")
+public class LocalProgressStore implements ProgressStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalProgressStore.class);
+
+    private static final long ACTIVE_TTL = CommonConstants.Time.ONE_HOUR;
+    private static final long COMPLETED_TTL = CommonConstants.Time.ONE_MINUTE;
+
+    private final Map<String, AtomicReference<TaskState>> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * 用户ID -> 订阅ID -> 进度回调
+     */
+    private final Map<String, Map<Integer, Consumer<UploadProgressVO>>> listeners = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSubscriptionId = new AtomicInteger();
+
+    /**
+     * 计算过期时间使用的时钟，测试中替换
+     */
+    private Clock clock = Clock.systemUTC();
+
+    @Override
+    public void createTask(UploadTask task) {
+        long now = clock.millis();
+        TaskState state = new TaskState(task.getId(), task.getUserId(), task.getFilename(), task.getTotalSize(), 0,
+                false, false, "", task.getCreatedAt(), 1, now + ACTIVE_TTL);
+        tasks.put(task.getId(), new AtomicReference<>(state));
+    }
+
+    @Override
+    public void applyUpdates(Collection<ProgressUpdate> updates) {
+        for (ProgressUpdate update : updates) {
+            AtomicReference<TaskState> ref = tasks.get(update.getTaskId());
+            if (ref == null) {
+                continue;
+            }
+            long now = clock.millis();
+            TaskState previous;
+            TaskState next;
+            do {
+                previous = ref.get();
+                next = previous.apply(update, now);
+            } while (!ref.compareAndSet(previous, next));
+            if (next.version() != previous.version()) {
+                notifyListeners(next);
+            }
+        }
+    }
+
+    @Override
+    public UploadTask getTask(String taskId) {
+        TaskState state = getLiveState(taskId);
+        return state == null ? null : state.toTask();
+    }
+
+    @Override
+    public void getTasksChangedSince(Map<String, Long> sinceVersions, List<UploadTask> changed, List<String> notFound) {
+        sinceVersions.forEach((taskId, sinceVersion) -> {
+            TaskState state = getLiveState(taskId);
+            if (state == null) {
+                notFound.add(taskId);
+            } else if (state.version() > sinceVersion) {
+                changed.add(state.toTask());
+            }
+        });
+    }
+
+    @Override
+    public int subscribe(String userId, Consumer<UploadProgressVO> listener) {
+        int subscriptionId = nextSubscriptionId.incrementAndGet();
+        listeners.computeIfAbsent(userId, id -> new ConcurrentHashMap<>()).put(subscriptionId, listener);
+        return subscriptionId;
+    }
+
+    @Override
+    public void unsubscribe(String userId, int subscriptionId) {
+        listeners.computeIfPresent(userId, (id, subscriptions) -> {
+            subscriptions.remove(subscriptionId);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    /**
+     * 清理已过期的任务，读取时也会忽略过期任务
+     */
+    @Scheduled(fixedDelay = CommonConstants.Time.ONE_MINUTE)
+    public void evictExpired() {
+        long now = clock.millis();
+        // ConcurrentHashMap按值条件删除，不会误删同时被重新创建的任务
+        tasks.entrySet().removeIf(entry -> entry.getValue().get().isExpired(now));
+    }
+
+    private TaskState getLiveState(String taskId) {
+        AtomicReference<TaskState> ref = tasks.get(taskId);
+        if (ref == null) {
+            return null;
+        }
+        TaskState state = ref.get();
+        return state.isExpired(clock.millis()) ? null : state;
+    }
+
+    private void notifyListeners(TaskState state) {
+        Map<Integer, Consumer<UploadProgressVO>> subscriptions = listeners.get(state.userId());
+        if (subscriptions == null) {
+            return;
+        }
+        UploadProgressVO progress = state.toProgressVO();
+        for (Consumer<UploadProgressVO> listener : subscriptions.values()) {
+            try {
+                listener.accept(progress);
+            } catch (RuntimeException e) {
+                logger.warn("推送上传进度失败：taskId={}, error={}", state.id(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 任务状态的不可变快照
+     */
+    private record TaskState(String id, String userId, String filename, long totalSize, long bytesTransferred,
+                             boolean completed, boolean success, String message, long createdAt, long version, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+
+        /**
+         * 与Redis实现的更新脚本一致：过期任务和已完成的任务不再有任何变化
+         */
+        TaskState apply(ProgressUpdate update, long now) {
+            if (isExpired(now) || completed) {
+                return this;
+            }
+            long bytes = bytesTransferred;
+            if (update.getBytesTransferred() != null && update.getBytesTransferred() > bytes) {
+                bytes = update.getBytesTransferred();
+            }
+            bytes += update.getBytesDelta();
+            long total = update.getTotalSize() != null ? update.getTotalSize() : totalSize;
+            if (update.getSuccess() != null) {
+                return new TaskState(id, userId, filename, total, bytes, true, update.getSuccess(),
+                        update.getMessage() == null ? "" : update.getMessage(), createdAt, version + 1, now + COMPLETED_TTL);
+            }
+            return new TaskState(id, userId, filename, total, bytes, false, false, message, createdAt, version + 1, now + ACTIVE_TTL);
+        }
+
+        UploadTask toTask() {
+            UploadTask task = new UploadTask(id, userId, filename, totalSize);
+            task.setBytesTransferred(bytesTransferred);
+            task.setCompleted(completed);
+            task.setSuccess(success);
+            task.setMessage(message);
+            task.setCreatedAt(createdAt);
+            task.setVersion(version);
+            task.setProgress(toProgressVO().getProgress());
+            return task;
+        }
+
+        UploadProgressVO toProgressVO() {
+            UploadProgressVO vo = new UploadProgressVO();
+            vo.setTaskId(id);
+            vo.setBytesTransferred(bytesTransferred);
+            vo.setTotalSize(totalSize);
+            vo.setCompleted(completed);
+            vo.setSuccess(success);
+            vo.setMessage(message);
+            vo.setVersion(version);
+            vo.computeProgress();
+            return vo;
+        }
+    }
+}
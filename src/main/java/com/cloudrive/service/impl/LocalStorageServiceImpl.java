@@ -0,0 +1,387 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.constant.CommonConstants;
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.FileChannelInputStream;
+import com.cloudrive.service.StorageService;
+import com.cloudrive.service.UploadProgressService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * @author cd
+ * @date 2025/11/29
+ * @description 本地文件系统存储，适用于单机部署或挂载的NFS目录，也可作为集成测试中MinIO的替身；
+ * 对象先写到临时文件，写完后原子重命名到目标位置，读者不会看到写了一半的对象；
+ * 对象按名称的SHA-256分两级目录存放（objects/ab/cd/abcd...），单个目录的文件数保持在较小范围
+ */
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "local")
+@RequiredArgsConstructor
+public class LocalStorageServiceImpl implements StorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalStorageServiceImpl.class);
+
+    private static final String OBJECTS_DIR = "objects";
+    private static final String TEMP_DIR = "tmp";
+    private static final String MULTIPART_DIR = "multipart";
+
+    /**
+     * 单次transferTo/transferFrom的最大字节数，同时是上传进度的更新粒度
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * 启动时只清理早于该时间的临时文件和分片上传目录，共享目录上其他节点正在写的文件不受影响；
+     * 不短于分片上传会话的有效期，每写入一个分片都会更新上传目录的修改时间
+     */
+    private static final Duration STALE_TEMP_AGE = Duration.ofDays(1);
+
+    private static final Pattern UPLOAD_ID = Pattern.compile("^[0-9a-f]{32}$");
+
+    private final UploadProgressService uploadProgressService;
+
+    @Value("${storage.local.root-dir:./data/storage}")
+    private Path rootDir;
+
+    /**
+     * 重命名前是否把数据刷到磁盘，关闭后断电可能丢失最近写入的对象
+     */
+    @Value("${storage.local.fsync:true}")
+    private boolean fsync;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(rootDir.resolve(OBJECTS_DIR));
+        Files.createDirectories(rootDir.resolve(TEMP_DIR));
+        Files.createDirectories(rootDir.resolve(MULTIPART_DIR));
+        Instant staleBefore = Instant.now().minus(STALE_TEMP_AGE);
+        try (Stream<Path> temps = Files.list(rootDir.resolve(TEMP_DIR))) {
+            temps.filter(temp -> isOlderThan(temp, staleBefore)).forEach(this::deleteQuietly);
+        }
+        // 会话过期后没有被中止的分片上传（例如进程在回收前退出）
+        try (Stream<Path> uploads = Files.list(rootDir.resolve(MULTIPART_DIR))) {
+            uploads.filter(upload -> isOlderThan(upload, staleBefore)).forEach(this::deleteRecursivelyQuietly);
+        }
+        logger.info("Local storage initialized: rootDir={}", rootDir.toAbsolutePath());
+    }
+
+    @Override
+    public String uploadFile(MultipartFile file, String path) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadFile(inputStream, file.getSize(), file.getContentType(), path);
+        } catch (IOException e) {
+            logger.error("Failed to open upload stream: path={}, error={}", path, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String uploadFile(InputStream inputStream, long size, String contentType, String path) {
+        String objectName = generateObjectName(path);
+        uploadObject(objectName, inputStream, size, contentType);
+        return objectName;
+    }
+
+    @Override
+    public void uploadObject(String objectName, InputStream inputStream, long size, String contentType) {
+        try {
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            writeAtomically(objectName, target -> {
+                long written = 0;
+                while (written < size) {
+                    long transferred = target.transferFrom(source, written, Math.min(TRANSFER_CHUNK_SIZE, size - written));
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of stream after " + written + " of " + size + " bytes");
+                    }
+                    written += transferred;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to write file to local storage: objectName={}, error={}", objectName, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+    }
+
+    @Override
+    public String uploadFileWithProgressFromPath(File file, String path, String taskId, String originalFilename, long fileSize) {
+        if (file == null || !file.exists() || !file.isFile()) {
+            String errorMessage = "文件不存在或不是常规文件: " + (file != null ? file.getAbsolutePath() : "null");
+            logger.error(errorMessage);
+            uploadProgressService.completeUploadTask(taskId, false, errorMessage);
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, errorMessage);
+            return null;
+        }
+        long size = fileSize > 0 ? fileSize : file.length();
+        String objectName = generateObjectName(path);
+        uploadProgressService.updateProgress(taskId, 0, size);
+
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            writeAtomically(objectName, target -> {
+                long position = 0;
+                while (position < size) {
+                    long transferred = source.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), target);
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of file at offset " + position);
+                    }
+                    position += transferred;
+                    uploadProgressService.updateProgress(taskId, position, size);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to write file to local storage: objectName={}, taskId={}, error={}", objectName, taskId, e.getMessage());
+            uploadProgressService.completeUploadTask(taskId, false, "本地存储写入失败: " + e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, "本地存储写入失败: " + e.getMessage());
+            return null;
+        }
+        uploadProgressService.completeUploadTask(taskId, true, "上传完成");
+        logger.info("File written to local storage: objectName={}, taskId={}", objectName, taskId);
+        return objectName;
+    }
+
+    @Override
+    public String generateObjectName(String path) {
+        String fileName = UUID.randomUUID().toString().replace("-", "");
+        return path.endsWith(CommonConstants.File.SLASH) ? path + fileName : path + CommonConstants.File.SLASH + fileName;
+    }
+
+    @Override
+    public String createMultipartUpload(String objectName, String contentType) {
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        try {
+            Files.createDirectories(rootDir.resolve(MULTIPART_DIR).resolve(uploadId));
+        } catch (IOException e) {
+            logger.error("Failed to create multipart upload: objectName={}, error={}", objectName, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, int partNumber, InputStream inputStream, long length) {
+        Path uploadDir = multipartDir(uploadId);
+        Path temp = uploadDir.resolve(partNumber + "." + UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            ReadableByteChannel source = Channels.newChannel(new DigestInputStream(inputStream, md5));
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long written = 0;
+                while (written < length) {
+                    long transferred = channel.transferFrom(source, written, Math.min(TRANSFER_CHUNK_SIZE, length - written));
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of stream after " + written + " of " + length + " bytes");
+                    }
+                    written += transferred;
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+            // 重传同一分片时覆盖旧文件
+            Files.move(temp, uploadDir.resolve(partNumber + ".part"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return HexFormat.of().formatHex(md5.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            deleteQuietly(temp);
+            logger.error("Failed to upload part: objectName={}, partNumber={}, error={}", objectName, partNumber, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> partETags) {
+        Path uploadDir = multipartDir(uploadId);
+        try {
+            // 按分片序号依次拼接，文件之间直接transferTo，不经过Java堆
+            writeAtomically(objectName, target -> {
+                for (Integer partNumber : partETags.keySet().stream().sorted().toList()) {
+                    try (FileChannel part = FileChannel.open(uploadDir.resolve(partNumber + ".part"), StandardOpenOption.READ)) {
+                        long partSize = part.size();
+                        long transferred = 0;
+                        while (transferred < partSize) {
+                            long n = part.transferTo(transferred, partSize - transferred, target);
+                            if (n <= 0) {
+                                throw new EOFException("Unexpected end of part " + partNumber);
+                            }
+                            transferred += n;
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to complete multipart upload: objectName={}, error={}", objectName, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+        FileSystemUtils.deleteRecursively(uploadDir.toFile());
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            FileSystemUtils.deleteRecursively(multipartDir(uploadId));
+        } catch (Exception e) {
+            logger.warn("Failed to abort multipart upload: objectName={}, error={}", objectName, e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteFile(String path) {
+        try {
+            Files.deleteIfExists(resolve(path));
+            logger.info("File deleted successfully from local storage: path={}", path);
+        } catch (IOException e) {
+            logger.error("Failed to delete file from local storage: path={}, error={}", path, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_DELETE_FAILED, e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream downloadFile(String path) {
+        FileChannel channel = openForRead(path);
+        try {
+            return new FileChannelInputStream(channel, 0, channel.size());
+        } catch (IOException e) {
+            closeQuietly(channel);
+            logger.error("Failed to read file from local storage: path={}, error={}", path, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream downloadFile(String path, long offset, long length) {
+        return new FileChannelInputStream(openForRead(path), offset, length);
+    }
+
+    /**
+     * 本地存储没有可供客户端直接访问的地址，下载始终经过服务端
+     */
+    @Override
+    public String getDownloadUrl(String path, String filename, Duration expiry) {
+        return null;
+    }
+
+    private FileChannel openForRead(String path) {
+        try {
+            return FileChannel.open(resolve(path), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            logger.error("File not found in local storage: path={}", path);
+            ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, "文件不存在");
+            return null;
+        } catch (IOException e) {
+            logger.error("Failed to open file from local storage: path={}, error={}", path, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写到临时文件后原子重命名为目标对象，失败时删除临时文件
+     */
+    private void writeAtomically(String objectName, ChannelWriter writer) throws IOException {
+        Path temp = rootDir.resolve(TEMP_DIR).resolve(UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            Path target = resolve(objectName);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * 对象名 -> 磁盘路径：取对象名的SHA-256，前两级目录各用两位十六进制，共65536个目录
+     */
+    private Path resolve(String objectName) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectName.getBytes(StandardCharsets.UTF_8));
+            String hex = HexFormat.of().formatHex(digest);
+            return rootDir.resolve(OBJECTS_DIR).resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path multipartDir(String uploadId) {
+        // uploadId会拼进路径，只接受本类生成的格式
+        ExceptionUtil.throwIf(uploadId == null || !UPLOAD_ID.matcher(uploadId).matches(), ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+        return rootDir.resolve(MULTIPART_DIR).resolve(uploadId);
+    }
+
+    private boolean isOlderThan(Path path, Instant instant) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant().isBefore(instant);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete temp file: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private void deleteRecursivelyQuietly(Path path) {
+        try {
+            FileSystemUtils.deleteRecursively(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete multipart upload directory: path={}, error={}", path, e.getMessage());
+        }
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close file channel: {}", e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void write(FileChannel target) throws IOException;
+    }
+}
@@ -3,20 +3,53 @@ package com.cloudrive.service.impl;
 import com.cloudrive.common.constant.CommonConstants;
 import com.cloudrive.common.enums.ErrorCode;
 import com.cloudrive.common.util.ExceptionUtil;
+import com.cloudrive.common.util.HedgedReader;
+import com.cloudrive.common.util.MinioShardRouter;
 import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.model.entity.PackEntry;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
 import com.cloudrive.service.StorageService;
 import com.cloudrive.service.UploadProgressService;
+import io.minio.messages.Part;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author cd
@@ -24,27 +57,157 @@ import java.util.UUID;
  * @description
  */
 @Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
 @RequiredArgsConstructor
 public class MinioStorageServiceImpl implements StorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(MinioStorageServiceImpl.class);
     private final UploadProgressService uploadProgressService;
-    private final MinioUtil minioUtil;
+    private final MinioShardRouter shardRouter;
+    private final HedgedReader hedgedReader;
+
+    /**
+     * 分层存储，未启用时为空，对象路径即实际位置
+     */
+    private final ObjectProvider<ObjectTierService> objectTierServiceProvider;
+
+    /**
+     * 小文件打包，未启用时为空
+     */
+    private final ObjectProvider<PackService> packServiceProvider;
+
+    @Autowired
+    @Qualifier("storageIoExecutor")
+    private Executor storageIoExecutor;
+
+    /**
+     * 超过该大小的本地文件使用并行分片上传
+     */
+    @Value("${minio.multipart.threshold:64MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${minio.multipart.part-size:16MB}")
+    private DataSize partSize;
+
+    /**
+     * 单个文件同时上传的分片数，同时决定了内存占用上限（parallelism * partSize）
+     */
+    @Value("${minio.multipart.parallelism:4}")
+    private int parallelism;
 
     @Override
     public String uploadFile(MultipartFile file, String path) {
-        String fileName = generateUniqueFileName();
-        String objectName = buildObjectName(path, fileName);
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadFile(inputStream, file.getSize(), file.getContentType(), path);
+        } catch (IOException e) {
+            logger.error("Failed to open upload stream: path={}, error={}", path, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String uploadFile(InputStream inputStream, long size, String contentType, String path) {
+        String objectName = generateObjectName(path);
+        uploadObject(objectName, inputStream, size, contentType);
+        return objectName;
+    }
+
+    @Override
+    public void uploadObject(String objectName, InputStream inputStream, long size, String contentType) {
         try {
-            minioUtil.uploadFile(objectName, file.getInputStream(), file.getContentType());
-            return objectName;
+            MinioShardRouter.Target target = shardRouter.resolve(objectName);
+            target.client().uploadFile(target.key(), inputStream, size, contentType);
+            replicate(target);
         } catch (Exception e) {
             logger.error("Failed to upload file to MinIO: objectName={}, error={}",  objectName, e.getMessage());
             ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 按一致性哈希为新对象选择分片，分片名写进对象名
+     */
+    @Override
+    public String generateObjectName(String path) {
+        return shardRouter.assign(buildObjectName(path, generateUniqueFileName()));
+    }
+
+    @Override
+    public String createMultipartUpload(String objectName, String contentType) {
+        try {
+            MinioShardRouter.Target target = shardRouter.resolve(objectName);
+            return target.client().createMultipartUpload(target.key(), contentType);
+        } catch (Exception e) {
+            logger.error("Failed to create multipart upload: objectName={}, error={}", objectName, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
             return null;
         }
     }
 
+    @Override
+    public String uploadPart(String objectName, String uploadId, int partNumber, InputStream inputStream, long length) {
+        // SDK对InputStream会把整个分片读入堆内存，先顺序落盘到临时文件，再由SDK从文件读取上传
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("cloudrive-part-", ".tmp");
+            try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.WRITE)) {
+                ReadableByteChannel source = Channels.newChannel(inputStream);
+                long written = 0;
+                while (written < length) {
+                    long transferred = channel.transferFrom(source, written, length - written);
+                    if (transferred <= 0) {
+                        throw new EOFException("Unexpected end of stream after " + written + " of " + length + " bytes");
+                    }
+                    written += transferred;
+                }
+            }
+            try (RandomAccessFile file = new RandomAccessFile(spool.toFile(), "r")) {
+                MinioShardRouter.Target target = shardRouter.resolve(objectName);
+                return target.client().uploadPart(target.key(), uploadId, partNumber, file, length);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to upload part: objectName={}, partNumber={}, error={}", objectName, partNumber, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+            return null;
+        } finally {
+            if (spool != null) {
+                try {
+                    Files.deleteIfExists(spool);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete part spool file: path={}, error={}", spool, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void completeMultipartUpload(String objectName, String uploadId, Map<Integer, String> partETags) {
+        Part[] parts = partETags.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> new Part(entry.getKey(), entry.getValue()))
+                .toArray(Part[]::new);
+        try {
+            MinioShardRouter.Target target = shardRouter.resolve(objectName);
+            target.client().completeMultipartUpload(target.key(), uploadId, parts);
+            replicate(target);
+        } catch (Exception e) {
+            logger.error("Failed to complete multipart upload: objectName={}, error={}", objectName, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, e.getMessage());
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            MinioShardRouter.Target target = shardRouter.resolve(objectName);
+            target.client().abortMultipartUpload(target.key(), uploadId);
+        } catch (Exception e) {
+            // 未合并的分片由MinIO生命周期策略兜底清理，这里只记录日志
+            logger.warn("Failed to abort multipart upload: objectName={}, error={}", objectName, e.getMessage());
+        }
+    }
+
     private String generateUniqueFileName() {
         return UUID.randomUUID().toString().replace("-", "");
     }
@@ -66,22 +229,30 @@ public class MinioStorageServiceImpl implements StorageService {
         }
 
         // 生成唯一文件名和对象路径
-        String fileName = generateUniqueFileName();
-        String objectName = buildObjectName(path, fileName);
+        String objectName = generateObjectName(path);
 
         logger.info("Starting MinIO upload with progress tracking: file={}, objectName={}, taskId={}, fileSize={}",
                 originalFilename, objectName, taskId, fileSize);
 
         try {
             // 初始化进度任务
-            uploadProgressService.updateProgress(taskId, 0.0,0, fileSize);
+            uploadProgressService.updateProgress(taskId, 0, fileSize);
+
+            // 大文件按分片并行上传
+            if (fileSize >= multipartThreshold.toBytes()) {
+                uploadInParallel(file, objectName, determineContentType(originalFilename), taskId, fileSize);
+                uploadProgressService.completeUploadTask(taskId, true, "上传完成");
+                logger.info("File uploaded successfully to MinIO in parallel: objectName={}, taskId={}", objectName, taskId);
+                return objectName;
+            }
 
             final long finalFileSize = fileSize; // final变量用于lambda表达式
 
             // 上传文件并监听进度
             try (InputStream is = new FileInputStream(file)) {
-                minioUtil.uploadFileWithProgress(
-                        objectName,
+                MinioShardRouter.Target target = shardRouter.resolve(objectName);
+                target.client().uploadFileWithProgress(
+                        target.key(),
                         is,
                         determineContentType(originalFilename),
                         finalFileSize,
@@ -91,10 +262,12 @@ public class MinioStorageServiceImpl implements StorageService {
 
                             // 更新任务进度
                             long bytesTransferred = Math.round(finalFileSize * progress / 100.0);
-                            uploadProgressService.updateProgress(taskId, progress, bytesTransferred, finalFileSize);
+                            uploadProgressService.updateProgress(taskId, bytesTransferred, finalFileSize);
                         }
                 );
 
+                replicate(target);
+
                 // 标记上传完成
                 uploadProgressService.completeUploadTask(taskId, true, "上传完成");
                 logger.info("File uploaded successfully to MinIO: objectName={}, taskId={}", objectName, taskId);
@@ -104,17 +277,86 @@ public class MinioStorageServiceImpl implements StorageService {
             } catch (IOException e) {
                 logger.error("Failed to upload file to MinIO with progress tracking: objectName={}, error={}",
                         objectName, e.getMessage(), e);
-                uploadProgressService.completeUploadTask(taskId, false, "MinIO上传失败: " + e.getMessage());
                 ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, "MinIO上传失败: " + e.getMessage());
                 return null;
             }
 
         } catch (Exception e) {
+            // 任务失败状态只在这里上报一次
             handleUploadError(taskId, "文件上传失败: " + e.getMessage());
             throw e;
         }
     }
 
+    /**
+     * 并行分片上传本地文件：按位置读取各分片，在存储I/O线程池上并发上传，最后由MinIO合并；
+     * 失败时只中止分片上传并抛出异常，任务状态由调用方统一标记
+     */
+    private void uploadInParallel(File file, String objectName, String contentType, String taskId, long fileSize) {
+        long partBytes = partSize.toBytes();
+        int partCount = (int) ((fileSize + partBytes - 1) / partBytes);
+        MinioShardRouter.Target target = shardRouter.resolve(objectName);
+        String uploadId = target.client().createMultipartUpload(target.key(), contentType);
+
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicLong transferred = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<Part>> futures = new ArrayList<>(partCount);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                // 同时在途的分片数不超过parallelism，限制内存占用
+                permits.acquire();
+                long offset = i * partBytes;
+                int length = (int) Math.min(partBytes, fileSize - offset);
+                int partNumber = i + 1;
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        byte[] data = readPart(channel, offset, length);
+                        String etag = target.client().uploadPart(target.key(), uploadId, partNumber, data, length);
+                        long done = transferred.addAndGet(length);
+                        uploadProgressService.updateProgress(taskId, done, fileSize);
+                        return new Part(partNumber, etag);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, storageIoExecutor).whenComplete((part, e) -> {
+                    if (e != null) {
+                        failure.compareAndSet(null, e);
+                    }
+                    permits.release();
+                }));
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            Part[] parts = futures.stream().map(CompletableFuture::join).toArray(Part[]::new);
+            target.client().completeMultipartUpload(target.key(), uploadId, parts);
+            replicate(target);
+        } catch (Exception e) {
+            abortMultipartUpload(objectName, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = failure.get() != null ? failure.get() : e;
+            logger.error("Parallel upload failed: objectName={}, error={}", objectName, cause.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_UPLOAD_FAILED, "MinIO上传失败: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * 按位置读取分片，FileChannel的定位读取不改变通道位置，可被多个线程并发调用
+     */
+    private byte[] readPart(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at offset " + (offset + buffer.position()));
+            }
+        }
+        return buffer.array();
+    }
+
     /**
      * 根据文件名确定内容类型
      */
@@ -152,7 +394,18 @@ public class MinioStorageServiceImpl implements StorageService {
     @Override
     public void deleteFile(String path) {
         try {
-            minioUtil.deleteFile(path);
+            PackService packService = packServiceProvider.getIfAvailable();
+            PackEntry packEntry = packService != null ? packService.remove(path) : null;
+            // 已打包且独立对象已清理时只需移除条目，聚合对象由打包任务重写或删除
+            if (packEntry == null || !Boolean.TRUE.equals(packEntry.getOriginalDeleted())) {
+                ObjectTierService objectTierService = objectTierServiceProvider.getIfAvailable();
+                List<String> storagePaths = objectTierService != null ? objectTierService.remove(path) : List.of(path);
+                for (String storagePath : storagePaths) {
+                    MinioShardRouter.Target target = shardRouter.resolve(storagePath);
+                    target.client().deleteFile(target.key());
+                    deleteReplica(target);
+                }
+            }
             logger.info("File deleted successfully from MinIO: path={}", path);
         } catch (Exception e) {
             logger.error("Failed to delete file from MinIO: path={}, error={}", path, e.getMessage());
@@ -160,24 +413,119 @@ public class MinioStorageServiceImpl implements StorageService {
         }
     }
 
-    @Override
-    public byte[] downloadFile(String path) {
-        try (InputStream inputStream = minioUtil.downloadFile(path)) {
-            if (inputStream == null) {
-                logger.error("File not found in MinIO: path={}", path);
-                ExceptionUtil.throwBizException(ErrorCode.FILE_NOT_FOUND);
-                return null;
+    /**
+     * 分片配置了副本时，把刚写入的对象同步复制到副本，作为写入的一部分：写入返回时副本一定已存在，
+     * 之后的删除不会与复制交错而在副本上留下孤儿对象。复制失败时删除主存储和副本上的对象，写入按失败处理
+     */
+    private void replicate(MinioShardRouter.Target target) {
+        MinioUtil replica = target.shard().replica();
+        if (replica == null) {
+            return;
+        }
+        try {
+            target.client().copyTo(replica, target.key());
+        } catch (RuntimeException e) {
+            logger.error("Failed to replicate object: shard={}, key={}, error={}", target.shard().name(), target.key(), e.getMessage());
+            try {
+                target.client().deleteFile(target.key());
+            } catch (Exception deleteError) {
+                logger.warn("Failed to delete unreplicated object: shard={}, key={}, error={}", target.shard().name(), target.key(), deleteError.getMessage());
             }
+            deleteReplica(target);
+            throw e;
+        }
+    }
 
-            byte[] bytes = inputStream.readAllBytes();
-            logger.info("File downloaded successfully from MinIO: path={}, size={} bytes", path, bytes.length);
-            return bytes;
-        } catch (IOException e) {
+    /**
+     * 启用分层存储时，通过间接表找到对象的实际位置并记录访问
+     */
+    private String locateForRead(String path) {
+        ObjectTierService objectTierService = objectTierServiceProvider.getIfAvailable();
+        if (objectTierService == null) {
+            return path;
+        }
+        objectTierService.recordAccess(path);
+        return objectTierService.locate(path);
+    }
+
+    /**
+     * 启用小文件打包时查找对象在聚合对象中的位置
+     *
+     * @return 未打包时返回null
+     */
+    private PackEntry locatePacked(String path) {
+        PackService packService = packServiceProvider.getIfAvailable();
+        return packService != null ? packService.locate(path) : null;
+    }
+
+    /**
+     * 对聚合对象做范围读取，已打包的文件不参与分层存储
+     */
+    private InputStream readPacked(PackEntry packEntry, long offset, long length) {
+        MinioShardRouter.Target target = shardRouter.resolve(packEntry.getPackPath());
+        long packOffset = packEntry.getPackOffset() + offset;
+        return hedgedReader.read(target.shard(), client -> client.downloadFile(target.key(), packOffset, length));
+    }
+
+    private void deleteReplica(MinioShardRouter.Target target) {
+        MinioUtil replica = target.shard().replica();
+        if (replica == null) {
+            return;
+        }
+        try {
+            replica.deleteFile(target.key());
+        } catch (Exception e) {
+            logger.warn("Failed to delete replica object: shard={}, key={}, error={}", target.shard().name(), target.key(), e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream downloadFile(String path) {
+        try {
+            PackEntry packEntry = locatePacked(path);
+            if (packEntry != null) {
+                return readPacked(packEntry, 0, packEntry.getLength());
+            }
+            MinioShardRouter.Target target = shardRouter.resolve(locateForRead(path));
+            return hedgedReader.read(target.shard(), client -> client.downloadFile(target.key()));
+        } catch (Exception e) {
             logger.error("Failed to download file from MinIO: path={}, error={}", path, e.getMessage());
             ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, e.getMessage());
             return null;
+        }
+    }
+
+    @Override
+    public InputStream downloadFile(String path, long offset, long length) {
+        try {
+            PackEntry packEntry = locatePacked(path);
+            if (packEntry != null) {
+                return readPacked(packEntry, offset, Math.min(length, packEntry.getLength() - offset));
+            }
+            MinioShardRouter.Target target = shardRouter.resolve(locateForRead(path));
+            return hedgedReader.read(target.shard(), client -> client.downloadFile(target.key(), offset, length));
+        } catch (Exception e) {
+            logger.error("Failed to download file range from MinIO: path={}, offset={}, length={}, error={}", path, offset, length, e.getMessage());
+            ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String getDownloadUrl(String path, String filename, Duration expiry) {
+        String contentDisposition = ContentDisposition.builder("attachment")
+                .filename(filename, StandardCharsets.UTF_8)
+                .build()
+                .toString();
+        try {
+            if (locatePacked(path) != null) {
+                // 预签名URL不能限定聚合对象中的范围，已打包的文件由应用转发
+                return null;
+            }
+            MinioShardRouter.Target target = shardRouter.resolve(locateForRead(path));
+            return target.client().getPresignedDownloadUrl(target.key(), contentDisposition, (int) Math.max(1, expiry.toSeconds()));
         } catch (Exception e) {
-            logger.error("Failed to download file, error: {}", e.getMessage());
+            logger.error("Failed to presign download URL: path={}, error={}", path, e.getMessage());
             ExceptionUtil.throwBizException(ErrorCode.FILE_DOWNLOAD_FAILED, e.getMessage());
             return null;
         }
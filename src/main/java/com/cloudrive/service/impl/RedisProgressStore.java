@@ -0,0 +1,71 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.redis.UploadProgressRedis;
+import com.cloudrive.service.ProgressStore;
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 基于Redis的进度存储，更新通过Redis发布订阅通知到所有节点
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "upload.progress.store", havingValue = "redis", matchIfMissing = true)
+public class RedisProgressStore implements ProgressStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisProgressStore.class);
+
+    private final UploadProgressRedis uploadProgressRedis;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void createTask(UploadTask task) {
+        uploadProgressRedis.createTask(task);
+    }
+
+    @Override
+    public void applyUpdates(Collection<ProgressUpdate> updates) {
+        uploadProgressRedis.applyUpdates(updates);
+    }
+
+    @Override
+    public UploadTask getTask(String taskId) {
+        return uploadProgressRedis.getTask(taskId);
+    }
+
+    @Override
+    public void getTasksChangedSince(Map<String, Long> sinceVersions, List<UploadTask> changed, List<String> notFound) {
+        uploadProgressRedis.getTasksChangedSince(sinceVersions, changed, notFound);
+    }
+
+    @Override
+    public int subscribe(String userId, Consumer<UploadProgressVO> listener) {
+        return uploadProgressRedis.getProgressTopic(userId).addListener(String.class, (channel, message) -> {
+            try {
+                listener.accept(objectMapper.readValue(message, UploadProgressVO.class));
+            } catch (JsonProcessingException e) {
+                logger.warn("无法解析上传进度消息：userId={}, message={}", userId, message);
+            }
+        });
+    }
+
+    @Override
+    public void unsubscribe(String userId, int subscriptionId) {
+        uploadProgressRedis.getProgressTopic(userId).removeListenerAsync(subscriptionId);
+    }
+}
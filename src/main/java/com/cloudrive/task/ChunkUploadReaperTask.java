@@ -0,0 +1,49 @@
+package com.cloudrive.task;
+
+import com.cloudrive.model.entity.ChunkUploadSession;
+import com.cloudrive.redis.ChunkUploadRedis;
+import com.cloudrive.service.StorageService;
+import com.cloudrive.service.StorageServiceFactory;
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 中止已过期的分片上传会话在存储端遗留的分片上传，客户端放弃上传后分片不会一直占用存储空间
+ */
+@Component
+@RequiredArgsConstructor
+public class ChunkUploadReaperTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkUploadReaperTask.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final ChunkUploadRedis chunkUploadRedis;
+    private final StorageServiceFactory storageServiceFactory;
+
+    @Scheduled(fixedDelayString = "${upload.chunk-reaper.interval:PT30M}")
+    @SchedulerLock(name = "chunkUploadReaperTask", lockAtMostFor = "PT30M")
+    public void reap() {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        int reaped = 0;
+        List<ChunkUploadSession> expired;
+        do {
+            expired = chunkUploadRedis.getExpiredSessions(System.currentTimeMillis(), BATCH_SIZE);
+            for (ChunkUploadSession session : expired) {
+                storageService.abortMultipartUpload(session.getObjectName(), session.getMultipartUploadId());
+                chunkUploadRedis.deleteSession(session.getUploadId());
+                reaped++;
+            }
+        } while (expired.size() == BATCH_SIZE);
+        if (reaped > 0) {
+            logger.info("中止过期的分片上传：count={}", reaped);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.cloudrive.task;
+
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.dao.PackDao;
+import com.cloudrive.model.entity.Pack;
+import com.cloudrive.model.entity.PackEntry;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description 小文件打包：把已上传一段时间的小文件顺序拼接成聚合对象，登记各自的偏移和长度后延迟删除原来的独立对象；
+ * 聚合对象中被删除的内容过多时，把其余条目重写到新的聚合对象，旧聚合对象清空后延迟删除
+ */
+@Component
+@ConditionalOnProperty(name = "storage.pack.enabled", havingValue = "true")
+public class SmallFilePackTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmallFilePackTask.class);
+
+    private static final String PACK_PREFIX = "packs/";
+
+    private static final String PACK_CONTENT_TYPE = "application/octet-stream";
+
+    private final PackDao packDao;
+    private final PackService packService;
+    private final MinioShardRouter shardRouter;
+    private final ObjectProvider<ObjectTierService> objectTierServiceProvider;
+    private final ThreadPoolTaskExecutor downloadExecutor;
+
+    /**
+     * 不超过该大小的文件会被打包
+     */
+    @Value("${storage.pack.max-file-size:64KB}")
+    private DataSize maxFileSize;
+
+    /**
+     * 聚合对象的目标大小，打包在内存中进行，同时决定了任务的内存占用
+     */
+    @Value("${storage.pack.target-size:16MB}")
+    private DataSize targetSize;
+
+    /**
+     * 凑不够该数量的小文件时不打包，避免产生过小的聚合对象
+     */
+    @Value("${storage.pack.min-entries:32}")
+    private int minEntries;
+
+    /**
+     * 上传后经过该时间才打包，刚上传的文件通常会马上被读取或删除
+     */
+    @Value("${storage.pack.min-age:PT1H}")
+    private Duration minAge;
+
+    /**
+     * 每次查询的候选文件数
+     */
+    @Value("${storage.pack.batch-size:2000}")
+    private int batchSize;
+
+    /**
+     * 每次运行最多写入的聚合对象数（打包和重写各自计算）
+     */
+    @Value("${storage.pack.max-packs-per-run:20}")
+    private int maxPacksPerRun;
+
+    /**
+     * 有效内容占比不超过该值的聚合对象被重写
+     */
+    @Value("${storage.pack.compact-below-live-ratio:0.5}")
+    private double compactBelowLiveRatio;
+
+    /**
+     * 下载线程池的活跃线程比例达到该值时暂停
+     */
+    @Value("${storage.pack.busy-threshold:0.5}")
+    private double busyThreshold;
+
+    /**
+     * 打包后独立对象、重写后旧聚合对象的保留时间，需大于索引缓存和预签名URL的有效期
+     */
+    @Value("${storage.pack.cleanup-delay:PT30M}")
+    private Duration cleanupDelay;
+
+    public SmallFilePackTask(PackDao packDao, PackService packService, MinioShardRouter shardRouter,
+                             ObjectProvider<ObjectTierService> objectTierServiceProvider,
+                             @Qualifier("downloadExecutor") ThreadPoolTaskExecutor downloadExecutor) {
+        this.packDao = packDao;
+        this.packService = packService;
+        this.shardRouter = shardRouter;
+        this.objectTierServiceProvider = objectTierServiceProvider;
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.pack.interval:PT5M}")
+    @SchedulerLock(name = "smallFilePackTask", lockAtMostFor = "PT1H")
+    public void run() {
+        cleanupOriginals();
+        cleanupEmptyPacks();
+        int packed = packSmallFiles();
+        int compacted = compactSparsePacks();
+        if (packed > 0 || compacted > 0) {
+            logger.info("小文件打包完成：packed={}, compacted={}", packed, compacted);
+        }
+    }
+
+    /**
+     * 把未打包的小文件写入新的聚合对象
+     *
+     * @return 登记成功的文件数
+     */
+    private int packSmallFiles() {
+        int packed = 0;
+        for (int i = 0; i < maxPacksPerRun && !isBusy(); i++) {
+            LocalDateTime createdBefore = LocalDateTime.now().minus(minAge);
+            List<PackEntry> candidates = packDao.findPackCandidates(maxFileSize.toBytes(), createdBefore, batchSize);
+            if (candidates.size() < minEntries) {
+                break;
+            }
+            PackBuilder builder = new PackBuilder();
+            for (PackEntry candidate : candidates) {
+                if (builder.isFull()) {
+                    break;
+                }
+                byte[] data = readOriginal(candidate);
+                if (data != null) {
+                    builder.add(candidate.getObjectPath(), null, data);
+                }
+            }
+            if (builder.entries.size() < minEntries) {
+                break;
+            }
+            String packPath = writePack(builder);
+            if (packPath == null) {
+                break;
+            }
+            packed += packService.commitPack(packPath, builder.size(), builder.entries);
+        }
+        return packed;
+    }
+
+    /**
+     * 把有效内容占比过低的聚合对象中的其余条目重写到新的聚合对象，多个稀疏聚合对象合并写入
+     *
+     * @return 移动成功的条目数
+     */
+    private int compactSparsePacks() {
+        int compacted = 0;
+        int written = 0;
+        PackBuilder builder = new PackBuilder();
+        for (Pack pack : packDao.findSparsePacks(compactBelowLiveRatio, maxPacksPerRun)) {
+            if (isBusy()) {
+                break;
+            }
+            byte[] packData = readPack(pack.getPackPath());
+            if (packData == null) {
+                continue;
+            }
+            for (PackEntry entry : packDao.findEntriesByPackPath(pack.getPackPath())) {
+                long end = entry.getPackOffset() + entry.getLength();
+                if (end > packData.length) {
+                    logger.warn("打包条目超出聚合对象范围：objectPath={}, packPath={}", entry.getObjectPath(), pack.getPackPath());
+                    continue;
+                }
+                if (builder.isFull()) {
+                    compacted += commitCompaction(builder);
+                    written++;
+                    builder = new PackBuilder();
+                }
+                byte[] data = new byte[entry.getLength().intValue()];
+                System.arraycopy(packData, entry.getPackOffset().intValue(), data, 0, data.length);
+                builder.add(entry.getObjectPath(), pack.getPackPath(), data);
+            }
+            if (written >= maxPacksPerRun) {
+                break;
+            }
+        }
+        if (!builder.entries.isEmpty()) {
+            compacted += commitCompaction(builder);
+        }
+        return compacted;
+    }
+
+    private int commitCompaction(PackBuilder builder) {
+        String packPath = writePack(builder);
+        return packPath != null ? packService.commitCompaction(packPath, builder.size(), builder.entries) : 0;
+    }
+
+    /**
+     * 写入聚合对象，分片有副本时同步复制到副本
+     *
+     * @return 聚合对象路径，写入或复制副本失败时删除已写入的对象并返回null，不登记
+     */
+    private String writePack(PackBuilder builder) {
+        String packPath = shardRouter.assign(PACK_PREFIX + UUID.randomUUID());
+        MinioShardRouter.Target target = shardRouter.resolve(packPath);
+        try {
+            target.client().uploadFile(target.key(), new ByteArrayInputStream(builder.out.toByteArray()), builder.size(), PACK_CONTENT_TYPE);
+        } catch (Exception e) {
+            logger.warn("写入聚合对象失败：packPath={}, error={}", packPath, e.getMessage());
+            return null;
+        }
+        if (target.shard().replica() != null) {
+            try {
+                target.client().copyTo(target.shard().replica(), target.key());
+            } catch (Exception e) {
+                logger.warn("复制聚合对象到副本失败：packPath={}, error={}", packPath, e.getMessage());
+                deleteQuietly(packPath);
+                return null;
+            }
+        }
+        return packPath;
+    }
+
+    /**
+     * 读取待打包的独立对象，启用分层存储时从实际位置读取
+     *
+     * @return 读取失败或大小与记录不一致时返回null
+     */
+    private byte[] readOriginal(PackEntry candidate) {
+        String objectPath = candidate.getObjectPath();
+        ObjectTierService objectTierService = objectTierServiceProvider.getIfAvailable();
+        String storagePath = objectTierService != null ? objectTierService.locate(objectPath) : objectPath;
+        MinioShardRouter.Target target = shardRouter.resolve(storagePath);
+        try (InputStream inputStream = target.client().downloadFile(target.key())) {
+            byte[] data = inputStream.readAllBytes();
+            if (data.length != candidate.getLength()) {
+                logger.warn("待打包对象大小与记录不一致：objectPath={}, expected={}, actual={}", objectPath, candidate.getLength(), data.length);
+                return null;
+            }
+            return data;
+        } catch (Exception e) {
+            logger.warn("读取待打包对象失败：objectPath={}, error={}", objectPath, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] readPack(String packPath) {
+        MinioShardRouter.Target target = shardRouter.resolve(packPath);
+        try (InputStream inputStream = target.client().downloadFile(target.key())) {
+            return inputStream.readAllBytes();
+        } catch (Exception e) {
+            logger.warn("读取聚合对象失败：packPath={}, error={}", packPath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 删除打包已超过保留时间的独立对象，包括分层存储迁移留下的所有位置
+     */
+    private void cleanupOriginals() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(cleanupDelay);
+        ObjectTierService objectTierService = objectTierServiceProvider.getIfAvailable();
+        for (PackEntry entry : packDao.findOriginalsPendingCleanup(createdBefore, batchSize)) {
+            String objectPath = entry.getObjectPath();
+            List<String> storagePaths = objectTierService != null ? objectTierService.remove(objectPath) : List.of(objectPath);
+            boolean deleted = true;
+            for (String storagePath : storagePaths) {
+                deleted &= deleteQuietly(storagePath);
+            }
+            if (deleted) {
+                packDao.markOriginalDeleted(objectPath);
+            }
+        }
+    }
+
+    /**
+     * 删除条目已全部删除或移走、且超过保留时间的聚合对象
+     */
+    private void cleanupEmptyPacks() {
+        LocalDateTime updatedBefore = LocalDateTime.now().minus(cleanupDelay);
+        for (Pack pack : packDao.findEmptyPacks(updatedBefore, batchSize)) {
+            // 清空的聚合对象不会再登记条目，先删对象再删记录，删除失败时下次重试
+            if (deleteQuietly(pack.getPackPath())) {
+                packDao.deleteEmptyPack(pack.getPackPath());
+            }
+        }
+    }
+
+    private boolean deleteQuietly(String storagePath) {
+        MinioShardRouter.Target target = shardRouter.resolve(storagePath);
+        try {
+            target.client().deleteFile(target.key());
+            if (target.shard().replica() != null) {
+                target.shard().replica().deleteFile(target.key());
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("删除对象失败：shard={}, key={}, error={}", target.shard().name(), target.key(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isBusy() {
+        return downloadExecutor.getActiveCount() >= downloadExecutor.getMaxPoolSize() * busyThreshold;
+    }
+
+    /**
+     * 在内存中顺序拼接一个聚合对象
+     */
+    private class PackBuilder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final List<PackEntry> entries = new ArrayList<>();
+
+        /**
+         * @param sourcePackPath 重写时为条目原来所在的聚合对象，打包时为null
+         */
+        private void add(String objectPath, String sourcePackPath, byte[] data) {
+            PackEntry entry = new PackEntry();
+            entry.setObjectPath(objectPath);
+            entry.setPackPath(sourcePackPath);
+            entry.setPackOffset((long) out.size());
+            entry.setLength((long) data.length);
+            out.writeBytes(data);
+            entries.add(entry);
+        }
+
+        private boolean isFull() {
+            return out.size() >= targetSize.toBytes();
+        }
+
+        private long size() {
+            return out.size();
+        }
+    }
+}
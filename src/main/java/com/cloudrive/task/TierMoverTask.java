@@ -0,0 +1,256 @@
+package com.cloudrive.task;
+
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.dao.ObjectTierDao;
+import com.cloudrive.model.entity.ObjectTier;
+import com.cloudrive.service.ObjectTierService;
+import jakarta.annotation.PostConstruct;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description 分层存储的后台迁移：把长期未访问的对象降级到冷层分片，把冷层中重新变热的对象升级回原位置；
+ * 单线程顺序复制并限制带宽，下载线程繁忙时暂停，避免与用户请求争用存储和网络
+ */
+@Component
+@ConditionalOnProperty(name = "storage.tier.enabled", havingValue = "true")
+public class TierMoverTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(TierMoverTask.class);
+
+    private final ObjectTierDao objectTierDao;
+    private final ObjectTierService objectTierService;
+    private final MinioShardRouter shardRouter;
+    private final ThreadPoolTaskExecutor downloadExecutor;
+
+    /**
+     * 冷层对应的MinIO分片，通常配置为weight=0，不接收新写入
+     */
+    @Value("${storage.tier.cold-shard}")
+    private String coldShard;
+
+    /**
+     * 创建和最后访问都早于该时间的对象被降级
+     */
+    @Value("${storage.tier.demote-after:P7D}")
+    private Duration demoteAfter;
+
+    /**
+     * 冷层对象访问次数达到该值后升级
+     */
+    @Value("${storage.tier.promote-after-accesses:3}")
+    private long promoteAfterAccesses;
+
+    /**
+     * 每次运行最多迁移的对象数（降级和升级各自计算）
+     */
+    @Value("${storage.tier.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 迁移的总带宽上限
+     */
+    @Value("${storage.tier.max-bytes-per-second:20MB}")
+    private DataSize maxBytesPerSecond;
+
+    /**
+     * 下载线程池的活跃线程比例达到该值时暂停迁移
+     */
+    @Value("${storage.tier.busy-threshold:0.5}")
+    private double busyThreshold;
+
+    /**
+     * 迁移后旧位置的保留时间，需大于位置缓存和预签名URL的有效期
+     */
+    @Value("${storage.tier.cleanup-delay:PT30M}")
+    private Duration cleanupDelay;
+
+    /**
+     * 已打包的小文件不参与分层
+     */
+    @Value("${storage.pack.enabled:false}")
+    private boolean packEnabled;
+
+    public TierMoverTask(ObjectTierDao objectTierDao, ObjectTierService objectTierService, MinioShardRouter shardRouter,
+                         @Qualifier("downloadExecutor") ThreadPoolTaskExecutor downloadExecutor) {
+        this.objectTierDao = objectTierDao;
+        this.objectTierService = objectTierService;
+        this.shardRouter = shardRouter;
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!shardRouter.hasShard(coldShard)) {
+            throw new IllegalStateException("storage.tier.cold-shard is not a configured MinIO shard: " + coldShard);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.tier.interval:PT5M}")
+    @SchedulerLock(name = "tierMoverTask", lockAtMostFor = "PT1H")
+    public void move() {
+        cleanupPreviousCopies();
+        RateLimiter rateLimiter = new RateLimiter(maxBytesPerSecond.toBytes());
+        int promoted = 0;
+        for (ObjectTier candidate : objectTierDao.findPromotionCandidates(promoteAfterAccesses, batchSize)) {
+            if (isBusy()) {
+                break;
+            }
+            // 升级回对象路径本身，即对象最初写入的位置
+            if (migrate(candidate.getObjectPath(), candidate.getStoragePath(), candidate.getObjectPath(), ObjectTier.TIER_HOT, rateLimiter)) {
+                promoted++;
+            }
+        }
+        int demoted = 0;
+        LocalDateTime cutoff = LocalDateTime.now().minus(demoteAfter);
+        for (ObjectTier candidate : objectTierDao.findDemotionCandidates(cutoff, packEnabled, batchSize)) {
+            if (isBusy()) {
+                break;
+            }
+            String objectPath = candidate.getObjectPath();
+            if (migrate(objectPath, objectPath, shardRouter.placeOn(coldShard, objectPath), ObjectTier.TIER_COLD, rateLimiter)) {
+                demoted++;
+            }
+        }
+        if (promoted > 0 || demoted > 0) {
+            logger.info("分层迁移完成：promoted={}, demoted={}", promoted, demoted);
+        }
+    }
+
+    /**
+     * 复制到新位置（及其副本）后切换间接指向，旧位置留待cleanup-delay后删除
+     */
+    private boolean migrate(String objectPath, String from, String to, String tier, RateLimiter rateLimiter) {
+        if (from.equals(to)) {
+            return false;
+        }
+        MinioShardRouter.Target source = shardRouter.resolve(from);
+        MinioShardRouter.Target target = shardRouter.resolve(to);
+        try {
+            source.client().copyTo(target.client(), source.key(), target.key(), in -> new ThrottledInputStream(in, rateLimiter));
+        } catch (Exception e) {
+            logger.warn("分层迁移复制失败：objectPath={}, from={}, to={}, error={}", objectPath, from, to, e.getMessage());
+            return false;
+        }
+        if (target.shard().replica() != null) {
+            try {
+                target.client().copyTo(target.shard().replica(), target.key(), target.key(), in -> new ThrottledInputStream(in, rateLimiter));
+            } catch (Exception e) {
+                // 新位置没有副本时不切换，否则对冲读和主存储故障时读不到；删除已写入的新位置，下一轮重试
+                logger.warn("分层迁移复制副本失败：objectPath={}, to={}, error={}", objectPath, to, e.getMessage());
+                deleteQuietly(target);
+                return false;
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        objectTierDao.insertHotIfAbsent(objectPath, now);
+        if (objectTierDao.switchTier(objectPath, from, tier, to, now) == 0) {
+            // 复制期间对象被删除或已被其他节点迁移，丢弃新副本
+            deleteQuietly(target);
+            return false;
+        }
+        objectTierService.invalidate(objectPath);
+        return true;
+    }
+
+    /**
+     * 删除迁移后已过保留时间的旧位置
+     */
+    private void cleanupPreviousCopies() {
+        LocalDateTime switchedBefore = LocalDateTime.now().minus(cleanupDelay);
+        for (ObjectTier tier : objectTierDao.findPendingCleanup(switchedBefore, batchSize)) {
+            if (deleteQuietly(shardRouter.resolve(tier.getPreviousPath()))) {
+                objectTierDao.clearPreviousPath(tier.getObjectPath(), tier.getPreviousPath());
+            }
+        }
+    }
+
+    private boolean deleteQuietly(MinioShardRouter.Target target) {
+        try {
+            target.client().deleteFile(target.key());
+            if (target.shard().replica() != null) {
+                target.shard().replica().deleteFile(target.key());
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("删除迁移前的对象失败：shard={}, key={}, error={}", target.shard().name(), target.key(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isBusy() {
+        return downloadExecutor.getActiveCount() >= downloadExecutor.getMaxPoolSize() * busyThreshold;
+    }
+
+    /**
+     * 按字节数限速：累计读取量超出速率允许的量时休眠
+     */
+    private static class RateLimiter {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        private RateLimiter(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private void acquire(int count) throws InterruptedIOException {
+            bytes += count;
+            long expectedNanos = (long) ((double) bytes / bytesPerSecond * 1_000_000_000L);
+            long sleepMillis = (expectedNanos - (System.nanoTime() - start)) / 1_000_000L;
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Tier migration interrupted");
+                }
+            }
+        }
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final RateLimiter rateLimiter;
+
+        private ThrottledInputStream(InputStream in, RateLimiter rateLimiter) {
+            super(in);
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                rateLimiter.acquire(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                rateLimiter.acquire(read);
+            }
+            return read;
+        }
+    }
+}
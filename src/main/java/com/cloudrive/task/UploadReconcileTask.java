@@ -0,0 +1,46 @@
+package com.cloudrive.task;
+
+import com.cloudrive.service.StorageServiceFactory;
+import com.cloudrive.service.UploadJournalService;
+import lombok.RequiredArgsConstructor;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description 回收写入存储后未能提交元数据的对象
+ */
+@Component
+@RequiredArgsConstructor
+public class UploadReconcileTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadReconcileTask.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final UploadJournalService uploadJournalService;
+    private final StorageServiceFactory storageServiceFactory;
+
+    /**
+     * 日志保留时间，需大于最慢一次上传的耗时
+     */
+    @Value("${upload.reconcile.min-age:PT24H}")
+    private Duration minAge;
+
+    @Scheduled(fixedDelayString = "${upload.reconcile.interval:PT10M}")
+    @SchedulerLock(name = "uploadReconcileTask", lockAtMostFor = "PT10M")
+    public void reconcile() {
+        int reclaimed = uploadJournalService.reclaim(storageServiceFactory.getStorageService(),
+                LocalDateTime.now().minus(minAge), BATCH_SIZE);
+        if (reclaimed > 0) {
+            logger.info("回收未提交的上传对象：count={}", reclaimed);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.cloudrive.benchmark;
+
+import com.cloudrive.common.util.FileHashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cd
+ * @date 2025/10/10
+ * @description FileHashUtil基准测试：对比FileChannel池化直接缓冲区、64KB流缓冲区与原8KB流+Integer.toHexString实现，
+ * 运行方式：mvn test-compile 后执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileHashBenchmark {
+
+    private static final int LEGACY_BUFFER_SIZE = 8192;
+
+    @Param({"65536", "16777216", "268435456"})
+    private int fileSize;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile("cloudrive-hash-bench-", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long remaining = fileSize;
+            while (remaining > 0) {
+                int n = (int) Math.min(block.length, remaining);
+                out.write(block, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String channel() {
+        return FileHashUtil.calculateSHA256(file);
+    }
+
+    @Benchmark
+    public String stream() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return FileHashUtil.calculateSHA256(in);
+        }
+    }
+
+    @Benchmark
+    public String legacy() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : digest.digest()) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FileHashBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,166 @@
+package com.cloudrive.benchmark;
+
+import com.cloudrive.service.LocalContentCache;
+import com.cloudrive.service.StorageService;
+import com.cloudrive.service.StorageServiceFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * @author cd
+ * @date 2025/11/27
+ * @description 本地下载缓存基准测试：对比命中与未命中时读到前64KB的耗时（首字节时间），
+ * 存储端以本地文件模拟，每次打开增加 storageLatencyMs 的首字节延迟
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalContentCacheBenchmark {
+
+    private static final int FIRST_BYTES = 64 * 1024;
+
+    private static final String HOT_HASH = "0".repeat(64);
+
+    @Param({"16777216"})
+    private int objectSize;
+
+    @Param({"20"})
+    private int storageLatencyMs;
+
+    private Path cacheDir;
+
+    private Path object;
+
+    private LocalContentCache cache;
+
+    private ExecutorService storageIoExecutor;
+
+    private final AtomicLong missCounter = new AtomicLong();
+
+    private StorageService storageService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("cloudrive-cache-bench-");
+        object = Files.createTempFile("cloudrive-cache-object-", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(object)) {
+            for (int remaining = objectSize; remaining > 0; remaining -= block.length) {
+                out.write(block, 0, Math.min(block.length, remaining));
+            }
+        }
+
+        storageService = Mockito.mock(StorageService.class);
+        Mockito.when(storageService.downloadFile(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(storageLatencyMs);
+            return Files.newInputStream(object);
+        });
+        StorageServiceFactory storageServiceFactory = Mockito.mock(StorageServiceFactory.class);
+        Mockito.when(storageServiceFactory.getStorageService()).thenReturn(storageService);
+
+        storageIoExecutor = Executors.newFixedThreadPool(4);
+        cache = new LocalContentCache(storageServiceFactory, storageIoExecutor, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cacheDir", cacheDir);
+        ReflectionTestUtils.setField(cache, "maxSize", DataSize.ofMegabytes(512));
+        ReflectionTestUtils.setField(cache, "maxObjectSize", DataSize.ofMegabytes(256));
+        cache.init();
+
+        // 预热热点内容，等待后台填充完成
+        while (cache.open(HOT_HASH, "hot", objectSize) == null) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageIoExecutor.shutdownNow();
+        try (var files = Files.list(cacheDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(cacheDir);
+        Files.deleteIfExists(object);
+    }
+
+    @Benchmark
+    public long hit() throws IOException {
+        try (LocalContentCache.CachedContent cached = cache.open(HOT_HASH, "hot", objectSize)) {
+            CountingOutputStream out = new CountingOutputStream();
+            cached.transferTo(0, FIRST_BYTES, out);
+            return out.count;
+        }
+    }
+
+    /**
+     * 每次使用新的内容哈希，open返回null后按调用方的方式直接读取存储端，同时缓存在后台填充
+     */
+    @Benchmark
+    public long miss() throws IOException {
+        String hash = HexFormat.of().toHexDigits(missCounter.incrementAndGet()).repeat(4);
+        LocalContentCache.CachedContent cached = cache.open(hash, "cold", objectSize);
+        if (cached != null) {
+            throw new IllegalStateException("Unexpected cache hit: " + hash);
+        }
+        try (InputStream in = storageService.downloadFile("cold")) {
+            return in.readNBytes(FIRST_BYTES).length;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LocalContentCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
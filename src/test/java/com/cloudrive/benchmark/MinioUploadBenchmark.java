@@ -0,0 +1,138 @@
+package com.cloudrive.benchmark;
+
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.config.MinioProperties;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.service.impl.MinioStorageServiceImpl;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cd
+ * @date 2025/10/10
+ * @description MinIO本地文件上传基准测试：对比单流上传与并行分片上传的耗时（吞吐量 = fileSize / 耗时），
+ * 需要可访问的MinIO，通过 -Dminio.endpoint、-Dminio.access-key、-Dminio.secret-key、-Dminio.bucket 指定，
+ * 默认连接 http://localhost:9000 的 cloudrive-bench 存储桶
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MinioUploadBenchmark {
+
+    /**
+     * single：低于阈值走单个FileInputStream上传；parallel-N：N个分片同时上传
+     */
+    @Param({"single", "parallel-4", "parallel-8"})
+    private String mode;
+
+    @Param({"268435456"})
+    private long fileSize;
+
+    @Param({"16"})
+    private int partSizeMb;
+
+    private Path file;
+
+    private MinioShardRouter shardRouter;
+
+    private MinioStorageServiceImpl storageService;
+
+    private ExecutorService storageIoExecutor;
+
+    private String objectName;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        file = Files.createTempFile("cloudrive-upload-bench-", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long remaining = fileSize; remaining > 0; remaining -= block.length) {
+                out.write(block, 0, (int) Math.min(block.length, remaining));
+            }
+        }
+
+        MinioProperties properties = new MinioProperties();
+        properties.setEndpoint(System.getProperty("minio.endpoint", "http://localhost:9000"));
+        properties.setAccessKeyId(System.getProperty("minio.access-key", "minioadmin"));
+        properties.setAccessKeySecret(System.getProperty("minio.secret-key", "minioadmin"));
+        properties.setBucketName(System.getProperty("minio.bucket", "cloudrive-bench"));
+        shardRouter = new MinioShardRouter(properties);
+        shardRouter.init();
+
+        // 进度、分层和打包与上传吞吐无关，用空实现代替
+        ObjectProvider<ObjectTierService> tierProvider = Mockito.mock(ObjectProvider.class);
+        ObjectProvider<PackService> packProvider = Mockito.mock(ObjectProvider.class);
+        storageService = new MinioStorageServiceImpl(Mockito.mock(UploadProgressService.class), shardRouter,
+                null, tierProvider, packProvider);
+
+        storageIoExecutor = Executors.newFixedThreadPool(16);
+        boolean parallel = mode.startsWith("parallel-");
+        ReflectionTestUtils.setField(storageService, "storageIoExecutor", storageIoExecutor);
+        ReflectionTestUtils.setField(storageService, "multipartThreshold",
+                parallel ? DataSize.ofBytes(1) : DataSize.ofBytes(Long.MAX_VALUE));
+        ReflectionTestUtils.setField(storageService, "partSize", DataSize.ofMegabytes(partSizeMb));
+        ReflectionTestUtils.setField(storageService, "parallelism",
+                parallel ? Integer.parseInt(mode.substring("parallel-".length())) : 1);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteObject() {
+        if (objectName != null) {
+            MinioShardRouter.Target target = shardRouter.resolve(objectName);
+            target.client().deleteFile(target.key());
+            objectName = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageIoExecutor.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String upload() {
+        objectName = storageService.uploadFileWithProgressFromPath(file.toFile(), "bench/", "bench-task", "bench.bin", fileSize);
+        return objectName;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MinioUploadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,95 @@
+package com.cloudrive.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author cd
+ * @date 2025/11/30
+ * @description ConsistentHashRing的测试：放置结果与加入顺序无关、按权重分布、增加分片只把一部分键转移到新分片
+ */
+class ConsistentHashRingTest {
+
+    private static final int VIRTUAL_NODES = 160;
+    private static final int KEYS = 30000;
+
+    @Test
+    void placementIgnoresInsertionOrder() {
+        ConsistentHashRing<String> forward = ring("a", "b", "c");
+        ConsistentHashRing<String> reverse = ring("c", "b", "a");
+
+        for (int i = 0; i < KEYS; i++) {
+            assertThat(reverse.locate(key(i))).isEqualTo(forward.locate(key(i)));
+        }
+    }
+
+    @Test
+    void keysSpreadByWeight() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        ring.add("a", "a", 1);
+        ring.add("b", "b", 1);
+        ring.add("c", "c", 2);
+        // 权重为0的分片不接收新键
+        ring.add("retired", "retired", 0);
+
+        Map<String, Integer> counts = count(ring);
+
+        assertThat(counts).doesNotContainKey("retired");
+        assertThat(counts.get("a")).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+        assertThat(counts.get("b")).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+        assertThat(counts.get("c")).isBetween(KEYS / 2 * 8 / 10, KEYS / 2 * 12 / 10);
+    }
+
+    @Test
+    void addingShardOnlyMovesKeysToNewShard() {
+        ConsistentHashRing<String> before = ring("a", "b", "c");
+        ConsistentHashRing<String> after = ring("a", "b", "c", "d");
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String from = before.locate(key(i));
+            String to = after.locate(key(i));
+            if (!from.equals(to)) {
+                // 已有分片之间不互相转移
+                assertThat(to).isEqualTo("d");
+                moved++;
+            }
+        }
+        // 新分片分到约四分之一的键
+        assertThat(moved).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+    }
+
+    @Test
+    void emptyRing() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        assertThat(ring.isEmpty()).isTrue();
+
+        ring.add("a", "a", 1);
+        assertThat(ring.isEmpty()).isFalse();
+        assertThat(ring.locate(key(0))).isEqualTo("a");
+    }
+
+    private static ConsistentHashRing<String> ring(String... ids) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        for (String id : ids) {
+            ring.add(id, id, 1);
+        }
+        return ring;
+    }
+
+    private static Map<String, Integer> count(ConsistentHashRing<String> ring) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.locate(key(i)), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static String key(int i) {
+        return "user_" + (i % 97) + "/" + i;
+    }
+}
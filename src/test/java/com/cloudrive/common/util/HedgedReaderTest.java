@@ -0,0 +1,190 @@
+package com.cloudrive.common.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author cd
+ * @date 2025/12/01
+ * @description HedgedReader的测试：主存储失败时改读副本、主存储慢时对冲并关闭后返回的数据流、没有副本时只读主存储
+ */
+class HedgedReaderTest {
+
+    private static final String SHARD = "default";
+
+    private final MinioUtil primary = Mockito.mock(MinioUtil.class);
+    private final MinioUtil replica = Mockito.mock(MinioUtil.class);
+    private final MinioShardRouter.Shard shard = new MinioShardRouter.Shard(SHARD, primary, replica);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private HedgedReader hedgedReader;
+
+    @BeforeEach
+    void setUp() {
+        hedgedReader = new HedgedReader(executor, meterRegistry);
+        ReflectionTestUtils.setField(hedgedReader, "enabled", true);
+        ReflectionTestUtils.setField(hedgedReader, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedgedReader, "minDelay", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(hedgedReader, "maxDelay", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(hedgedReader, "window", Duration.ofMinutes(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void primaryFailureFallsBackToReplica() {
+        TrackedStream fromReplica = new TrackedStream("replica");
+
+        InputStream result = hedgedReader.read(shard, client -> {
+            if (client == primary) {
+                throw new IllegalStateException("primary unavailable");
+            }
+            return fromReplica;
+        });
+
+        assertThat(result).isSameAs(fromReplica);
+        assertThat(wins("replica")).isEqualTo(1);
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndLoserIsClosed() throws Exception {
+        CountDownLatch releasePrimary = new CountDownLatch(1);
+        TrackedStream fromPrimary = new TrackedStream("primary");
+        TrackedStream fromReplica = new TrackedStream("replica");
+
+        InputStream result = hedgedReader.read(shard, client -> {
+            if (client == primary) {
+                await(releasePrimary);
+                return fromPrimary;
+            }
+            return fromReplica;
+        });
+
+        assertThat(result).isSameAs(fromReplica);
+        releasePrimary.countDown();
+        // 主存储之后返回的数据流被关闭，不占用连接
+        assertThat(fromPrimary.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(fromReplica.closed.getCount()).isEqualTo(1);
+        awaitWins("replica");
+        assertThat(wins("primary")).isZero();
+    }
+
+    @Test
+    void slowReplicaLosesToPrimaryAndIsClosed() throws Exception {
+        CountDownLatch releaseReplica = new CountDownLatch(1);
+        CountDownLatch replicaStarted = new CountDownLatch(1);
+        TrackedStream fromPrimary = new TrackedStream("primary");
+        TrackedStream fromReplica = new TrackedStream("replica");
+
+        InputStream result = hedgedReader.read(shard, client -> {
+            if (client == primary) {
+                // 超过对冲等待时间后才返回，此时副本读取已发起但还没有返回
+                await(replicaStarted);
+                return fromPrimary;
+            }
+            replicaStarted.countDown();
+            await(releaseReplica);
+            return fromReplica;
+        });
+
+        assertThat(result).isSameAs(fromPrimary);
+        releaseReplica.countDown();
+        assertThat(fromReplica.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitWins("primary");
+    }
+
+    @Test
+    void hedgedReadFailsOnlyWhenBothFail() {
+        CountDownLatch replicaFailed = new CountDownLatch(1);
+
+        assertThatThrownBy(() -> hedgedReader.read(shard, client -> {
+            if (client == primary) {
+                await(replicaFailed);
+                throw new IllegalStateException("primary failed");
+            }
+            replicaFailed.countDown();
+            throw new IllegalStateException("replica failed");
+        })).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shardWithoutReplicaReadsPrimaryOnCallingThread() {
+        MinioShardRouter.Shard single = new MinioShardRouter.Shard(SHARD, primary, null);
+        AtomicInteger opens = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        TrackedStream fromPrimary = new TrackedStream("primary");
+
+        Function<MinioUtil, InputStream> open = client -> {
+            opens.incrementAndGet();
+            assertThat(client).isSameAs(primary);
+            assertThat(Thread.currentThread()).isSameAs(caller);
+            return fromPrimary;
+        };
+
+        assertThat(hedgedReader.read(single, open)).isSameAs(fromPrimary);
+        assertThat(opens.get()).isEqualTo(1);
+    }
+
+    private double wins(String role) {
+        return meterRegistry.get("storage.read.hedge.wins").tag("shard", SHARD).tag("role", role).counter().count();
+    }
+
+    /**
+     * 被采用的计数在结果返回给调用方之后才递增
+     */
+    private void awaitWins(String role) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (wins(role) < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(wins(role)).isEqualTo(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 记录是否被关闭的数据流
+     */
+    private static class TrackedStream extends ByteArrayInputStream {
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private TrackedStream(String content) {
+            super(content.getBytes());
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
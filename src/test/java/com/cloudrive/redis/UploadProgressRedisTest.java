@@ -0,0 +1,137 @@
+package com.cloudrive.redis;
+
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import com.cloudrive.support.TestRedis;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description UploadProgressRedis的测试，在嵌入式Redis上执行合并更新脚本和按版本读取脚本
+ */
+class UploadProgressRedisTest {
+
+    private static final String TASK_ID = "task-1";
+    private static final String USER_ID = "user-1";
+
+    private final RedissonClient redissonClient = TestRedis.client();
+
+    private UploadProgressRedis progressRedis;
+
+    @BeforeEach
+    void setUp() {
+        redissonClient.getKeys().flushall();
+        progressRedis = new UploadProgressRedis(redissonClient);
+        progressRedis.createTask(new UploadTask(TASK_ID, USER_ID, "a.bin", 1000));
+    }
+
+    @Test
+    void applyKeepsLargerAbsoluteBytesThenAddsDelta() {
+        progressRedis.applyUpdates(List.of(update(300L, 0, null)));
+        // 绝对值小于已有值时不回退，累加仍然生效
+        progressRedis.applyUpdates(List.of(update(100L, 50, 2000L)));
+
+        UploadTask task = progressRedis.getTask(TASK_ID);
+        assertThat(task.getBytesTransferred()).isEqualTo(350);
+        assertThat(task.getTotalSize()).isEqualTo(2000);
+        assertThat(task.getVersion()).isEqualTo(3);
+        assertThat(task.isCompleted()).isFalse();
+    }
+
+    @Test
+    void applyIgnoresMissingTask() {
+        progressRedis.applyUpdates(List.of(new ProgressUpdate("missing")));
+
+        assertThat(progressRedis.getTask("missing")).isNull();
+        assertThat(redissonClient.getKeys().countExists(UploadProgressRedis.UPLOAD_PROGRESS_PREFIX + "missing")).isZero();
+    }
+
+    @Test
+    void applyPublishesStateToUserChannel() throws Exception {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        int listenerId = progressRedis.getProgressTopic(USER_ID).addListener(String.class, (channel, message) -> messages.add(message));
+        try {
+            progressRedis.applyUpdates(List.of(update(400L, 0, null)));
+
+            String message = messages.poll(5, TimeUnit.SECONDS);
+            assertThat(message).contains("\"taskId\":\"task-1\"", "\"version\":2", "\"bytesTransferred\":400", "\"completed\":false");
+        } finally {
+            progressRedis.getProgressTopic(USER_ID).removeListener(listenerId);
+        }
+    }
+
+    @Test
+    void completedTaskIsFrozen() {
+        ProgressUpdate completion = update(600L, 0, null);
+        completion.setSuccess(true);
+        completion.setMessage("done");
+        progressRedis.applyUpdates(List.of(completion));
+        long ttl = redissonClient.getKeys().remainTimeToLive(UploadProgressRedis.UPLOAD_PROGRESS_PREFIX + TASK_ID);
+
+        // 完成后迟到的进度和再次完成都不能改变任务，也不能延长过期时间
+        ProgressUpdate late = update(900L, 100, 5000L);
+        late.setSuccess(false);
+        late.setMessage("failed");
+        progressRedis.applyUpdates(List.of(late, update(null, 10, null)));
+
+        UploadTask task = progressRedis.getTask(TASK_ID);
+        assertThat(task.getBytesTransferred()).isEqualTo(600);
+        assertThat(task.getTotalSize()).isEqualTo(1000);
+        assertThat(task.isCompleted()).isTrue();
+        assertThat(task.isSuccess()).isTrue();
+        assertThat(task.getMessage()).isEqualTo("done");
+        assertThat(task.getVersion()).isEqualTo(2);
+        assertThat(redissonClient.getKeys().remainTimeToLive(UploadProgressRedis.UPLOAD_PROGRESS_PREFIX + TASK_ID))
+                .isPositive().isLessThanOrEqualTo(ttl);
+    }
+
+    @Test
+    void readIfChangedSkipsUnchangedAndReportsMissing() {
+        progressRedis.createTask(new UploadTask("task-2", USER_ID, "b.bin", 10));
+        progressRedis.applyUpdates(List.of(update(500L, 0, null)));
+
+        Map<String, Long> sinceVersions = new LinkedHashMap<>();
+        sinceVersions.put(TASK_ID, 1L);
+        sinceVersions.put("task-2", 1L);
+        sinceVersions.put("missing", 0L);
+        List<UploadTask> changed = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+        progressRedis.getTasksChangedSince(sinceVersions, changed, notFound);
+
+        // task-2没有变化，既不在changed也不在notFound中
+        assertThat(changed).singleElement().satisfies(task -> {
+            assertThat(task.getId()).isEqualTo(TASK_ID);
+            assertThat(task.getUserId()).isEqualTo(USER_ID);
+            assertThat(task.getBytesTransferred()).isEqualTo(500);
+            assertThat(task.getVersion()).isEqualTo(2);
+        });
+        assertThat(notFound).containsExactly("missing");
+
+        changed.clear();
+        notFound.clear();
+        progressRedis.getTasksChangedSince(Map.of(TASK_ID, 2L), changed, notFound);
+        assertThat(changed).isEmpty();
+        assertThat(notFound).isEmpty();
+    }
+
+    private static ProgressUpdate update(Long bytesTransferred, long bytesDelta, Long totalSize) {
+        ProgressUpdate update = new ProgressUpdate(TASK_ID);
+        update.setBytesTransferred(bytesTransferred);
+        update.setBytesDelta(bytesDelta);
+        update.setTotalSize(totalSize);
+        return update;
+    }
+}
@@ -0,0 +1,177 @@
+package com.cloudrive.service;
+
+import com.cloudrive.common.exception.BusinessException;
+import com.cloudrive.dao.UploadJournalDao;
+import com.cloudrive.model.entity.UploadJournal;
+import com.cloudrive.service.impl.LocalStorageServiceImpl;
+import com.cloudrive.support.TestStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description 上传日志的提交、补偿和回收，存储端使用本地文件系统后端
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import(UploadJournalService.class)
+class UploadJournalServiceTest {
+
+    private static final byte[] CONTENT = "hello".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private UploadJournalService uploadJournalService;
+
+    @Autowired
+    private UploadJournalDao uploadJournalDao;
+
+    @TempDir
+    private Path rootDir;
+
+    private LocalStorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = TestStorage.localStorage(rootDir);
+    }
+
+    @Test
+    void commitRemovesJournalAndKeepsObject() {
+        List<String> paths = List.of("user_1/a", "user_1/b");
+        uploadJournalService.begin(paths);
+        paths.forEach(path -> TestStorage.put(storageService, path, CONTENT));
+        assertThat(pending()).containsExactlyInAnyOrderElementsOf(paths);
+
+        uploadJournalService.commit(paths);
+
+        assertThat(pending()).isEmpty();
+        assertThat(TestStorage.read(storageService, "user_1/a")).isEqualTo(CONTENT);
+        assertThat(TestStorage.read(storageService, "user_1/b")).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void emptyBatchIsNoop() {
+        uploadJournalService.begin(List.of());
+        uploadJournalService.commit(List.of());
+
+        assertThat(pending()).isEmpty();
+    }
+
+    @Test
+    void abortDeletesObjectsAndJournal() {
+        List<String> paths = List.of("user_1/a", "user_1/b");
+        uploadJournalService.begin(paths);
+        paths.forEach(path -> TestStorage.put(storageService, path, CONTENT));
+
+        uploadJournalService.abort(storageService, paths);
+
+        assertThat(pending()).isEmpty();
+        assertThat(TestStorage.exists(storageService, "user_1/a")).isFalse();
+        assertThat(TestStorage.exists(storageService, "user_1/b")).isFalse();
+    }
+
+    @Test
+    void abortKeepsJournalWhenDeleteFails() {
+        List<String> paths = List.of("user_1/a", "user_1/b");
+        uploadJournalService.begin(paths);
+        paths.forEach(path -> TestStorage.put(storageService, path, CONTENT));
+        StorageService failing = Mockito.spy(storageService);
+        Mockito.doThrow(new IllegalStateException("unavailable")).when(failing).deleteFile("user_1/a");
+
+        uploadJournalService.abort(failing, paths);
+
+        // 删除失败的对象保留日志，由回收任务兜底
+        assertThat(pending()).containsExactly("user_1/a");
+        assertThat(TestStorage.exists(storageService, "user_1/a")).isTrue();
+        assertThat(TestStorage.exists(storageService, "user_1/b")).isFalse();
+    }
+
+    @Test
+    void reclaimDeletesOnlyStaleObjects() {
+        LocalDateTime now = LocalDateTime.now();
+        uploadJournalDao.batchInsert(List.of("user_1/stale"), now.minusDays(2));
+        uploadJournalDao.batchInsert(List.of("user_1/fresh"), now);
+        TestStorage.put(storageService, "user_1/stale", CONTENT);
+        TestStorage.put(storageService, "user_1/fresh", CONTENT);
+
+        int reclaimed = uploadJournalService.reclaim(storageService, now.minusDays(1), 100);
+
+        assertThat(reclaimed).isEqualTo(1);
+        assertThat(pending()).containsExactly("user_1/fresh");
+        assertThat(TestStorage.exists(storageService, "user_1/stale")).isFalse();
+        assertThat(TestStorage.exists(storageService, "user_1/fresh")).isTrue();
+    }
+
+    @Test
+    void reclaimRespectsLimitInCreationOrder() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 3; i++) {
+            String path = "user_1/" + i;
+            uploadJournalDao.batchInsert(List.of(path), now.minusHours(10 - i));
+            TestStorage.put(storageService, path, CONTENT);
+        }
+
+        assertThat(uploadJournalService.reclaim(storageService, now, 2)).isEqualTo(2);
+
+        assertThat(pending()).containsExactly("user_1/2");
+        assertThat(TestStorage.exists(storageService, "user_1/0")).isFalse();
+        assertThat(TestStorage.exists(storageService, "user_1/1")).isFalse();
+    }
+
+    @Test
+    void commitAfterReclaimFails() {
+        List<String> paths = List.of("user_1/slow");
+        uploadJournalDao.batchInsert(paths, LocalDateTime.now().minusDays(2));
+        TestStorage.put(storageService, "user_1/slow", CONTENT);
+        uploadJournalService.reclaim(storageService, LocalDateTime.now().minusDays(1), 100);
+
+        // 回收任务已删除对象，提交必须失败，使文件记录的事务回滚
+        assertThatThrownBy(() -> uploadJournalService.commit(paths)).isInstanceOf(BusinessException.class);
+        assertThat(TestStorage.exists(storageService, "user_1/slow")).isFalse();
+    }
+
+    @Test
+    void reclaimSkipsJournalCommittedConcurrently() {
+        LocalDateTime createdAt = LocalDateTime.now().minusDays(2);
+        uploadJournalDao.batchInsert(List.of("user_1/racing"), createdAt);
+        TestStorage.put(storageService, "user_1/racing", CONTENT);
+        // 模拟回收任务读取到日志后、删除日志前，上传提交已删除了日志
+        UploadJournalDao racingDao = Mockito.spy(uploadJournalDao);
+        Mockito.doAnswer(invocation -> {
+            List<UploadJournal> found = uploadJournalDao.findCreatedBefore(invocation.getArgument(0), invocation.getArgument(1));
+            uploadJournalService.commit(List.of("user_1/racing"));
+            return found;
+        }).when(racingDao).findCreatedBefore(Mockito.any(), Mockito.anyInt());
+        StorageService spyStorage = Mockito.spy(storageService);
+
+        int reclaimed = new UploadJournalService(racingDao).reclaim(spyStorage, LocalDateTime.now().minusDays(1), 100);
+
+        assertThat(reclaimed).isZero();
+        Mockito.verify(spyStorage, Mockito.never()).deleteFile(anyString());
+        assertThat(TestStorage.exists(storageService, "user_1/racing")).isTrue();
+    }
+
+    private List<String> pending() {
+        return uploadJournalDao.findCreatedBefore(LocalDateTime.now().plusDays(1), 1000).stream()
+                .map(UploadJournal::getObjectPath)
+                .toList();
+    }
+}
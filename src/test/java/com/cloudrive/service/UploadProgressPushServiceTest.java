@@ -0,0 +1,186 @@
+package com.cloudrive.service;
+
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.RecordingEmitterHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description UploadProgressPushService的测试：按用户和任务分发进度、每个用户只订阅一次进度存储、慢连接被关闭且不影响其他连接
+ */
+class UploadProgressPushServiceTest {
+
+    private static final String USER_ID = "user-1";
+    private static final int SUBSCRIPTION_ID = 7;
+    private static final int QUEUE_SIZE = 4;
+
+    private final ProgressStore progressStore = mock(ProgressStore.class);
+    private final UploadProgressService uploadProgressService = mock(UploadProgressService.class);
+    private final ThreadPoolTaskExecutor pushExecutor = new ThreadPoolTaskExecutor();
+
+    private UploadProgressPushService pushService;
+
+    @BeforeEach
+    void setUp() {
+        pushExecutor.setCorePoolSize(4);
+        pushExecutor.setMaxPoolSize(4);
+        pushExecutor.initialize();
+        pushService = new UploadProgressPushService(progressStore, uploadProgressService, pushExecutor);
+        ReflectionTestUtils.setField(pushService, "sseTimeout", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(pushService, "queueSize", QUEUE_SIZE);
+        ReflectionTestUtils.setField(pushService, "sendTimeout", Duration.ofSeconds(10));
+        when(progressStore.subscribe(eq(USER_ID), any())).thenReturn(SUBSCRIPTION_ID);
+        when(uploadProgressService.getUploadTask(any())).thenAnswer(invocation ->
+                new UploadTask(invocation.getArgument(0), USER_ID, "a.bin", 100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pushExecutor.shutdown();
+    }
+
+    @Test
+    void progressFansOutToUserAndMatchingTaskSubscribers() throws Exception {
+        RecordingEmitterHandler all = RecordingEmitterHandler.attach(pushService.subscribeUser(USER_ID));
+        RecordingEmitterHandler taskA = RecordingEmitterHandler.attach(pushService.subscribeTask(USER_ID, "task-a"));
+        RecordingEmitterHandler taskB = RecordingEmitterHandler.attach(pushService.subscribeTask(USER_ID, "task-b"));
+        Consumer<UploadProgressVO> listener = capturedListener();
+
+        listener.accept(progress("task-a", 50, false));
+        listener.accept(progress("task-b", 20, false));
+
+        awaitUntil(() -> all.events().size() == 2 && taskA.events().size() == 2 && taskB.events().size() == 2);
+        assertThat(all.events()).satisfiesExactly(
+                event -> assertThat(event).contains("taskId=task-a", "bytesTransferred=50"),
+                event -> assertThat(event).contains("taskId=task-b", "bytesTransferred=20"));
+        // 任务订阅先收到当前状态，之后只收到自己任务的进度
+        assertThat(taskA.events()).satisfiesExactly(
+                event -> assertThat(event).contains("taskId=task-a", "bytesTransferred=0"),
+                event -> assertThat(event).contains("taskId=task-a", "bytesTransferred=50"));
+        assertThat(taskB.events()).satisfiesExactly(
+                event -> assertThat(event).contains("taskId=task-b", "bytesTransferred=0"),
+                event -> assertThat(event).contains("taskId=task-b", "bytesTransferred=20"));
+        verify(progressStore, times(1)).subscribe(eq(USER_ID), any());
+    }
+
+    @Test
+    void completionClosesTaskSubscriberAndLastDisconnectUnsubscribes() throws Exception {
+        SseEmitter userEmitter = pushService.subscribeUser(USER_ID);
+        RecordingEmitterHandler all = RecordingEmitterHandler.attach(userEmitter);
+        RecordingEmitterHandler task = RecordingEmitterHandler.attach(pushService.subscribeTask(USER_ID, "task-a"));
+        Consumer<UploadProgressVO> listener = capturedListener();
+
+        listener.accept(progress("task-a", 100, true));
+
+        assertThat(task.awaitCompleted(5, TimeUnit.SECONDS)).isTrue();
+        awaitUntil(() -> all.events().size() == 1);
+        assertThat(all.isCompleted()).isFalse();
+        verify(progressStore, never()).unsubscribe(any(), anyInt());
+
+        userEmitter.complete();
+
+        verify(progressStore).unsubscribe(USER_ID, SUBSCRIPTION_ID);
+        // 之后的连接重新订阅
+        pushService.subscribeUser(USER_ID);
+        verify(progressStore, times(2)).subscribe(eq(USER_ID), any());
+    }
+
+    @Test
+    void fullQueueClosesSlowSubscriberWithoutDelayingOthers() throws Exception {
+        RecordingEmitterHandler slow = RecordingEmitterHandler.attach(pushService.subscribeUser(USER_ID));
+        SseEmitter fastEmitter = pushService.subscribeUser(USER_ID);
+        RecordingEmitterHandler fast = RecordingEmitterHandler.attach(fastEmitter);
+        Consumer<UploadProgressVO> listener = capturedListener();
+        slow.block();
+
+        // 快连接跟得上每一个事件，慢连接卡在第一个事件上，队列满后被关闭
+        int updates = QUEUE_SIZE * 4;
+        for (int i = 1; i <= updates; i++) {
+            listener.accept(progress("task-a", i, false));
+            int received = i;
+            awaitUntil(() -> fast.events().size() == received);
+        }
+        slow.release();
+        // 慢连接只写完了被阻塞的那一个事件，队列里积压的事件随连接关闭丢弃
+        awaitUntil(() -> slow.events().size() == 1);
+        listener.accept(progress("task-a", updates + 1, false));
+        awaitUntil(() -> fast.events().size() == updates + 1);
+        assertThat(slow.events()).hasSize(1);
+
+        // 慢连接已移除，快连接断开后不再有连接，取消订阅
+        fastEmitter.complete();
+        verify(progressStore).unsubscribe(USER_ID, SUBSCRIPTION_ID);
+    }
+
+    @Test
+    void heartbeatClosesSubscriberStuckInSend() throws Exception {
+        ReflectionTestUtils.setField(pushService, "sendTimeout", Duration.ofMillis(50));
+        RecordingEmitterHandler stuck = RecordingEmitterHandler.attach(pushService.subscribeUser(USER_ID));
+        RecordingEmitterHandler healthy = RecordingEmitterHandler.attach(pushService.subscribeUser(USER_ID));
+        Consumer<UploadProgressVO> listener = capturedListener();
+        stuck.block();
+
+        listener.accept(progress("task-a", 1, false));
+        awaitUntil(() -> healthy.events().size() == 1);
+        Thread.sleep(100);
+
+        pushService.heartbeat();
+
+        awaitUntil(() -> healthy.events().size() == 2);
+        assertThat(healthy.events().get(1)).contains(":ping");
+        stuck.release();
+        awaitUntil(() -> stuck.events().size() == 1);
+        listener.accept(progress("task-a", 2, false));
+        awaitUntil(() -> healthy.events().size() == 3);
+        // 卡住的连接被移除，释放后不再收到心跳和之后的进度
+        assertThat(stuck.events()).hasSize(1);
+    }
+
+    private Consumer<UploadProgressVO> capturedListener() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<UploadProgressVO>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(progressStore).subscribe(eq(USER_ID), captor.capture());
+        return captor.getValue();
+    }
+
+    private static UploadProgressVO progress(String taskId, long bytes, boolean completed) {
+        UploadProgressVO progress = new UploadProgressVO();
+        progress.setTaskId(taskId);
+        progress.setBytesTransferred(bytes);
+        progress.setTotalSize(100L);
+        progress.setCompleted(completed);
+        progress.setSuccess(completed);
+        return progress;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.cloudrive.service;
+
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description UploadProgressService刷新缓冲区的测试：写入失败的更新放回缓冲区，与新到的更新合并后重试
+ */
+class UploadProgressServiceTest {
+
+    private static final String TASK_ID = "task-1";
+
+    private final ProgressStore progressStore = mock(ProgressStore.class);
+    private final UploadProgressService uploadProgressService = new UploadProgressService(progressStore);
+
+    @Test
+    void failedFlushKeepsCompletionAndMergesLaterUpdates() {
+        doThrow(new IllegalStateException("redis down")).doNothing().when(progressStore).applyUpdates(anyCollection());
+
+        uploadProgressService.updateProgress(TASK_ID, 100, 1000);
+        uploadProgressService.updateBytesTransferred(TASK_ID, 50);
+        uploadProgressService.completeUploadTask(TASK_ID, true, "done");
+        uploadProgressService.flush();
+        // 失败期间新到的进度
+        uploadProgressService.updateBytesTransferred(TASK_ID, 25);
+        uploadProgressService.flush();
+
+        ArgumentCaptor<Collection<ProgressUpdate>> captor = captor();
+        verify(progressStore, times(2)).applyUpdates(captor.capture());
+        assertThat(captor.getAllValues().get(1)).singleElement().satisfies(update -> {
+            assertThat(update.getBytesTransferred()).isEqualTo(100);
+            assertThat(update.getBytesDelta()).isEqualTo(75);
+            assertThat(update.getTotalSize()).isEqualTo(1000);
+            assertThat(update.getSuccess()).isTrue();
+            assertThat(update.getMessage()).isEqualTo("done");
+        });
+
+        // 写入成功后缓冲区清空
+        uploadProgressService.flush();
+        verify(progressStore, times(2)).applyUpdates(anyCollection());
+    }
+
+    @Test
+    void laterAbsoluteProgressReplacesFailedBytes() {
+        doThrow(new IllegalStateException("redis down")).when(progressStore).applyUpdates(anyCollection());
+        uploadProgressService.updateProgress(TASK_ID, 100, 1000);
+        uploadProgressService.updateBytesTransferred(TASK_ID, 50);
+        uploadProgressService.flush();
+
+        doNothing().when(progressStore).applyUpdates(anyCollection());
+        uploadProgressService.updateProgress(TASK_ID, 400, 1000);
+        uploadProgressService.flush();
+
+        ArgumentCaptor<Collection<ProgressUpdate>> captor = captor();
+        verify(progressStore, times(2)).applyUpdates(captor.capture());
+        assertThat(captor.getAllValues().get(1)).singleElement().satisfies(update -> {
+            assertThat(update.getBytesTransferred()).isEqualTo(400);
+            assertThat(update.getBytesDelta()).isZero();
+            assertThat(update.getSuccess()).isNull();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Collection<ProgressUpdate>> captor() {
+        return ArgumentCaptor.forClass(Collection.class);
+    }
+}
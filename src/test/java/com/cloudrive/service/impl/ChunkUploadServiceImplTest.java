@@ -0,0 +1,222 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.enums.ErrorCode;
+import com.cloudrive.common.exception.BusinessException;
+import com.cloudrive.common.util.FileHashUtil;
+import com.cloudrive.common.util.UserContext;
+import com.cloudrive.model.dto.ChunkUploadInitDTO;
+import com.cloudrive.model.entity.ChunkUploadSession;
+import com.cloudrive.model.entity.User;
+import com.cloudrive.model.vo.ChunkUploadVO;
+import com.cloudrive.redis.ChunkUploadRedis;
+import com.cloudrive.service.FileService;
+import com.cloudrive.service.StorageServiceFactory;
+import com.cloudrive.service.UploadJournalService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.support.TestRedis;
+import com.cloudrive.support.TestStorage;
+import com.cloudrive.task.ChunkUploadReaperTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description ChunkUploadServiceImpl的测试：合并后在后台校验并登记、校验期间拒绝重复合并和取消、取消上传、过期会话的回收，
+ * 会话保存在嵌入式Redis，分片写入本地存储后端
+ */
+class ChunkUploadServiceImplTest {
+
+    private static final String USER_ID = "user-1";
+    private static final byte[] CONTENT = "0123456789abcdefghij-chunked".getBytes(StandardCharsets.UTF_8);
+    private static final String SHA256 = FileHashUtil.calculateSHA256(new ByteArrayInputStream(CONTENT));
+    private static final int CHUNK_SIZE = 8;
+
+    @TempDir
+    Path rootDir;
+
+    private final RedissonClient redissonClient = TestRedis.client();
+    private final ChunkUploadRedis chunkUploadRedis = new ChunkUploadRedis(redissonClient);
+    private final StorageServiceFactory storageServiceFactory = mock(StorageServiceFactory.class);
+    private final FileService fileService = mock(FileService.class);
+    private final UploadProgressService uploadProgressService = mock(UploadProgressService.class);
+    private final UploadJournalService uploadJournalService = mock(UploadJournalService.class);
+    /**
+     * 后台校验任务先排队，由测试决定何时执行
+     */
+    private final Queue<Runnable> verifications = new ArrayDeque<>();
+
+    private LocalStorageServiceImpl storageService;
+    private ChunkUploadServiceImpl chunkUploadService;
+    private MockedStatic<UserContext> userContext;
+
+    @BeforeEach
+    void setUp() {
+        redissonClient.getKeys().flushall();
+        storageService = TestStorage.localStorage(rootDir);
+        when(storageServiceFactory.getStorageService()).thenReturn(storageService);
+        when(fileService.getUploadPath(any(), any())).thenReturn("/" + USER_ID);
+        when(fileService.saveUploadedFile(anyString(), any(Long.class), any(), anyString(), anyString(), any(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(4));
+        chunkUploadService = new ChunkUploadServiceImpl(chunkUploadRedis, redissonClient, storageServiceFactory,
+                fileService, uploadProgressService, uploadJournalService);
+        ReflectionTestUtils.setField(chunkUploadService, "chunkSize", DataSize.ofBytes(CHUNK_SIZE));
+        ReflectionTestUtils.setField(chunkUploadService, "storageIoExecutor", (Executor) verifications::add);
+
+        User user = new User();
+        user.setUserId(USER_ID);
+        userContext = mockStatic(UserContext.class);
+        userContext.when(UserContext::getCurrentUser).thenReturn(user);
+        userContext.when(UserContext::getCurrentUserId).thenReturn(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userContext.close();
+    }
+
+    @Test
+    void completeVerifiesInBackgroundAndRegistersFile() throws Exception {
+        ChunkUploadVO init = chunkUploadService.initUpload(initRequest(SHA256));
+        String uploadId = init.getUploadId();
+        ChunkUploadSession session = chunkUploadRedis.getSession(uploadId);
+        assertThat(init.getTotalChunks()).isEqualTo(4);
+        // 分片乱序上传
+        for (int chunk : new int[]{2, 0, 3, 1}) {
+            uploadChunk(uploadId, chunk);
+        }
+
+        ChunkUploadVO completing = chunkUploadService.completeUpload(uploadId);
+
+        assertThat(completing.getCompleted()).isFalse();
+        assertThat(completing.getMissingChunks()).isEmpty();
+        assertThat(TestStorage.read(storageService, session.getObjectName())).isEqualTo(CONTENT);
+        verify(uploadJournalService).begin(List.of(session.getObjectName()));
+        // 校验期间不能再次合并或取消
+        assertThatThrownBy(() -> chunkUploadService.completeUpload(uploadId)).isInstanceOf(BusinessException.class)
+                .hasMessage(ErrorCode.UPLOAD_IN_PROGRESS.getMessage());
+        assertThatThrownBy(() -> chunkUploadService.abortUpload(uploadId)).isInstanceOf(BusinessException.class)
+                .hasMessage(ErrorCode.UPLOAD_IN_PROGRESS.getMessage());
+        verify(uploadProgressService, never()).completeUploadTask(anyString(), any(Boolean.class), any());
+
+        runVerification();
+
+        verify(fileService).saveUploadedFile(eq("a.bin"), eq((long) CONTENT.length), eq("application/octet-stream"),
+                eq(SHA256), eq(session.getObjectName()), eq("root"), any(User.class));
+        verify(uploadProgressService).completeUploadTask(uploadId, true, "上传完成");
+        verify(uploadJournalService, never()).abort(any(), any());
+        assertThat(chunkUploadRedis.getSession(uploadId)).isNull();
+        assertThat(redissonClient.getLock(chunkUploadRedis.getLockName(uploadId)).isLocked()).isFalse();
+    }
+
+    @Test
+    void hashMismatchFailsTaskAndReclaimsObject() throws Exception {
+        String uploadId = chunkUploadService.initUpload(initRequest("0".repeat(64))).getUploadId();
+        ChunkUploadSession session = chunkUploadRedis.getSession(uploadId);
+        for (int chunk = 0; chunk < 4; chunk++) {
+            uploadChunk(uploadId, chunk);
+        }
+
+        chunkUploadService.completeUpload(uploadId);
+        runVerification();
+
+        verify(fileService, never()).saveUploadedFile(any(), any(Long.class), any(), any(), any(), any(), any());
+        verify(uploadJournalService).abort(storageService, List.of(session.getObjectName()));
+        verify(uploadProgressService).completeUploadTask(uploadId, false, ErrorCode.HASH_MISMATCH.getMessage());
+        assertThat(chunkUploadRedis.getSession(uploadId)).isNull();
+        assertThat(redissonClient.getLock(chunkUploadRedis.getLockName(uploadId)).isLocked()).isFalse();
+    }
+
+    @Test
+    void incompleteUploadReleasesLockAndCanBeAborted() throws Exception {
+        String uploadId = chunkUploadService.initUpload(initRequest(SHA256)).getUploadId();
+        ChunkUploadSession session = chunkUploadRedis.getSession(uploadId);
+        uploadChunk(uploadId, 0);
+
+        assertThatThrownBy(() -> chunkUploadService.completeUpload(uploadId)).isInstanceOf(BusinessException.class)
+                .hasMessage(ErrorCode.CHUNKS_INCOMPLETE.getMessage());
+        assertThat(verifications).isEmpty();
+
+        chunkUploadService.abortUpload(uploadId);
+
+        assertThat(Files.exists(multipartDir(session))).isFalse();
+        assertThat(chunkUploadRedis.getSession(uploadId)).isNull();
+        verify(uploadProgressService).completeUploadTask(uploadId, false, "上传已取消");
+        assertThatThrownBy(() -> chunkUploadService.completeUpload(uploadId)).isInstanceOf(BusinessException.class)
+                .hasMessage(ErrorCode.UPLOAD_SESSION_NOT_FOUND.getMessage());
+    }
+
+    @Test
+    void reaperAbortsOnlyExpiredSessions() throws Exception {
+        String expiredId = chunkUploadService.initUpload(initRequest(SHA256)).getUploadId();
+        String liveId = chunkUploadService.initUpload(initRequest(SHA256)).getUploadId();
+        ChunkUploadSession expired = chunkUploadRedis.getSession(expiredId);
+        ChunkUploadSession live = chunkUploadRedis.getSession(liveId);
+        uploadChunk(expiredId, 0);
+        uploadChunk(liveId, 0);
+        // 模拟会话键一天后过期；另一个会话的索引也到期，但会话键刚续期仍然存在
+        redissonClient.getKeys().delete(ChunkUploadRedis.SESSION_PREFIX + expiredId);
+        redissonClient.getScoredSortedSet(ChunkUploadRedis.EXPIRY_KEY, StringCodec.INSTANCE).add(0, expiredId);
+        redissonClient.getScoredSortedSet(ChunkUploadRedis.EXPIRY_KEY, StringCodec.INSTANCE).add(0, liveId);
+
+        new ChunkUploadReaperTask(chunkUploadRedis, storageServiceFactory).reap();
+
+        assertThat(Files.exists(multipartDir(expired))).isFalse();
+        assertThat(Files.exists(multipartDir(live))).isTrue();
+        assertThat(chunkUploadRedis.getExpiredSessions(Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(redissonClient.getScoredSortedSet(ChunkUploadRedis.EXPIRY_KEY, StringCodec.INSTANCE).contains(expiredId)).isFalse();
+        assertThat(chunkUploadService.getUploadStatus(liveId).getMissingChunks()).containsExactly(1, 2, 3);
+    }
+
+    private ChunkUploadInitDTO initRequest(String sha256Hash) {
+        ChunkUploadInitDTO dto = new ChunkUploadInitDTO();
+        dto.setFilename("a.bin");
+        dto.setFileSize((long) CONTENT.length);
+        dto.setContentType("application/octet-stream");
+        dto.setSha256Hash(sha256Hash);
+        dto.setParentId("root");
+        return dto;
+    }
+
+    private void uploadChunk(String uploadId, int chunk) {
+        byte[] data = Arrays.copyOfRange(CONTENT, chunk * CHUNK_SIZE, Math.min(CONTENT.length, (chunk + 1) * CHUNK_SIZE));
+        chunkUploadService.uploadChunk(uploadId, chunk, new ByteArrayInputStream(data), data.length);
+    }
+
+    private void runVerification() {
+        assertThat(verifications).hasSize(1);
+        verifications.poll().run();
+    }
+
+    private Path multipartDir(ChunkUploadSession session) {
+        return rootDir.resolve("multipart").resolve(session.getMultipartUploadId());
+    }
+}
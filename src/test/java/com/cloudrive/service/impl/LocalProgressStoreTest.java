@@ -0,0 +1,256 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.constant.CommonConstants;
+import com.cloudrive.model.vo.UploadProgressVO;
+import com.cloudrive.service.UploadProgressService.ProgressUpdate;
+import com.cloudrive.service.UploadProgressService.UploadTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description LocalProgressStore并发更新、完成后冻结和过期规则的测试
+ */
+class LocalProgressStoreTest {
+
+    private static final String TASK_ID = "task-1";
+    private static final String USER_ID = "user-1";
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 2000;
+
+    private final MutableClock clock = new MutableClock(1_700_000_000_000L);
+
+    private LocalProgressStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new LocalProgressStore();
+        ReflectionTestUtils.setField(store, "clock", clock);
+        store.createTask(new UploadTask(TASK_ID, USER_ID, "a.bin", 1L << 40));
+    }
+
+    @Test
+    void concurrentDeltasAreAllApplied() throws Exception {
+        AtomicInteger notifications = new AtomicInteger();
+        store.subscribe(USER_ID, progress -> notifications.incrementAndGet());
+
+        runConcurrently(i -> delta(1));
+
+        UploadTask task = store.getTask(TASK_ID);
+        long updates = (long) THREADS * UPDATES_PER_THREAD;
+        assertThat(task.getBytesTransferred()).isEqualTo(updates);
+        // 创建时版本为1，每次更新递增一次，CAS重试不会重复递增
+        assertThat(task.getVersion()).isEqualTo(1 + updates);
+        assertThat(notifications.get()).isEqualTo((int) updates);
+        assertThat(task.isCompleted()).isFalse();
+    }
+
+    @Test
+    void concurrentAbsoluteBytesKeepMaximum() throws Exception {
+        runConcurrently(i -> absolute(i));
+
+        UploadTask task = store.getTask(TASK_ID);
+        assertThat(task.getBytesTransferred()).isEqualTo((long) THREADS * UPDATES_PER_THREAD - 1);
+        assertThat(task.getVersion()).isEqualTo(1 + (long) THREADS * UPDATES_PER_THREAD);
+    }
+
+    @Test
+    void completedTaskIsFrozen() throws Exception {
+        store.applyUpdates(List.of(delta(10)));
+        store.applyUpdates(List.of(complete(true, "上传完成")));
+        UploadTask completed = store.getTask(TASK_ID);
+        assertThat(completed.isCompleted()).isTrue();
+        assertThat(completed.getVersion()).isEqualTo(3);
+
+        AtomicInteger notifications = new AtomicInteger();
+        store.subscribe(USER_ID, progress -> notifications.incrementAndGet());
+        clock.advance(CommonConstants.Time.ONE_MINUTE / 2);
+        runConcurrently(i -> delta(1));
+
+        UploadTask task = store.getTask(TASK_ID);
+        assertThat(task.isCompleted()).isTrue();
+        assertThat(task.isSuccess()).isTrue();
+        assertThat(task.getMessage()).isEqualTo("上传完成");
+        // 完成后的更新不改变任务：字节数、版本都不变，也不通知订阅者
+        assertThat(task.getVersion()).isEqualTo(3);
+        assertThat(task.getBytesTransferred()).isEqualTo(10);
+        assertThat(notifications.get()).isZero();
+
+        // 完成后的更新不延长过期时间：完成一分钟后过期
+        clock.advance(CommonConstants.Time.ONE_MINUTE / 2);
+        assertThat(store.getTask(TASK_ID)).isNull();
+    }
+
+    @Test
+    void activeTaskExpiresAfterOneHourWithoutUpdates() {
+        clock.advance(CommonConstants.Time.ONE_HOUR - 1);
+        store.applyUpdates(List.of(delta(5)));
+
+        // 更新后重新计算过期时间
+        clock.advance(CommonConstants.Time.ONE_HOUR - 1);
+        assertThat(store.getTask(TASK_ID)).isNotNull();
+
+        clock.advance(1);
+        assertThat(store.getTask(TASK_ID)).isNull();
+
+        List<UploadTask> changed = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+        store.getTasksChangedSince(Map.of(TASK_ID, 0L), changed, notFound);
+        assertThat(changed).isEmpty();
+        assertThat(notFound).containsExactly(TASK_ID);
+
+        // 过期任务不再接受更新，清理后从存储中移除
+        store.applyUpdates(List.of(delta(1)));
+        assertThat(store.getTask(TASK_ID)).isNull();
+        store.evictExpired();
+        @SuppressWarnings("unchecked")
+        Map<String, ?> tasks = (Map<String, ?>) ReflectionTestUtils.getField(store, "tasks");
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void evictExpiredKeepsLiveTasks() {
+        store.createTask(new UploadTask("task-2", USER_ID, "b.bin", 100));
+        clock.advance(CommonConstants.Time.ONE_HOUR - 1);
+        store.applyUpdates(List.of(delta(1)));
+        clock.advance(1);
+
+        store.evictExpired();
+
+        assertThat(store.getTask(TASK_ID)).isNotNull();
+        assertThat(store.getTask("task-2")).isNull();
+    }
+
+    @Test
+    void changedSinceReturnsOnlyNewerVersions() {
+        store.applyUpdates(List.of(delta(1)));
+        List<UploadTask> changed = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+
+        store.getTasksChangedSince(Map.of(TASK_ID, 2L, "missing", 0L), changed, notFound);
+        assertThat(changed).isEmpty();
+        assertThat(notFound).containsExactly("missing");
+
+        store.applyUpdates(List.of(delta(1)));
+        store.getTasksChangedSince(Map.of(TASK_ID, 2L), changed, notFound);
+        assertThat(changed).extracting(UploadTask::getVersion).containsExactly(3L);
+    }
+
+    @Test
+    void failingListenerDoesNotBlockUpdates() {
+        List<UploadProgressVO> received = new ArrayList<>();
+        store.subscribe(USER_ID, progress -> {
+            throw new IllegalStateException("closed");
+        });
+        int subscriptionId = store.subscribe(USER_ID, received::add);
+
+        store.applyUpdates(List.of(delta(1)));
+        store.unsubscribe(USER_ID, subscriptionId);
+        store.applyUpdates(List.of(delta(1)));
+
+        assertThat(received).extracting(UploadProgressVO::getVersion).containsExactly(2L);
+        assertThat(store.getTask(TASK_ID).getBytesTransferred()).isEqualTo(2);
+    }
+
+    /**
+     * THREADS个线程同时开始，每个线程逐条提交UPDATES_PER_THREAD次更新，i为全局序号
+     */
+    private void runConcurrently(UpdateFactory factory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < UPDATES_PER_THREAD; n++) {
+                        store.applyUpdates(List.of(factory.create(n * THREADS + thread)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ProgressUpdate delta(long bytes) {
+        ProgressUpdate update = new ProgressUpdate(TASK_ID);
+        update.setBytesDelta(bytes);
+        return update;
+    }
+
+    private static ProgressUpdate absolute(long bytes) {
+        ProgressUpdate update = new ProgressUpdate(TASK_ID);
+        update.setBytesTransferred(bytes);
+        return update;
+    }
+
+    private static ProgressUpdate complete(boolean success, String message) {
+        ProgressUpdate update = new ProgressUpdate(TASK_ID);
+        update.setSuccess(success);
+        update.setMessage(message);
+        return update;
+    }
+
+    @FunctionalInterface
+    private interface UpdateFactory {
+        ProgressUpdate create(int index);
+    }
+
+    private static class MutableClock extends Clock {
+        private final AtomicLong millis;
+
+        MutableClock(long millis) {
+            this.millis = new AtomicLong(millis);
+        }
+
+        void advance(long delta) {
+            millis.addAndGet(delta);
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.exception.BusinessException;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.support.TestStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * @author cd
+ * @date 2025/11/29
+ * @description 本地文件系统存储后端：原子写入、分目录布局、范围读取和分片上传
+ */
+class LocalStorageServiceImplTest {
+
+    @TempDir
+    private Path rootDir;
+
+    private LocalStorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = TestStorage.localStorage(rootDir);
+    }
+
+    @Test
+    void uploadAndDownloadRoundTrip() {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 17);
+
+        String objectName = storageService.uploadFile(new ByteArrayInputStream(content), content.length, "application/octet-stream", "user_1");
+
+        assertThat(objectName).startsWith("user_1/");
+        assertThat(TestStorage.read(storageService, objectName)).isEqualTo(content);
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void objectsAreShardedByNameHash() throws Exception {
+        TestStorage.put(storageService, "user_1/a", bytes("a"));
+
+        String hex = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("user_1/a".getBytes(StandardCharsets.UTF_8)));
+        Path expected = rootDir.resolve("objects").resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex);
+        assertThat(expected).hasBinaryContent(bytes("a"));
+    }
+
+    @Test
+    void overwriteReplacesWholeObject() {
+        TestStorage.put(storageService, "user_1/a", bytes("first version"));
+        TestStorage.put(storageService, "user_1/a", bytes("v2"));
+
+        assertThat(TestStorage.read(storageService, "user_1/a")).isEqualTo(bytes("v2"));
+    }
+
+    @Test
+    void shortStreamLeavesNoObjectOrTempFile() {
+        byte[] content = bytes("truncated");
+
+        assertThatThrownBy(() -> storageService.uploadObject("user_1/a", new ByteArrayInputStream(content),
+                content.length + 10, "text/plain")).isInstanceOf(BusinessException.class);
+
+        assertThat(TestStorage.exists(storageService, "user_1/a")).isFalse();
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void failedOverwriteKeepsPreviousVersion() {
+        TestStorage.put(storageService, "user_1/a", bytes("stable"));
+
+        assertThatThrownBy(() -> storageService.uploadObject("user_1/a", new ByteArrayInputStream(bytes("x")), 100, "text/plain"))
+                .isInstanceOf(BusinessException.class);
+
+        assertThat(TestStorage.read(storageService, "user_1/a")).isEqualTo(bytes("stable"));
+    }
+
+    @Test
+    void rangedDownloadReturnsExactSlice() throws IOException {
+        byte[] content = randomBytes(100_000);
+        TestStorage.put(storageService, "user_1/a", content);
+
+        try (InputStream in = storageService.downloadFile("user_1/a", 1234, 5000)) {
+            assertThat(in.readAllBytes()).isEqualTo(slice(content, 1234, 5000));
+        }
+        try (InputStream in = storageService.downloadFile("user_1/a", content.length - 10, 10)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertThat(in.transferTo(out)).isEqualTo(10);
+            assertThat(out.toByteArray()).isEqualTo(slice(content, content.length - 10, 10));
+        }
+    }
+
+    @Test
+    void downloadMissingObjectFails() {
+        assertThatThrownBy(() -> storageService.downloadFile("user_1/missing")).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> storageService.downloadFile("user_1/missing", 0, 1)).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void deleteIsIdempotent() {
+        TestStorage.put(storageService, "user_1/a", bytes("a"));
+
+        storageService.deleteFile("user_1/a");
+        storageService.deleteFile("user_1/a");
+
+        assertThat(TestStorage.exists(storageService, "user_1/a")).isFalse();
+    }
+
+    @Test
+    void multipartUploadConcatenatesPartsInOrder() throws Exception {
+        byte[] part1 = randomBytes(1000);
+        byte[] part2 = randomBytes(2000);
+        byte[] part3 = randomBytes(10);
+        String uploadId = storageService.createMultipartUpload("user_1/big", "application/octet-stream");
+
+        Map<Integer, String> etags = new LinkedHashMap<>();
+        etags.put(3, storageService.uploadPart("user_1/big", uploadId, 3, new ByteArrayInputStream(part3), part3.length));
+        etags.put(1, storageService.uploadPart("user_1/big", uploadId, 1, new ByteArrayInputStream(randomBytes(1000)), 1000));
+        // 重传同一分片覆盖旧内容
+        etags.put(1, storageService.uploadPart("user_1/big", uploadId, 1, new ByteArrayInputStream(part1), part1.length));
+        etags.put(2, storageService.uploadPart("user_1/big", uploadId, 2, new ByteArrayInputStream(part2), part2.length));
+        storageService.completeMultipartUpload("user_1/big", uploadId, etags);
+
+        assertThat(etags.get(2)).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(part2)));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(part1);
+        expected.write(part2);
+        expected.write(part3);
+        assertThat(TestStorage.read(storageService, "user_1/big")).isEqualTo(expected.toByteArray());
+        assertThat(rootDir.resolve("multipart").resolve(uploadId)).doesNotExist();
+    }
+
+    @Test
+    void shortPartIsRejected() {
+        String uploadId = storageService.createMultipartUpload("user_1/big", "application/octet-stream");
+
+        assertThatThrownBy(() -> storageService.uploadPart("user_1/big", uploadId, 1, new ByteArrayInputStream(bytes("abc")), 10))
+                .isInstanceOf(BusinessException.class);
+
+        assertThat(rootDir.resolve("multipart").resolve(uploadId)).isEmptyDirectory();
+    }
+
+    @Test
+    void abortRemovesParts() {
+        String uploadId = storageService.createMultipartUpload("user_1/big", "application/octet-stream");
+        storageService.uploadPart("user_1/big", uploadId, 1, new ByteArrayInputStream(bytes("abc")), 3);
+
+        storageService.abortMultipartUpload("user_1/big", uploadId);
+
+        assertThat(rootDir.resolve("multipart").resolve(uploadId)).doesNotExist();
+    }
+
+    @Test
+    void uploadIdCannotEscapeMultipartDir() {
+        assertThatThrownBy(() -> storageService.uploadPart("user_1/big", "../objects", 1, new ByteArrayInputStream(bytes("abc")), 3))
+                .isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void uploadFromPathReportsProgressAndCompletion() throws IOException {
+        UploadProgressService progressService = (UploadProgressService) ReflectionTestUtils.getField(storageService, "uploadProgressService");
+        byte[] content = randomBytes(20_000);
+        Path source = Files.write(rootDir.resolve("source.bin"), content);
+
+        String objectName = storageService.uploadFileWithProgressFromPath(source.toFile(), "user_1", "task-1", "source.bin", content.length);
+
+        assertThat(TestStorage.read(storageService, objectName)).isEqualTo(content);
+        Mockito.verify(progressService).updateProgress("task-1", content.length, content.length);
+        Mockito.verify(progressService).completeUploadTask("task-1", true, "上传完成");
+    }
+
+    @Test
+    void uploadFromMissingPathFailsTaskOnce() {
+        UploadProgressService progressService = (UploadProgressService) ReflectionTestUtils.getField(storageService, "uploadProgressService");
+
+        assertThatThrownBy(() -> storageService.uploadFileWithProgressFromPath(rootDir.resolve("missing").toFile(),
+                "user_1", "task-1", "missing", 10)).isInstanceOf(BusinessException.class);
+
+        Mockito.verify(progressService, Mockito.times(1)).completeUploadTask(eq("task-1"), eq(false), anyString());
+        Mockito.verify(progressService, Mockito.never()).updateProgress(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void initRemovesOnlyStaleTempFiles() throws IOException {
+        Path stale = Files.write(rootDir.resolve("tmp").resolve("stale.tmp"), bytes("x"));
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        Path fresh = Files.write(rootDir.resolve("tmp").resolve("fresh.tmp"), bytes("x"));
+
+        TestStorage.localStorage(rootDir);
+
+        assertThat(stale).doesNotExist();
+        assertThat(fresh).exists();
+    }
+
+    @Test
+    void initRemovesOnlyStaleMultipartUploads() throws IOException {
+        String staleId = storageService.createMultipartUpload("user_1/stale", "application/octet-stream");
+        storageService.uploadPart("user_1/stale", staleId, 1, new ByteArrayInputStream(bytes("ab")), 2);
+        Path staleDir = rootDir.resolve("multipart").resolve(staleId);
+        Files.setLastModifiedTime(staleDir, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        String freshId = storageService.createMultipartUpload("user_1/fresh", "application/octet-stream");
+        storageService.uploadPart("user_1/fresh", freshId, 1, new ByteArrayInputStream(bytes("cd")), 2);
+
+        TestStorage.localStorage(rootDir);
+
+        assertThat(staleDir).doesNotExist();
+        assertThat(rootDir.resolve("multipart").resolve(freshId).resolve("1.part")).exists();
+    }
+
+    @Test
+    void downloadUrlIsNotSupported() {
+        assertThat(storageService.getDownloadUrl("user_1/a", "a.txt", Duration.ofMinutes(5))).isNull();
+    }
+
+    private List<Path> tempFiles() {
+        try (Stream<Path> files = Files.list(rootDir.resolve("tmp"))) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] slice(byte[] content, int offset, int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(content, offset, slice, 0, length);
+        return slice;
+    }
+}
@@ -0,0 +1,88 @@
+package com.cloudrive.service.impl;
+
+import com.cloudrive.common.exception.BusinessException;
+import com.cloudrive.common.util.HedgedReader;
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.support.LocalMinioUtil;
+import com.cloudrive.support.TestStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author cd
+ * @date 2025/12/01
+ * @description MinioStorageServiceImpl写入副本的测试：写入返回时副本已存在，复制失败时写入失败且不留下对象；
+ * 主存储和副本都由本地文件系统后端代替
+ */
+class MinioStorageServiceImplTest {
+
+    private static final String OBJECT_NAME = "user_1/0123456789abcdef";
+    private static final byte[] CONTENT = "replicated content".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path tempDir;
+
+    private LocalMinioUtil primary;
+    private LocalMinioUtil replica;
+    private MinioStorageServiceImpl storageService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        primary = new LocalMinioUtil("primary", tempDir.resolve("primary"));
+        replica = new LocalMinioUtil("replica", tempDir.resolve("replica"));
+        MinioShardRouter shardRouter = TestStorage.shardRouter(Map.of(MinioShardRouter.DEFAULT_SHARD, primary),
+                Map.of(MinioShardRouter.DEFAULT_SHARD, replica));
+        HedgedReader hedgedReader = Mockito.mock(HedgedReader.class);
+        Mockito.when(hedgedReader.read(Mockito.any(), Mockito.any())).thenAnswer(invocation ->
+                invocation.<Function<MinioUtil, InputStream>>getArgument(1).apply(invocation.<MinioShardRouter.Shard>getArgument(0).primary()));
+        storageService = new MinioStorageServiceImpl(Mockito.mock(UploadProgressService.class), shardRouter, hedgedReader,
+                Mockito.mock(ObjectProvider.class), Mockito.mock(ObjectProvider.class));
+    }
+
+    @Test
+    void writeReturnsAfterReplicaIsWritten() {
+        TestStorage.put(storageService, OBJECT_NAME, CONTENT);
+
+        assertThat(primary.read(OBJECT_NAME)).isEqualTo(CONTENT);
+        assertThat(replica.read(OBJECT_NAME)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void deleteAfterWriteLeavesNoReplicaOrphan() {
+        TestStorage.put(storageService, OBJECT_NAME, CONTENT);
+
+        storageService.deleteFile(OBJECT_NAME);
+
+        assertThat(primary.exists(OBJECT_NAME)).isFalse();
+        assertThat(replica.exists(OBJECT_NAME)).isFalse();
+    }
+
+    @Test
+    void replicaFailureFailsWriteAndRemovesPrimary() {
+        replica.setBeforeUpload(objectName -> {
+            throw new IllegalStateException("replica unavailable");
+        });
+
+        assertThatThrownBy(() -> TestStorage.put(storageService, OBJECT_NAME, CONTENT)).isInstanceOf(BusinessException.class);
+
+        assertThat(primary.exists(OBJECT_NAME)).isFalse();
+        assertThat(replica.exists(OBJECT_NAME)).isFalse();
+    }
+}
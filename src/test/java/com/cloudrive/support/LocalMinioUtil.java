@@ -0,0 +1,81 @@
+package com.cloudrive.support;
+
+import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.service.impl.LocalStorageServiceImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description 测试用MinIO客户端：对象读写委托给本地文件系统后端，用于分片、分层和打包的集成测试
+ */
+public class LocalMinioUtil extends MinioUtil {
+
+    private final LocalStorageServiceImpl storage;
+
+    /**
+     * 写入对象前的回调，用于在复制过程中插入并发操作
+     */
+    private volatile Consumer<String> beforeUpload = objectName -> {
+    };
+
+    public LocalMinioUtil(String bucketName, Path rootDir) {
+        super("http://localhost:9000", "test", "test", bucketName, 1);
+        this.storage = TestStorage.localStorage(rootDir);
+    }
+
+    public void setBeforeUpload(Consumer<String> beforeUpload) {
+        this.beforeUpload = beforeUpload;
+    }
+
+    public boolean exists(String objectName) {
+        return TestStorage.exists(storage, objectName);
+    }
+
+    public byte[] read(String objectName) {
+        return TestStorage.read(storage, objectName);
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void uploadFile(String objectName, InputStream inputStream, long objectSize, String contentType) {
+        beforeUpload.accept(objectName);
+        storage.uploadObject(objectName, inputStream, objectSize, contentType);
+    }
+
+    @Override
+    public InputStream downloadFile(String objectName) {
+        return storage.downloadFile(objectName);
+    }
+
+    @Override
+    public InputStream downloadFile(String objectName, long offset, long length) {
+        return storage.downloadFile(objectName, offset, length);
+    }
+
+    @Override
+    public void copyTo(MinioUtil target, String sourceName, String targetName, Function<InputStream, InputStream> streamDecorator) {
+        byte[] content;
+        try (InputStream inputStream = streamDecorator.apply(downloadFile(sourceName))) {
+            content = inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        target.uploadFile(targetName, new ByteArrayInputStream(content), content.length, "application/octet-stream");
+    }
+
+    @Override
+    public void deleteFile(String objectName) {
+        storage.deleteFile(objectName);
+    }
+}
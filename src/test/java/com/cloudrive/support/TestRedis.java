@@ -0,0 +1,54 @@
+package com.cloudrive.support;
+
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 测试用Redis：同一个JVM内共用一个嵌入式Redis和客户端，JVM退出时关闭
+ */
+public final class TestRedis {
+
+    private static RedissonClient client;
+
+    private TestRedis() {
+    }
+
+    /**
+     * 获取连接到嵌入式Redis的客户端，第一次调用时启动Redis；各测试自行清空数据
+     */
+    public static synchronized RedissonClient client() {
+        if (client == null) {
+            try {
+                int port;
+                try (ServerSocket socket = new ServerSocket(0)) {
+                    port = socket.getLocalPort();
+                }
+                RedisServer server = new RedisServer(port);
+                server.start();
+                Config config = new Config();
+                config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+                RedissonClient redissonClient = Redisson.create(config);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    redissonClient.shutdown();
+                    try {
+                        server.stop();
+                    } catch (IOException ignored) {
+                        // JVM退出时Redis进程随之结束
+                    }
+                }));
+                client = redissonClient;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return client;
+    }
+}
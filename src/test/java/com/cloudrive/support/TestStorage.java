@@ -0,0 +1,94 @@
+package com.cloudrive.support;
+
+import com.cloudrive.common.util.ConsistentHashRing;
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.config.MinioProperties;
+import com.cloudrive.service.StorageService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.service.impl.LocalStorageServiceImpl;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * @author cd
+ * @date 2025/11/20
+ * @description 测试用存储：以本地文件系统后端代替MinIO
+ */
+public final class TestStorage {
+
+    private TestStorage() {
+    }
+
+    /**
+     * 在指定目录上创建本地存储后端，关闭fsync加快测试
+     */
+    public static LocalStorageServiceImpl localStorage(Path rootDir) {
+        LocalStorageServiceImpl storageService = new LocalStorageServiceImpl(Mockito.mock(UploadProgressService.class));
+        ReflectionTestUtils.setField(storageService, "rootDir", rootDir);
+        ReflectionTestUtils.setField(storageService, "fsync", false);
+        try {
+            storageService.init();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return storageService;
+    }
+
+    /**
+     * 由已有客户端组成的分片路由，不连接MinIO；只有默认分片接收新写入
+     *
+     * @param clients 分片名 -> 主存储客户端，必须包含默认分片
+     */
+    public static MinioShardRouter shardRouter(Map<String, ? extends MinioUtil> clients) {
+        return shardRouter(clients, Map.of());
+    }
+
+    /**
+     * 带副本的分片路由
+     *
+     * @param clients  分片名 -> 主存储客户端，必须包含默认分片
+     * @param replicas 分片名 -> 副本客户端，未列出的分片没有副本
+     */
+    @SuppressWarnings("unchecked")
+    public static MinioShardRouter shardRouter(Map<String, ? extends MinioUtil> clients, Map<String, ? extends MinioUtil> replicas) {
+        MinioShardRouter router = new MinioShardRouter(new MinioProperties());
+        Map<String, MinioShardRouter.Shard> shards = (Map<String, MinioShardRouter.Shard>) ReflectionTestUtils.getField(router, "shards");
+        clients.forEach((name, client) -> shards.put(name, new MinioShardRouter.Shard(name, client, replicas.get(name))));
+        ConsistentHashRing<String> ring = (ConsistentHashRing<String>) ReflectionTestUtils.getField(router, "ring");
+        ring.add(MinioShardRouter.DEFAULT_SHARD, MinioShardRouter.DEFAULT_SHARD, 1);
+        return router;
+    }
+
+    public static void put(StorageService storageService, String objectName, byte[] content) {
+        storageService.uploadObject(objectName, new ByteArrayInputStream(content), content.length, "application/octet-stream");
+    }
+
+    public static byte[] read(StorageService storageService, String objectName) {
+        try (InputStream inputStream = storageService.downloadFile(objectName)) {
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 对象是否存在：本地后端读取不存在的对象时抛出异常
+     */
+    public static boolean exists(StorageService storageService, String objectName) {
+        try (InputStream ignored = storageService.downloadFile(objectName)) {
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.cloudrive.task;
+
+import com.cloudrive.common.util.HedgedReader;
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.dao.FileContentDao;
+import com.cloudrive.dao.PackDao;
+import com.cloudrive.model.entity.FileContent;
+import com.cloudrive.model.entity.PackEntry;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.service.impl.MinioStorageServiceImpl;
+import com.cloudrive.support.LocalMinioUtil;
+import com.cloudrive.support.TestStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author cd
+ * @date 2025/12/03
+ * @description 小文件打包与删除并发（insertEntryIfReferenced / moveEntry）、已打包条目的范围读取和延迟清理；
+ * MinIO由本地文件系统后端代替
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+class SmallFilePackTaskTest {
+
+    private static final int FILE_COUNT = 4;
+    private static final int FILE_SIZE = 1000;
+
+    @Autowired
+    private PackDao packDao;
+
+    @Autowired
+    private FileContentDao fileContentDao;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @TempDir
+    private Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalMinioUtil storage;
+    private PackService packService;
+    private MinioStorageServiceImpl storageService;
+    private ThreadPoolTaskExecutor downloadExecutor;
+    private SmallFilePackTask smallFilePackTask;
+    private final byte[][] contents = new byte[FILE_COUNT][];
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        storage = new LocalMinioUtil("default", tempDir);
+        MinioShardRouter shardRouter = TestStorage.shardRouter(Map.of(MinioShardRouter.DEFAULT_SHARD, storage));
+
+        packService = new PackService(packDao);
+        ReflectionTestUtils.setField(packService, "locationCacheTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(packService, "locationCacheSize", 1000L);
+        packService.init();
+
+        ObjectProvider<ObjectTierService> tierProvider = Mockito.mock(ObjectProvider.class);
+        ObjectProvider<PackService> packProvider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(packProvider.getIfAvailable()).thenReturn(packService);
+        // 没有副本时对冲读直接读取主存储
+        HedgedReader hedgedReader = Mockito.mock(HedgedReader.class);
+        Mockito.when(hedgedReader.read(Mockito.any(), Mockito.any())).thenAnswer(invocation ->
+                invocation.<Function<MinioUtil, InputStream>>getArgument(1).apply(invocation.<MinioShardRouter.Shard>getArgument(0).primary()));
+        storageService = new MinioStorageServiceImpl(Mockito.mock(UploadProgressService.class), shardRouter,
+                hedgedReader, tierProvider, packProvider);
+
+        downloadExecutor = new ThreadPoolTaskExecutor();
+        downloadExecutor.setCorePoolSize(4);
+        downloadExecutor.setMaxPoolSize(4);
+        downloadExecutor.initialize();
+
+        smallFilePackTask = createTask(shardRouter);
+
+        LocalDateTime createdAt = LocalDateTime.now().minusHours(2);
+        Random random = new Random(42);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            contents[i] = new byte[FILE_SIZE];
+            random.nextBytes(contents[i]);
+            storage.uploadFile(path(i), new ByteArrayInputStream(contents[i]), FILE_SIZE, "application/octet-stream");
+            insertContent(i, createdAt.plusSeconds(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private SmallFilePackTask createTask(MinioShardRouter shardRouter) {
+        ObjectProvider<ObjectTierService> tierProvider = Mockito.mock(ObjectProvider.class);
+        SmallFilePackTask smallFilePackTask = new SmallFilePackTask(packDao, packService, shardRouter, tierProvider, downloadExecutor);
+        ReflectionTestUtils.setField(smallFilePackTask, "maxFileSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(smallFilePackTask, "targetSize", DataSize.ofMegabytes(16));
+        ReflectionTestUtils.setField(smallFilePackTask, "minEntries", 2);
+        ReflectionTestUtils.setField(smallFilePackTask, "minAge", Duration.ofHours(1));
+        ReflectionTestUtils.setField(smallFilePackTask, "batchSize", 100);
+        ReflectionTestUtils.setField(smallFilePackTask, "maxPacksPerRun", 5);
+        ReflectionTestUtils.setField(smallFilePackTask, "compactBelowLiveRatio", 0.5);
+        ReflectionTestUtils.setField(smallFilePackTask, "busyThreshold", 0.5);
+        ReflectionTestUtils.setField(smallFilePackTask, "cleanupDelay", Duration.ofMinutes(30));
+        return smallFilePackTask;
+    }
+
+    @AfterEach
+    void tearDown() {
+        downloadExecutor.shutdown();
+    }
+
+    @Test
+    void packedEntriesServeRangedReads() throws IOException {
+        smallFilePackTask.run();
+
+        String packPath = packDao.findEntry(path(0)).getPackPath();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            PackEntry entry = packDao.findEntry(path(i));
+            assertThat(entry.getPackPath()).isEqualTo(packPath);
+            assertThat(entry.getLength()).isEqualTo(FILE_SIZE);
+            assertThat(read(path(i))).isEqualTo(contents[i]);
+        }
+        assertThat(liveCount(packPath)).isEqualTo(FILE_COUNT);
+
+        // 范围读取只返回条目内的数据，超出条目末尾的长度被截断，不会读到相邻条目
+        assertThat(read(path(2), 100, 50)).isEqualTo(Arrays.copyOfRange(contents[2], 100, 150));
+        assertThat(read(path(2), FILE_SIZE - 10, 1_000_000)).isEqualTo(Arrays.copyOfRange(contents[2], FILE_SIZE - 10, FILE_SIZE));
+        assertThat(read(path(0), 0, FILE_SIZE)).isEqualTo(contents[0]);
+
+        // 独立对象在保留期后删除，之后仍从聚合对象读取
+        ageEntries(Duration.ofHours(1));
+        smallFilePackTask.run();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertThat(storage.exists(path(i))).isFalse();
+            assertThat(packDao.findEntry(path(i)).getOriginalDeleted()).isTrue();
+            assertThat(read(path(i))).isEqualTo(contents[i]);
+        }
+        assertThat(read(path(3), 1, 2)).isEqualTo(Arrays.copyOfRange(contents[3], 1, 3));
+    }
+
+    @Test
+    void deleteBeforePackCommitIsNotRegistered() throws IOException {
+        // 已读取全部候选、聚合对象写入时删除其中一个文件
+        onFirstPackUpload(() -> delete(1));
+
+        smallFilePackTask.run();
+
+        assertThat(packDao.findEntry(path(1))).isNull();
+        assertThat(storage.exists(path(1))).isFalse();
+        String packPath = packDao.findEntry(path(0)).getPackPath();
+        assertThat(liveCount(packPath)).isEqualTo(FILE_COUNT - 1);
+        assertThat(liveBytes(packPath)).isEqualTo((long) (FILE_COUNT - 1) * FILE_SIZE);
+        for (int i : new int[]{0, 2, 3}) {
+            assertThat(read(path(i))).isEqualTo(contents[i]);
+        }
+    }
+
+    @Test
+    void replicaCopyFailureSkipsPackCommit() throws IOException {
+        // 默认分片有副本，聚合对象复制到副本失败时不登记，删除已写入的聚合对象，文件仍从独立对象读取
+        LocalMinioUtil replica = new LocalMinioUtil("replica", tempDir.resolve("replica"));
+        replica.setBeforeUpload(objectName -> {
+            if (objectName.startsWith("packs/")) {
+                throw new IllegalStateException("replica unavailable");
+            }
+        });
+        List<String> packPaths = new CopyOnWriteArrayList<>();
+        storage.setBeforeUpload(objectName -> {
+            if (objectName.startsWith("packs/")) {
+                packPaths.add(objectName);
+            }
+        });
+
+        createTask(TestStorage.shardRouter(Map.of(MinioShardRouter.DEFAULT_SHARD, storage),
+                Map.of(MinioShardRouter.DEFAULT_SHARD, replica))).run();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_pack", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_pack_entry", Integer.class)).isZero();
+        assertThat(packPaths).isNotEmpty().noneMatch(storage::exists);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertThat(storage.exists(path(i))).isTrue();
+            assertThat(read(path(i))).isEqualTo(contents[i]);
+        }
+    }
+
+    @Test
+    void deleteAfterPackCommitReleasesEntry() {
+        smallFilePackTask.run();
+        String packPath = packDao.findEntry(path(0)).getPackPath();
+
+        delete(0);
+
+        assertThat(packDao.findEntry(path(0))).isNull();
+        assertThat(storage.exists(path(0))).isFalse();
+        assertThat(liveCount(packPath)).isEqualTo(FILE_COUNT - 1);
+        assertThat(liveBytes(packPath)).isEqualTo((long) (FILE_COUNT - 1) * FILE_SIZE);
+    }
+
+    @Test
+    void deleteDuringCompactionIsNotMoved() throws IOException {
+        smallFilePackTask.run();
+        String oldPackPath = packDao.findEntry(path(0)).getPackPath();
+        ageEntries(Duration.ofHours(1));
+        smallFilePackTask.run();
+        delete(0);
+        delete(1);
+
+        // 重写时已复制全部有效条目，新聚合对象写入时再删除一个
+        onFirstPackUpload(() -> delete(2));
+        smallFilePackTask.run();
+
+        assertThat(packDao.findEntry(path(2))).isNull();
+        PackEntry moved = packDao.findEntry(path(3));
+        assertThat(moved.getPackPath()).isNotEqualTo(oldPackPath);
+        assertThat(liveCount(oldPackPath)).isZero();
+        assertThat(liveCount(moved.getPackPath())).isEqualTo(1);
+        assertThat(read(path(3))).isEqualTo(contents[3]);
+        assertThat(read(path(3), 500, 500)).isEqualTo(Arrays.copyOfRange(contents[3], 500, 1000));
+
+        // 清空的旧聚合对象在保留期后删除
+        assertThat(storage.exists(oldPackPath)).isTrue();
+        jdbcTemplate.update("UPDATE t_pack SET updated_at = ? WHERE pack_path = ?", LocalDateTime.now().minusHours(1), oldPackPath);
+        smallFilePackTask.run();
+        assertThat(storage.exists(oldPackPath)).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_pack WHERE pack_path = ?", Integer.class, oldPackPath)).isZero();
+        assertThat(read(path(3))).isEqualTo(contents[3]);
+    }
+
+    private void onFirstPackUpload(Runnable action) {
+        AtomicBoolean fired = new AtomicBoolean();
+        storage.setBeforeUpload(objectName -> {
+            if (objectName.startsWith("packs/") && fired.compareAndSet(false, true)) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 与删除文件的流程一致：内容记录删除后再删除存储对象
+     */
+    private void delete(int i) {
+        fileContentDao.decrementRefCount(hash(i));
+        fileContentDao.deleteIfUnreferenced(hash(i));
+        storageService.deleteFile(path(i));
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream inputStream = storageService.downloadFile(path)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private byte[] read(String path, long offset, long length) throws IOException {
+        try (InputStream inputStream = storageService.downloadFile(path, offset, length)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private void insertContent(int i, LocalDateTime createdAt) {
+        FileContent content = new FileContent();
+        content.setSha256Hash(hash(i));
+        content.setPath(path(i));
+        content.setFileSize((long) FILE_SIZE);
+        content.setRefCount(1);
+        content.setCreatedAt(createdAt);
+        content.setUpdatedAt(createdAt);
+        fileContentDao.insertIgnore(content);
+    }
+
+    private void ageEntries(Duration age) {
+        jdbcTemplate.update("UPDATE t_pack_entry SET created_at = ?", LocalDateTime.now().minus(age));
+    }
+
+    private int liveCount(String packPath) {
+        return jdbcTemplate.queryForObject("SELECT live_count FROM t_pack WHERE pack_path = ?", Integer.class, packPath);
+    }
+
+    private long liveBytes(String packPath) {
+        return jdbcTemplate.queryForObject("SELECT live_bytes FROM t_pack WHERE pack_path = ?", Long.class, packPath);
+    }
+
+    private static String path(int i) {
+        return "user_1/small-" + i;
+    }
+
+    private static String hash(int i) {
+        return Integer.toString(i).repeat(64);
+    }
+}
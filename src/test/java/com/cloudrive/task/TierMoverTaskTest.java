@@ -0,0 +1,320 @@
+package com.cloudrive.task;
+
+import com.cloudrive.common.util.HedgedReader;
+import com.cloudrive.common.util.MinioShardRouter;
+import com.cloudrive.common.util.MinioUtil;
+import com.cloudrive.dao.FileContentDao;
+import com.cloudrive.dao.ObjectTierDao;
+import com.cloudrive.model.entity.FileContent;
+import com.cloudrive.model.entity.ObjectTier;
+import com.cloudrive.service.ObjectTierService;
+import com.cloudrive.service.PackService;
+import com.cloudrive.service.UploadProgressService;
+import com.cloudrive.service.impl.MinioStorageServiceImpl;
+import com.cloudrive.support.LocalMinioUtil;
+import com.cloudrive.support.TestStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author cd
+ * @date 2025/12/02
+ * @description 分层迁移的切换和清理顺序：降级、延迟清理旧位置、升级，以及迁移与删除并发；
+ * 热层和冷层分片都由本地文件系统后端代替
+ */
+@MybatisTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+class TierMoverTaskTest {
+
+    private static final String COLD_SHARD = "cold";
+    private static final String SHA256 = "a".repeat(64);
+    private static final String OBJECT_PATH = "user_1/0123456789abcdef";
+    private static final String COLD_PATH = "@cold/" + OBJECT_PATH;
+    private static final byte[] CONTENT = "tiered content".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private ObjectTierDao objectTierDao;
+
+    @Autowired
+    private FileContentDao fileContentDao;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @TempDir
+    private Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalMinioUtil hot;
+    private LocalMinioUtil cold;
+    private ObjectTierService objectTierService;
+    private MinioStorageServiceImpl storageService;
+    private ThreadPoolTaskExecutor downloadExecutor;
+    private TierMoverTask tierMoverTask;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        hot = new LocalMinioUtil("hot", tempDir.resolve("hot"));
+        cold = new LocalMinioUtil("cold", tempDir.resolve("cold"));
+        MinioShardRouter shardRouter = TestStorage.shardRouter(Map.of(MinioShardRouter.DEFAULT_SHARD, hot, COLD_SHARD, cold));
+
+        objectTierService = new ObjectTierService(objectTierDao);
+        ReflectionTestUtils.setField(objectTierService, "locationCacheTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(objectTierService, "locationCacheSize", 1000L);
+        objectTierService.init();
+
+        ObjectProvider<ObjectTierService> tierProvider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(tierProvider.getIfAvailable()).thenReturn(objectTierService);
+        ObjectProvider<PackService> packProvider = Mockito.mock(ObjectProvider.class);
+        // 没有副本时对冲读直接读取主存储
+        HedgedReader hedgedReader = Mockito.mock(HedgedReader.class);
+        Mockito.when(hedgedReader.read(Mockito.any(), Mockito.any())).thenAnswer(invocation ->
+                invocation.<Function<MinioUtil, InputStream>>getArgument(1).apply(invocation.<MinioShardRouter.Shard>getArgument(0).primary()));
+        storageService = new MinioStorageServiceImpl(Mockito.mock(UploadProgressService.class), shardRouter,
+                hedgedReader, tierProvider, packProvider);
+
+        downloadExecutor = new ThreadPoolTaskExecutor();
+        downloadExecutor.setCorePoolSize(4);
+        downloadExecutor.setMaxPoolSize(4);
+        downloadExecutor.initialize();
+
+        tierMoverTask = createTask(shardRouter);
+        insertContent(LocalDateTime.now().minusDays(10));
+        hot.uploadFile(OBJECT_PATH, new ByteArrayInputStream(CONTENT), CONTENT.length, "text/plain");
+    }
+
+    private TierMoverTask createTask(MinioShardRouter shardRouter) {
+        TierMoverTask tierMoverTask = new TierMoverTask(objectTierDao, objectTierService, shardRouter, downloadExecutor);
+        ReflectionTestUtils.setField(tierMoverTask, "coldShard", COLD_SHARD);
+        ReflectionTestUtils.setField(tierMoverTask, "demoteAfter", Duration.ofDays(7));
+        ReflectionTestUtils.setField(tierMoverTask, "promoteAfterAccesses", 3L);
+        ReflectionTestUtils.setField(tierMoverTask, "batchSize", 100);
+        ReflectionTestUtils.setField(tierMoverTask, "maxBytesPerSecond", DataSize.ofMegabytes(100));
+        ReflectionTestUtils.setField(tierMoverTask, "busyThreshold", 0.5);
+        ReflectionTestUtils.setField(tierMoverTask, "cleanupDelay", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(tierMoverTask, "packEnabled", false);
+        tierMoverTask.init();
+        return tierMoverTask;
+    }
+
+    @AfterEach
+    void tearDown() {
+        downloadExecutor.shutdown();
+    }
+
+    @Test
+    void demoteCleanupAndPromoteInOrder() throws IOException {
+        // 降级：复制到冷层后切换指向，旧位置保留
+        tierMoverTask.move();
+
+        ObjectTier demoted = objectTierDao.findByObjectPath(OBJECT_PATH);
+        assertThat(demoted.getTier()).isEqualTo(ObjectTier.TIER_COLD);
+        assertThat(demoted.getStoragePath()).isEqualTo(COLD_PATH);
+        assertThat(demoted.getPreviousPath()).isEqualTo(OBJECT_PATH);
+        assertThat(objectTierService.locate(OBJECT_PATH)).isEqualTo(COLD_PATH);
+        assertThat(cold.read(OBJECT_PATH)).isEqualTo(CONTENT);
+        assertThat(hot.exists(OBJECT_PATH)).isTrue();
+
+        // 保留期内再次运行：不清理旧位置，也不重复迁移
+        tierMoverTask.move();
+        assertThat(hot.exists(OBJECT_PATH)).isTrue();
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH).getPreviousPath()).isEqualTo(OBJECT_PATH);
+
+        // 保留期过后删除旧位置
+        ageTierRecord(Duration.ofHours(1));
+        tierMoverTask.move();
+        assertThat(hot.exists(OBJECT_PATH)).isFalse();
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH).getPreviousPath()).isNull();
+        assertThat(read()).isEqualTo(CONTENT);
+
+        // 读取累计到阈值后升级回原位置（read()已记录一次）
+        objectTierService.recordAccess(OBJECT_PATH);
+        objectTierService.recordAccess(OBJECT_PATH);
+        objectTierService.flushAccesses();
+        tierMoverTask.move();
+
+        ObjectTier promoted = objectTierDao.findByObjectPath(OBJECT_PATH);
+        assertThat(promoted.getTier()).isEqualTo(ObjectTier.TIER_HOT);
+        assertThat(promoted.getStoragePath()).isEqualTo(OBJECT_PATH);
+        assertThat(promoted.getPreviousPath()).isEqualTo(COLD_PATH);
+        assertThat(promoted.getAccessCount()).isZero();
+        assertThat(hot.read(OBJECT_PATH)).isEqualTo(CONTENT);
+        assertThat(cold.exists(OBJECT_PATH)).isTrue();
+
+        ageTierRecord(Duration.ofHours(1));
+        tierMoverTask.move();
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+        assertThat(read()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void deleteAfterDemotionRemovesBothCopies() {
+        tierMoverTask.move();
+
+        releaseContent();
+        storageService.deleteFile(OBJECT_PATH);
+
+        assertThat(hot.exists(OBJECT_PATH)).isFalse();
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH)).isNull();
+    }
+
+    @Test
+    void deleteDuringDemotionCopyDropsNewCopy() {
+        // 复制到冷层的过程中内容被删除：内容记录先删除，随后删除存储对象
+        cold.setBeforeUpload(objectName -> {
+            releaseContent();
+            storageService.deleteFile(OBJECT_PATH);
+        });
+
+        tierMoverTask.move();
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH)).isNull();
+        assertThat(hot.exists(OBJECT_PATH)).isFalse();
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+    }
+
+    @Test
+    void deleteDuringPromotionCopyDropsNewCopy() {
+        tierMoverTask.move();
+        ageTierRecord(Duration.ofHours(1));
+        tierMoverTask.move();
+        for (int i = 0; i < 3; i++) {
+            objectTierService.recordAccess(OBJECT_PATH);
+        }
+        objectTierService.flushAccesses();
+        hot.setBeforeUpload(objectName -> {
+            releaseContent();
+            storageService.deleteFile(OBJECT_PATH);
+        });
+
+        tierMoverTask.move();
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH)).isNull();
+        assertThat(hot.exists(OBJECT_PATH)).isFalse();
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+    }
+
+    @Test
+    void replicaCopyFailureKeepsObjectInPlace() throws IOException {
+        // 冷层分片有副本，复制到副本失败时不切换，删除已写入冷层的对象，下一轮重试
+        LocalMinioUtil coldReplica = new LocalMinioUtil("cold-replica", tempDir.resolve("cold-replica"));
+        coldReplica.setBeforeUpload(objectName -> {
+            throw new IllegalStateException("replica unavailable");
+        });
+        MinioShardRouter shardRouter = TestStorage.shardRouter(Map.of(MinioShardRouter.DEFAULT_SHARD, hot, COLD_SHARD, cold),
+                Map.of(COLD_SHARD, coldReplica));
+
+        createTask(shardRouter).move();
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH)).isNull();
+        assertThat(objectTierService.locate(OBJECT_PATH)).isEqualTo(OBJECT_PATH);
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+        assertThat(coldReplica.exists(OBJECT_PATH)).isFalse();
+        assertThat(read()).isEqualTo(CONTENT);
+
+        // 副本恢复后迁移成功
+        coldReplica.setBeforeUpload(objectName -> {
+        });
+        createTask(shardRouter).move();
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH).getStoragePath()).isEqualTo(COLD_PATH);
+        assertThat(cold.read(OBJECT_PATH)).isEqualTo(CONTENT);
+        assertThat(coldReplica.read(OBJECT_PATH)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void recentlyAccessedObjectIsNotDemoted() {
+        objectTierService.recordAccess(OBJECT_PATH);
+        objectTierService.flushAccesses();
+
+        tierMoverTask.move();
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH).getTier()).isEqualTo(ObjectTier.TIER_HOT);
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+    }
+
+    @Test
+    void busyDownloadPoolPausesMigration() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            downloadExecutor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        started.await();
+        try {
+            tierMoverTask.move();
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(objectTierDao.findByObjectPath(OBJECT_PATH)).isNull();
+        assertThat(cold.exists(OBJECT_PATH)).isFalse();
+    }
+
+    private byte[] read() throws IOException {
+        try (InputStream inputStream = storageService.downloadFile(OBJECT_PATH)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private void insertContent(LocalDateTime createdAt) {
+        FileContent content = new FileContent();
+        content.setSha256Hash(SHA256);
+        content.setPath(OBJECT_PATH);
+        content.setFileSize((long) CONTENT.length);
+        content.setRefCount(1);
+        content.setCreatedAt(createdAt);
+        content.setUpdatedAt(createdAt);
+        fileContentDao.insertIgnore(content);
+    }
+
+    /**
+     * 与FileContentService.release一致：引用数减到0后删除内容记录
+     */
+    private void releaseContent() {
+        fileContentDao.decrementRefCount(SHA256);
+        fileContentDao.deleteIfUnreferenced(SHA256);
+    }
+
+    private void ageTierRecord(Duration age) {
+        jdbcTemplate.update("UPDATE t_object_tier SET updated_at = ? WHERE object_path = ?",
+                LocalDateTime.now().minus(age), OBJECT_PATH);
+    }
+}
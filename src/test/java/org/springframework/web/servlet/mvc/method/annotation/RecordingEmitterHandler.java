@@ -0,0 +1,111 @@
+package org.springframework.web.servlet.mvc.method.annotation;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author cd
+ * @date 2025/11/24
+ * @description 测试用的SSE连接处理器，代替Servlet容器记录写出的事件；可以让写操作阻塞以模拟读得慢的客户端。
+ * 放在Spring的包下是因为ResponseBodyEmitter.Handler和initialize是包级可见的
+ */
+public class RecordingEmitterHandler implements ResponseBodyEmitter.Handler {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile CountDownLatch sendGate;
+    private volatile Runnable completionCallback = () -> {
+    };
+
+    /**
+     * 把处理器接到连接上，之前缓存的事件会立即写出
+     */
+    public static RecordingEmitterHandler attach(ResponseBodyEmitter emitter) throws IOException {
+        RecordingEmitterHandler handler = new RecordingEmitterHandler();
+        emitter.initialize(handler);
+        return handler;
+    }
+
+    /**
+     * 之后的写操作阻塞，直到调用release
+     */
+    public void block() {
+        sendGate = new CountDownLatch(1);
+    }
+
+    public void release() {
+        CountDownLatch gate = sendGate;
+        sendGate = null;
+        if (gate != null) {
+            gate.countDown();
+        }
+    }
+
+    /**
+     * 已写出的事件，每个事件是拼好的SSE文本
+     */
+    public List<String> events() {
+        return events;
+    }
+
+    public boolean isCompleted() {
+        return completed.getCount() == 0;
+    }
+
+    public boolean awaitCompleted(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.await(timeout, unit);
+    }
+
+    @Override
+    public void send(Object data, MediaType mediaType) throws IOException {
+        send(Set.of(new ResponseBodyEmitter.DataWithMediaType(data, mediaType)));
+    }
+
+    @Override
+    public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+        CountDownLatch gate = sendGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        StringBuilder event = new StringBuilder();
+        items.forEach(item -> event.append(item.getData()));
+        events.add(event.toString());
+    }
+
+    @Override
+    public void complete() {
+        completed.countDown();
+        // 容器在异步请求结束后回调完成事件
+        completionCallback.run();
+    }
+
+    @Override
+    public void completeWithError(Throwable failure) {
+        complete();
+    }
+
+    @Override
+    public void onTimeout(Runnable callback) {
+    }
+
+    @Override
+    public void onError(Consumer<Throwable> callback) {
+    }
+
+    @Override
+    public void onCompletion(Runnable callback) {
+        completionCallback = callback;
+    }
+}
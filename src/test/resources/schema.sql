@@ -0,0 +1,55 @@
+-- 与mappers中CREATE TABLE注释一致，供H2（MySQL模式）运行映射语句
+
+CREATE TABLE IF NOT EXISTS t_file_content
+(
+    sha256_hash CHAR(64)     NOT NULL PRIMARY KEY,
+    path        VARCHAR(512) NOT NULL,
+    file_size   BIGINT       NOT NULL,
+    ref_count   INT          NOT NULL DEFAULT 0,
+    created_at  DATETIME     NOT NULL,
+    updated_at  DATETIME     NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS t_upload_journal
+(
+    object_path VARCHAR(512) NOT NULL PRIMARY KEY,
+    created_at  DATETIME     NOT NULL,
+    KEY idx_created_at (created_at)
+);
+
+CREATE TABLE IF NOT EXISTS t_pack
+(
+    pack_path   VARCHAR(600) NOT NULL PRIMARY KEY,
+    total_bytes BIGINT       NOT NULL,
+    live_bytes  BIGINT       NOT NULL DEFAULT 0,
+    live_count  INT          NOT NULL DEFAULT 0,
+    created_at  DATETIME     NOT NULL,
+    updated_at  DATETIME     NOT NULL,
+    KEY idx_live_count_updated_at (live_count, updated_at)
+);
+
+CREATE TABLE IF NOT EXISTS t_pack_entry
+(
+    object_path      VARCHAR(512) NOT NULL PRIMARY KEY,
+    pack_path        VARCHAR(600) NOT NULL,
+    pack_offset      BIGINT       NOT NULL,
+    length           BIGINT       NOT NULL,
+    original_deleted TINYINT(1)   NOT NULL DEFAULT 0,
+    created_at       DATETIME     NOT NULL,
+    KEY idx_pack_path (pack_path),
+    KEY idx_original_deleted_created_at (original_deleted, created_at)
+);
+
+CREATE TABLE IF NOT EXISTS t_object_tier
+(
+    object_path      VARCHAR(512) NOT NULL PRIMARY KEY,
+    tier             VARCHAR(16)  NOT NULL,
+    storage_path     VARCHAR(600) NOT NULL,
+    previous_path    VARCHAR(600) NULL,
+    access_count     BIGINT       NOT NULL DEFAULT 0,
+    last_accessed_at DATETIME     NULL,
+    created_at       DATETIME     NOT NULL,
+    updated_at       DATETIME     NOT NULL,
+    KEY idx_tier_last_accessed (tier, last_accessed_at),
+    KEY idx_updated_at (updated_at)
+);